@@ -0,0 +1,339 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+
+/**
+ * ColumnPredicate is a simple predicate on the columns of a Hive table, which can be pushed down into the columnar file
+ * formats via {@link HiveTap#setPredicate(ColumnPredicate)}. Predicates are built from comparisons of a column with
+ * literal values and IN-lists, combined with {@link #and(ColumnPredicate...)} and {@link #or(ColumnPredicate...)}.
+ * <p/>
+ * Literals are converted to the type of their column, when the predicate is pushed down. Predicates are supported on
+ * columns of the integral, floating point, string, boolean, date and timestamp types. Decimal columns are not
+ * supported, since decimal literals of a SearchArgument cannot be serialized into the Configuration by Hive.
+ */
+public final class ColumnPredicate implements Serializable
+  {
+  enum Operator
+    {
+      EQUAL, LESS_THAN, LESS_THAN_OR_EQUAL, GREATER_THAN, GREATER_THAN_OR_EQUAL, IN, AND, OR
+    }
+
+  /** the operator of the predicate */
+  private final Operator operator;
+
+  /** the column compared, null for AND and OR */
+  private final String column;
+
+  /** the literal values the column is compared with */
+  private final Object[] values;
+
+  /** the combined predicates of AND and OR */
+  private final ColumnPredicate[] children;
+
+  private ColumnPredicate( Operator operator, String column, Object[] values, ColumnPredicate[] children )
+    {
+    this.operator = operator;
+    this.column = column;
+    this.values = values;
+    this.children = children;
+    }
+
+  public static ColumnPredicate equal( String column, Object value )
+    {
+    return comparison( Operator.EQUAL, column, value );
+    }
+
+  public static ColumnPredicate lessThan( String column, Object value )
+    {
+    return comparison( Operator.LESS_THAN, column, value );
+    }
+
+  public static ColumnPredicate lessThanOrEqual( String column, Object value )
+    {
+    return comparison( Operator.LESS_THAN_OR_EQUAL, column, value );
+    }
+
+  public static ColumnPredicate greaterThan( String column, Object value )
+    {
+    return comparison( Operator.GREATER_THAN, column, value );
+    }
+
+  public static ColumnPredicate greaterThanOrEqual( String column, Object value )
+    {
+    return comparison( Operator.GREATER_THAN_OR_EQUAL, column, value );
+    }
+
+  public static ColumnPredicate in( String column, Object... values )
+    {
+    if( values == null || values.length == 0 )
+      throw new IllegalArgumentException( "values cannot be empty" );
+    for( Object value : values )
+      verifyLiteral( value );
+    return new ColumnPredicate( Operator.IN, verifyColumn( column ), values.clone(), null );
+    }
+
+  public static ColumnPredicate and( ColumnPredicate... predicates )
+    {
+    return junction( Operator.AND, predicates );
+    }
+
+  public static ColumnPredicate or( ColumnPredicate... predicates )
+    {
+    return junction( Operator.OR, predicates );
+    }
+
+  private static ColumnPredicate comparison( Operator operator, String column, Object value )
+    {
+    verifyLiteral( value );
+    return new ColumnPredicate( operator, verifyColumn( column ), new Object[]{value}, null );
+    }
+
+  private static ColumnPredicate junction( Operator operator, ColumnPredicate[] predicates )
+    {
+    if( predicates == null || predicates.length == 0 )
+      throw new IllegalArgumentException( "predicates cannot be empty" );
+    for( ColumnPredicate predicate : predicates )
+      {
+      if( predicate == null )
+        throw new IllegalArgumentException( "predicates cannot contain null" );
+      }
+    return new ColumnPredicate( operator, null, null, predicates.clone() );
+    }
+
+  private static String verifyColumn( String column )
+    {
+    if( column == null || column.isEmpty() )
+      throw new IllegalArgumentException( "column cannot be null or empty" );
+    return column.toLowerCase();
+    }
+
+  private static void verifyLiteral( Object value )
+    {
+    if( value == null )
+      throw new IllegalArgumentException( "values cannot be null" );
+    if( !( value instanceof Serializable ) )
+      throw new IllegalArgumentException( "values must be serializable: " + value );
+    }
+
+  Operator getOperator()
+    {
+    return operator;
+    }
+
+  /**
+   * Returns the lower case name of the compared column.
+   *
+   * @return the column or null for AND and OR.
+   */
+  String getColumn()
+    {
+    return column;
+    }
+
+  Object[] getValues()
+    {
+    return values;
+    }
+
+  ColumnPredicate[] getChildren()
+    {
+    return children;
+    }
+
+  /**
+   * Returns the lower case names of all columns used by this predicate.
+   *
+   * @return the names of the columns.
+   */
+  public Set<String> getColumns()
+    {
+    Set<String> columns = new TreeSet<String>();
+    addColumns( columns );
+    return columns;
+    }
+
+  private void addColumns( Set<String> columns )
+    {
+    if( column != null )
+      columns.add( column );
+    else
+      for( ColumnPredicate child : children )
+        child.addColumns( columns );
+    }
+
+  /**
+   * Converts this predicate into a Hive SearchArgument, converting the literals to the types of the given columns.
+   *
+   * @param columnNames The names of the columns.
+   * @param columnTypes The Hive types of the columns.
+   * @return a new SearchArgument.
+   */
+  SearchArgument toSearchArgument( String[] columnNames, String[] columnTypes )
+    {
+    SearchArgument.Builder builder = SearchArgumentFactory.newBuilder().startAnd();
+    build( builder, columnNames, columnTypes );
+    return builder.end().build();
+    }
+
+  private void build( SearchArgument.Builder builder, String[] columnNames, String[] columnTypes )
+    {
+    if( operator == Operator.AND || operator == Operator.OR )
+      {
+      if( operator == Operator.AND )
+        builder.startAnd();
+      else
+        builder.startOr();
+      for( ColumnPredicate child : children )
+        child.build( builder, columnNames, columnTypes );
+      builder.end();
+      return;
+      }
+
+    String columnType = null;
+    for( int index = 0; index < columnNames.length; index++ )
+      {
+      if( columnNames[ index ].equalsIgnoreCase( column ) )
+        columnType = columnTypes[ index ];
+      }
+    if( columnType == null )
+      throw new IllegalArgumentException( String.format( "predicate column '%s' not present in column names", column ) );
+
+    Object[] literals = new Object[ values.length ];
+    for( int index = 0; index < values.length; index++ )
+      literals[ index ] = toLiteral( values[ index ], columnType );
+
+    switch( operator )
+      {
+      case EQUAL:
+        builder.equals( column, literals[ 0 ] );
+        break;
+      case LESS_THAN:
+        builder.lessThan( column, literals[ 0 ] );
+        break;
+      case LESS_THAN_OR_EQUAL:
+        builder.lessThanEquals( column, literals[ 0 ] );
+        break;
+      case GREATER_THAN:
+        builder.startNot().lessThanEquals( column, literals[ 0 ] ).end();
+        break;
+      case GREATER_THAN_OR_EQUAL:
+        builder.startNot().lessThan( column, literals[ 0 ] ).end();
+        break;
+      case IN:
+        builder.in( column, literals );
+        break;
+      }
+    }
+
+  /**
+   * Converts the given value into a literal of the given Hive column type, as expected by SearchArgument.
+   */
+  static Object toLiteral( Object value, String columnType )
+    {
+    String type = columnType.toLowerCase();
+    if( type.indexOf( '(' ) > 0 )
+      type = type.substring( 0, type.indexOf( '(' ) );
+
+    if( type.equals( "tinyint" ) || type.equals( "smallint" ) || type.equals( "int" ) || type.equals( "bigint" ) )
+      return value instanceof Number ? ( (Number) value ).longValue() : Long.parseLong( value.toString() );
+    if( type.equals( "float" ) || type.equals( "double" ) )
+      return value instanceof Number ? ( (Number) value ).doubleValue() : Double.parseDouble( value.toString() );
+    if( type.equals( "string" ) || type.equals( "varchar" ) || type.equals( "char" ) )
+      return value.toString();
+    if( type.equals( "boolean" ) )
+      return value instanceof Boolean ? value : Boolean.valueOf( value.toString() );
+    if( type.equals( "date" ) )
+      return new DateWritable( value instanceof Date ? new java.sql.Date( ( (Date) value ).getTime() ) : java.sql.Date.valueOf( value.toString() ) );
+    if( type.equals( "timestamp" ) )
+      return value instanceof Date ? new Timestamp( ( (Date) value ).getTime() ) : Timestamp.valueOf( value.toString() );
+
+    throw new IllegalArgumentException( "predicates are not supported on columns of type " + columnType );
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( object == null || getClass() != object.getClass() )
+      return false;
+
+    ColumnPredicate that = (ColumnPredicate) object;
+    return operator == that.operator && ( column != null ? column.equals( that.column ) : that.column == null )
+      && Arrays.equals( values, that.values ) && Arrays.equals( children, that.children );
+    }
+
+  @Override
+  public int hashCode()
+    {
+    int result = operator.hashCode();
+    result = 31 * result + ( column != null ? column.hashCode() : 0 );
+    result = 31 * result + Arrays.hashCode( values );
+    result = 31 * result + Arrays.hashCode( children );
+    return result;
+    }
+
+  @Override
+  public String toString()
+    {
+    StringBuilder builder = new StringBuilder();
+    if( children != null )
+      {
+      builder.append( '(' );
+      for( int index = 0; index < children.length; index++ )
+        {
+        if( index > 0 )
+          builder.append( ' ' ).append( operator.name().toLowerCase() ).append( ' ' );
+        builder.append( children[ index ] );
+        }
+      return builder.append( ')' ).toString();
+      }
+
+    builder.append( column );
+    switch( operator )
+      {
+      case EQUAL:
+        return builder.append( " = " ).append( values[ 0 ] ).toString();
+      case LESS_THAN:
+        return builder.append( " < " ).append( values[ 0 ] ).toString();
+      case LESS_THAN_OR_EQUAL:
+        return builder.append( " <= " ).append( values[ 0 ] ).toString();
+      case GREATER_THAN:
+        return builder.append( " > " ).append( values[ 0 ] ).toString();
+      case GREATER_THAN_OR_EQUAL:
+        return builder.append( " >= " ).append( values[ 0 ] ).toString();
+      default:
+        return builder.append( " in " ).append( Arrays.toString( values ) ).toString();
+      }
+    }
+  }
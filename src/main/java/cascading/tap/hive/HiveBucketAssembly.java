@@ -0,0 +1,139 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.pipe.Each;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.pipe.SubAssembly;
+import cascading.pipe.assembly.Discard;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * SubAssembly, which distributes the tuples of a bucketed table over the reducers, so that every bucket is written by
+ * exactly one reducer. It has to be placed directly in front of the HiveTap sink of the table:
+ * <pre>
+ *   pipe = new HiveBucketAssembly( pipe, tableDescriptor );
+ *   flowDef.addTailSink( pipe, new HiveTap( tableDescriptor, tableDescriptor.toScheme(), SinkMode.REPLACE, false ) );
+ * </pre>
+ * The bucket of every tuple is computed with Hive's hash function of the bucket columns. The tuples are grouped by
+ * the bucket, using as many reducers as the table has buckets, and the sink writes one file per bucket. If the table
+ * declares sort columns, the tuples of every bucket are sorted by them in Hive's order, so that Hive can use
+ * sort-merge-bucket joins on the table.
+ */
+public class HiveBucketAssembly extends SubAssembly
+  {
+  /** name of the temporary field holding the bucket of a tuple */
+  public static final String BUCKET_FIELD = "__hive_bucket";
+
+  /** property for the number of reducers of a step */
+  static final String NUM_REDUCERS = "mapred.reduce.tasks";
+
+  /**
+   * Constructs a new HiveBucketAssembly for the given bucketed table.
+   *
+   * @param pipe            The tuples to write into the table.
+   * @param tableDescriptor The HiveTableDescriptor of the table.
+   */
+  public HiveBucketAssembly( Pipe pipe, HiveTableDescriptor tableDescriptor )
+    {
+    super( pipe );
+    if( !tableDescriptor.isBucketed() )
+      throw new IllegalArgumentException( String.format( "table '%s' is not bucketed", tableDescriptor.getTableName() ) );
+
+    Fields bucketField = new Fields( BUCKET_FIELD, Integer.class );
+    pipe = new Each( pipe, new Fields( tableDescriptor.getBucketColumns() ),
+      new BucketFunction( bucketField, tableDescriptor.getBucketColumnTypes(), tableDescriptor.getNumBuckets() ),
+      Fields.ALL );
+    pipe = new GroupBy( pipe, bucketField, getSortFields( tableDescriptor ) );
+    pipe.getStepConfigDef().setProperty( NUM_REDUCERS, Integer.toString( tableDescriptor.getNumBuckets() ) );
+    pipe = new Discard( pipe, bucketField );
+
+    setTails( pipe );
+    }
+
+  /**
+   * Returns the sort columns of the table with comparators ordering them like Hive or null, if the buckets of the table
+   * are not sorted.
+   */
+  private static Fields getSortFields( HiveTableDescriptor tableDescriptor )
+    {
+    if( !tableDescriptor.isSorted() )
+      return null;
+
+    String[] sortColumns = tableDescriptor.getSortColumns();
+    HiveSortComparator[] comparators = HiveSortComparator.forSortColumns( tableDescriptor );
+    Fields sortFields = new Fields( sortColumns );
+    for( int index = 0; index < sortColumns.length; index++ )
+      sortFields.setComparator( sortColumns[ index ], comparators[ index ] );
+    return sortFields;
+    }
+
+  /**
+   * Function computing the bucket of the tuples from the bucket columns given as arguments.
+   */
+  static class BucketFunction extends BaseOperation<HiveBucketHasher> implements Function<HiveBucketHasher>
+    {
+    /** Hive types of the bucket columns */
+    private final String[] bucketColumnTypes;
+
+    /** number of buckets of the table */
+    private final int numBuckets;
+
+    /** positions of the bucket columns within the arguments */
+    private final int[] positions;
+
+    BucketFunction( Fields bucketField, String[] bucketColumnTypes, int numBuckets )
+      {
+      super( bucketColumnTypes.length, bucketField );
+      this.bucketColumnTypes = bucketColumnTypes;
+      this.numBuckets = numBuckets;
+      this.positions = new int[ bucketColumnTypes.length ];
+      for( int index = 0; index < positions.length; index++ )
+        positions[ index ] = index;
+      }
+
+    @Override
+    public void prepare( FlowProcess flowProcess, OperationCall<HiveBucketHasher> operationCall )
+      {
+      operationCall.setContext( new HiveBucketHasher( bucketColumnTypes, numBuckets ) );
+      }
+
+    @Override
+    public void operate( FlowProcess flowProcess, FunctionCall<HiveBucketHasher> functionCall )
+      {
+      int bucket = functionCall.getContext().getBucket( functionCall.getArguments(), positions );
+      functionCall.getOutputCollector().add( new Tuple( bucket ) );
+      }
+
+    @Override
+    public void cleanup( FlowProcess flowProcess, OperationCall<HiveBucketHasher> operationCall )
+      {
+      operationCall.setContext( null );
+      }
+    }
+  }
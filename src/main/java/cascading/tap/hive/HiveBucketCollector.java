@@ -0,0 +1,250 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.io.IOException;
+
+import cascading.flow.FlowProcess;
+import cascading.scheme.ConcreteCall;
+import cascading.scheme.Scheme;
+import cascading.tap.TapException;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.OutputFormat;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.lib.LazyOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * TupleEntryCollector writing the tuples of a bucketed table into one file per bucket, named like the files written by
+ * Hive, e.g. 000003_0 for the fourth bucket. The bucket of a tuple is computed by a HiveBucketHasher. The files are
+ * opened lazily through the output format and the Scheme of the table, so every file format is supported.
+ * <p/>
+ * Since the file names only depend on the bucket, every bucket has to be written by a single task, which is what the
+ * {@link HiveBucketAssembly} takes care of. If the buckets of the table are sorted, the collector verifies that the
+ * tuples arrive in order and fails otherwise, since Hive would silently produce wrong results for unsorted buckets.
+ */
+class HiveBucketCollector extends TupleEntryCollector
+  {
+  /** property holding the id of the current task attempt */
+  static final String TASK_ATTEMPT_ID = "mapreduce.task.attempt.id";
+
+  /** property of the LazyOutputFormat holding the output format it wraps */
+  static final String LAZY_OUTPUT_FORMAT = "mapreduce.output.lazyoutputformat.outputformat";
+
+  /** attempt id used outside of tasks */
+  private static final String LOCAL_TASK_ATTEMPT_ID = "attempt_local_0000_r_000000_0";
+
+  private final FlowProcess<? extends Configuration> flowProcess;
+
+  /** the Scheme serializing the tuples */
+  private final Scheme scheme;
+
+  /** the configuration set up by sinkConfInit */
+  private final JobConf conf;
+
+  /** directory the bucket files are written to */
+  private final Path directory;
+
+  private final HiveBucketHasher hasher;
+
+  /** positions of the bucket columns within the tuples */
+  private final int[] positions;
+
+  /** comparators of the sort columns, null if the buckets are not sorted */
+  private final HiveSortComparator[] sortComparators;
+
+  /** positions of the sort columns within the tuples */
+  private final int[] sortPositions;
+
+  /** the open writers by bucket */
+  private final BucketWriter[] writers;
+
+  /**
+   * Constructs a new HiveBucketCollector.
+   *
+   * @param flowProcess The current FlowProcess.
+   * @param tap         The HiveTap of the bucketed table.
+   * @param conf        The configuration set up by sinkConfInit of the tap.
+   * @param directory   The directory to write the bucket files to.
+   */
+  HiveBucketCollector( FlowProcess<? extends Configuration> flowProcess, HiveTap tap, JobConf conf, Path directory )
+    {
+    HiveTableDescriptor tableDescriptor = tap.getTableDescriptor();
+    this.flowProcess = flowProcess;
+    this.scheme = tap.getScheme();
+    this.conf = conf;
+    this.directory = directory;
+    this.hasher = new HiveBucketHasher( tableDescriptor.getBucketColumnTypes(), tableDescriptor.getNumBuckets() );
+    this.positions = tableDescriptor.getBucketColumnPositions();
+    this.writers = new BucketWriter[ tableDescriptor.getNumBuckets() ];
+    this.sortPositions = tableDescriptor.getSortColumnPositions();
+    this.sortComparators = tableDescriptor.isSorted() ? HiveSortComparator.forSortColumns( tableDescriptor ) : null;
+
+    // Hadoop's output formats expect an output path and a task attempt, even if they are given absolute paths
+    if( FileOutputFormat.getOutputPath( conf ) == null )
+      FileOutputFormat.setOutputPath( conf, directory );
+    if( conf.get( TASK_ATTEMPT_ID ) == null )
+      conf.set( TASK_ATTEMPT_ID, LOCAL_TASK_ATTEMPT_ID );
+    }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void collect( TupleEntry tupleEntry ) throws IOException
+    {
+    BucketWriter writer = getWriter( hasher.getBucket( tupleEntry, positions ) );
+    if( sortComparators != null )
+      writer.checkOrder( tupleEntry );
+    writer.sinkCall.setOutgoingEntry( tupleEntry );
+    scheme.sink( flowProcess, writer.sinkCall );
+    }
+
+  /**
+   * Creates empty files for all buckets, which do not have a file in the directory yet. Hive expects exactly one file
+   * per bucket. The files are written by the output format of the table, so that they are valid, e.g. ORC files
+   * without any rows.
+   *
+   * @throws IOException in case the interaction with the FileSystem fails.
+   */
+  void createMissingBuckets() throws IOException
+    {
+    FileSystem fileSystem = directory.getFileSystem( conf );
+    for( int bucket = 0; bucket < writers.length; bucket++ )
+      {
+      if( !fileSystem.exists( getBucketFile( bucket ) ) )
+        getWriter( bucket );
+      }
+    close();
+    }
+
+  @Override
+  public void close()
+    {
+    try
+      {
+      for( int bucket = 0; bucket < writers.length; bucket++ )
+        {
+        if( writers[ bucket ] != null )
+          writers[ bucket ].close();
+        writers[ bucket ] = null;
+        }
+      }
+    catch( IOException exception )
+      {
+      throw new TapException( "unable to close bucket files in " + directory, exception );
+      }
+    finally
+      {
+      super.close();
+      }
+    }
+
+  private BucketWriter getWriter( int bucket ) throws IOException
+    {
+    if( writers[ bucket ] == null )
+      writers[ bucket ] = new BucketWriter( getBucketFile( bucket ) );
+    return writers[ bucket ];
+    }
+
+  private Path getBucketFile( int bucket )
+    {
+    return new Path( directory, HiveBucketHasher.getBucketFileName( bucket ) );
+    }
+
+  /**
+   * Returns the output format of the table. The LazyOutputFormat set up for the tasks by the HiveTap is unwrapped,
+   * since the files of empty buckets have to be created although nothing is written to them.
+   */
+  private OutputFormat getOutputFormat()
+    {
+    OutputFormat outputFormat = conf.getOutputFormat();
+    if( outputFormat instanceof LazyOutputFormat )
+      return ReflectionUtils.newInstance( conf.getClass( LAZY_OUTPUT_FORMAT, null, OutputFormat.class ), conf );
+    return outputFormat;
+    }
+
+  /**
+   * RecordWriter of a single bucket file together with the SinkCall of the Scheme writing to it.
+   */
+  private class BucketWriter implements OutputCollector
+    {
+    private final Path file;
+
+    private final RecordWriter writer;
+
+    /** values of the sort columns of the last tuple written */
+    private Object[] lastSortKey;
+
+    private final ConcreteCall<Object, OutputCollector> sinkCall = new ConcreteCall<Object, OutputCollector>();
+
+    @SuppressWarnings("unchecked")
+    BucketWriter( Path file ) throws IOException
+      {
+      this.file = file;
+      writer = getOutputFormat().getRecordWriter( file.getFileSystem( conf ), conf, file.toString(), Reporter.NULL );
+      sinkCall.setOutput( this );
+      scheme.sinkPrepare( flowProcess, sinkCall );
+      }
+
+    /**
+     * Fails, if the given tuple is sorted before the last tuple written to the file.
+     */
+    void checkOrder( TupleEntry tupleEntry )
+      {
+      if( lastSortKey == null )
+        {
+        lastSortKey = new Object[ sortPositions.length ];
+        }
+      else
+        {
+        int result = 0;
+        for( int index = 0; index < sortPositions.length && result == 0; index++ )
+          result = sortComparators[ index ].compare( lastSortKey[ index ], tupleEntry.getObject( sortPositions[ index ] ) );
+        if( result > 0 )
+          throw new TapException( String.format( "tuples written to bucket file %s are not sorted, use a HiveBucketAssembly to sort them", file ) );
+        }
+
+      for( int index = 0; index < sortPositions.length; index++ )
+        lastSortKey[ index ] = tupleEntry.getObject( sortPositions[ index ] );
+      }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void collect( Object key, Object value ) throws IOException
+      {
+      writer.write( key, value );
+      }
+
+    @SuppressWarnings("unchecked")
+    void close() throws IOException
+      {
+      scheme.sinkCleanup( flowProcess, sinkCall );
+      writer.close( Reporter.NULL );
+      }
+    }
+  }
@@ -0,0 +1,93 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import cascading.tuple.TupleEntry;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+
+/**
+ * HiveBucketHasher assigns the rows of a bucketed table to buckets the same way Hive does, when it inserts into the
+ * table: the hash codes of the bucket columns, as computed by ObjectInspectorUtils, are combined like in a List and the
+ * bucket is the non-negative hash modulo the number of buckets. The values are converted to the types of the bucket
+ * columns first, so that e.g. a String written to an int column lands in the same bucket as the parsed int.
+ * <p/>
+ * Instances are not thread safe, since the HiveObjectConverters cache the last used Converter.
+ */
+final class HiveBucketHasher
+  {
+  /** format of the names of bucket files, Hive identifies the bucket of a file by its position in the sorted names */
+  private static final String BUCKET_FILE_NAME_FORMAT = "%06d_0";
+
+  /** converters for the values of the bucket columns */
+  private final HiveObjectConverter[] converters;
+
+  /** number of buckets of the table */
+  private final int numBuckets;
+
+  /**
+   * Constructs a new HiveBucketHasher.
+   *
+   * @param bucketColumnTypes The Hive types of the bucket columns.
+   * @param numBuckets        The number of buckets of the table.
+   */
+  HiveBucketHasher( String[] bucketColumnTypes, int numBuckets )
+    {
+    this.converters = new HiveObjectConverter[ bucketColumnTypes.length ];
+    for( int index = 0; index < bucketColumnTypes.length; index++ )
+      converters[ index ] = new HiveObjectConverter( bucketColumnTypes[ index ] );
+    this.numBuckets = numBuckets;
+    }
+
+  /**
+   * Returns the bucket of the given row.
+   *
+   * @param entry     The row.
+   * @param positions The positions of the bucket columns within the row.
+   * @return the bucket between 0 and the number of buckets - 1.
+   */
+  int getBucket( TupleEntry entry, int[] positions )
+    {
+    int hashCode = 0;
+    for( int index = 0; index < converters.length; index++ )
+      {
+      HiveObjectConverter converter = converters[ index ];
+      Object value = converter.toHive( entry.getObject( positions[ index ] ) );
+      hashCode = 31 * hashCode + ObjectInspectorUtils.hashCode( value, converter.getInspector() );
+      }
+    return ( hashCode & Integer.MAX_VALUE ) % numBuckets;
+    }
+
+  int getNumBuckets()
+    {
+    return numBuckets;
+    }
+
+  /**
+   * Returns the name of the file holding the given bucket.
+   *
+   * @param bucket The bucket.
+   * @return the file name.
+   */
+  static String getBucketFileName( int bucket )
+    {
+    return String.format( BUCKET_FILE_NAME_FORMAT, bucket );
+    }
+  }
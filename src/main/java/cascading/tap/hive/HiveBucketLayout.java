@@ -0,0 +1,329 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+
+/**
+ * HiveBucketLayout describes how the rows of a bucketed table are distributed over the files of the table: the bucket
+ * columns, the number of buckets, the bucket of a given key and the file holding each bucket. Like Hive, it maps the
+ * files of a table or partition directory to buckets by the order of their names, which requires exactly one file per
+ * bucket.
+ * <p/>
+ * The layout is used by {@link HiveTap} to read only the buckets, which can contain rows matching a
+ * {@link ColumnPredicate}. It can also be used to process identically bucketed tables bucket by bucket, e.g. by joining
+ * the same bucket of two tables selected via {@link HiveTap#setBuckets(int...)}.
+ */
+public class HiveBucketLayout implements Serializable
+  {
+  /** filter for the data files of a directory, like in Hive files starting with '_' or '.' are ignored */
+  private static final PathFilter DATA_FILES = new PathFilter()
+  {
+  @Override
+  public boolean accept( Path path )
+    {
+    return !path.getName().startsWith( "_" ) && !path.getName().startsWith( "." );
+    }
+  };
+
+  /** lower case names of the bucket columns */
+  private final String[] bucketColumns;
+
+  /** Hive types of the bucket columns */
+  private final String[] bucketColumnTypes;
+
+  /** number of buckets */
+  private final int numBuckets;
+
+  /** hasher computing the buckets, created lazily since it is not serializable */
+  private transient HiveBucketHasher hasher;
+
+  /**
+   * Constructs a new HiveBucketLayout for the given bucketed table.
+   *
+   * @param tableDescriptor The HiveTableDescriptor of the table.
+   */
+  public HiveBucketLayout( HiveTableDescriptor tableDescriptor )
+    {
+    if( !tableDescriptor.isBucketed() )
+      throw new IllegalArgumentException( String.format( "table '%s' is not bucketed", tableDescriptor.getTableName() ) );
+
+    this.bucketColumns = new String[ tableDescriptor.getBucketColumns().length ];
+    for( int index = 0; index < bucketColumns.length; index++ )
+      bucketColumns[ index ] = tableDescriptor.getBucketColumns()[ index ].toLowerCase();
+    this.bucketColumnTypes = tableDescriptor.getBucketColumnTypes();
+    this.numBuckets = tableDescriptor.getNumBuckets();
+    }
+
+  public String[] getBucketColumns()
+    {
+    return bucketColumns.clone();
+    }
+
+  public int getNumBuckets()
+    {
+    return numBuckets;
+    }
+
+  /**
+   * Returns the bucket of the rows with the given values of the bucket columns.
+   *
+   * @param values The values of the bucket columns in the order of the bucket columns.
+   * @return the bucket.
+   */
+  public int getBucket( Object... values )
+    {
+    if( values.length != bucketColumns.length )
+      throw new IllegalArgumentException( String.format( "expected %d values of the bucket columns %s, got %d",
+        bucketColumns.length, Arrays.toString( bucketColumns ), values.length ) );
+
+    if( hasher == null )
+      hasher = new HiveBucketHasher( bucketColumnTypes, numBuckets );
+
+    int[] positions = new int[ values.length ];
+    for( int index = 0; index < positions.length; index++ )
+      positions[ index ] = index;
+    return hasher.getBucket( new TupleEntry( new Fields( bucketColumns ), new Tuple( values ) ), positions );
+    }
+
+  /**
+   * Returns the buckets, which can contain rows matching the given predicate. Buckets can only be excluded, if the
+   * predicate restricts all bucket columns to a set of values via {@link ColumnPredicate#equal(String, Object)} or
+   * {@link ColumnPredicate#in(String, Object...)}, possibly combined by AND and OR.
+   *
+   * @param predicate The predicate.
+   * @return the matching buckets or null, if the predicate does not exclude any bucket.
+   */
+  public SortedSet<Integer> getBuckets( ColumnPredicate predicate )
+    {
+    if( predicate == null )
+      return null;
+
+    Set<Integer> buckets = collectBuckets( predicate );
+    return buckets != null ? new TreeSet<Integer>( buckets ) : null;
+    }
+
+  /**
+   * Returns the files of the given table or partition directory by bucket. Hive assigns the files to buckets in the
+   * order of their names.
+   *
+   * @param conf      The Configuration of the current flow.
+   * @param directory The directory of the table or of one of its partitions.
+   * @return the file of each bucket or null, if the number of files does not match the number of buckets.
+   * @throws IOException in case the interaction with the FileSystem fails.
+   */
+  public List<Path> getBucketFiles( Configuration conf, Path directory ) throws IOException
+    {
+    FileSystem fileSystem = directory.getFileSystem( conf );
+    FileStatus[] statuses = fileSystem.listStatus( directory, DATA_FILES );
+    if( statuses == null || statuses.length != numBuckets )
+      return null;
+
+    List<Path> files = new ArrayList<Path>( statuses.length );
+    for( FileStatus status : statuses )
+      {
+      if( status.isDirectory() )
+        return null;
+      files.add( status.getPath() );
+      }
+
+    Collections.sort( files );
+    return files;
+    }
+
+  /**
+   * Private helper method returning the buckets matching the given predicate or null, if all buckets match.
+   */
+  private Set<Integer> collectBuckets( ColumnPredicate predicate )
+    {
+    switch( predicate.getOperator() )
+      {
+      case OR:
+        Set<Integer> union = new HashSet<Integer>();
+        for( ColumnPredicate child : predicate.getChildren() )
+          {
+          Set<Integer> buckets = collectBuckets( child );
+          if( buckets == null )
+            return null;
+          union.addAll( buckets );
+          }
+        return union;
+
+      case AND:
+        Map<String, Set<Object>> values = new HashMap<String, Set<Object>>();
+        Set<Integer> intersection = null;
+        for( ColumnPredicate child : predicate.getChildren() )
+          {
+          if( isBucketColumnLiteral( child ) )
+            {
+            addValues( values, child );
+            continue;
+            }
+
+          Set<Integer> buckets = collectBuckets( child );
+          if( buckets != null )
+            intersection = intersect( intersection, buckets );
+          }
+        return intersect( intersection, toBuckets( values ) );
+
+      case EQUAL:
+      case IN:
+        Map<String, Set<Object>> literal = new HashMap<String, Set<Object>>();
+        if( isBucketColumnLiteral( predicate ) )
+          addValues( literal, predicate );
+        return toBuckets( literal );
+
+      default:
+        return null;
+      }
+    }
+
+  private boolean isBucketColumnLiteral( ColumnPredicate predicate )
+    {
+    ColumnPredicate.Operator operator = predicate.getOperator();
+    return ( operator == ColumnPredicate.Operator.EQUAL || operator == ColumnPredicate.Operator.IN )
+      && getBucketColumnIndex( predicate.getColumn() ) >= 0;
+    }
+
+  /**
+   * Private helper method adding the values of the given EQUAL or IN predicate to the values allowed for its column.
+   * The values are converted to the type of the column, so that e.g. "7" and 7 are the same value of an int column.
+   */
+  private void addValues( Map<String, Set<Object>> values, ColumnPredicate predicate )
+    {
+    int index = getBucketColumnIndex( predicate.getColumn() );
+    Set<Object> converted = new HashSet<Object>();
+    for( Object value : predicate.getValues() )
+      converted.add( new HiveObjectConverter( bucketColumnTypes[ index ] ).toHive( value ) );
+
+    Set<Object> existing = values.get( bucketColumns[ index ] );
+    if( existing != null )
+      existing.retainAll( converted );
+    else
+      values.put( bucketColumns[ index ], converted );
+    }
+
+  /**
+   * Private helper method returning the buckets of all combinations of the given values or null, if not all bucket
+   * columns are restricted.
+   */
+  private Set<Integer> toBuckets( Map<String, Set<Object>> values )
+    {
+    List<Object[]> keys = new ArrayList<Object[]>();
+    keys.add( new Object[ bucketColumns.length ] );
+    for( int index = 0; index < bucketColumns.length; index++ )
+      {
+      Set<Object> columnValues = values.get( bucketColumns[ index ] );
+      if( columnValues == null )
+        return null;
+
+      List<Object[]> combinations = new ArrayList<Object[]>( keys.size() * columnValues.size() );
+      for( Object[] key : keys )
+        {
+        for( Object value : columnValues )
+          {
+          Object[] combination = key.clone();
+          combination[ index ] = value;
+          combinations.add( combination );
+          }
+        }
+      keys = combinations;
+      }
+
+    Set<Integer> buckets = new HashSet<Integer>();
+    for( Object[] key : keys )
+      buckets.add( getBucket( key ) );
+    return buckets;
+    }
+
+  private int getBucketColumnIndex( String column )
+    {
+    for( int index = 0; index < bucketColumns.length; index++ )
+      {
+      if( bucketColumns[ index ].equalsIgnoreCase( column ) )
+        return index;
+      }
+    return -1;
+    }
+
+  private static Set<Integer> intersect( Set<Integer> left, Set<Integer> right )
+    {
+    if( left == null )
+      return right;
+    if( right == null )
+      return left;
+
+    Set<Integer> result = new HashSet<Integer>( left );
+    result.retainAll( right );
+    return result;
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( object == null || getClass() != object.getClass() )
+      return false;
+
+    HiveBucketLayout that = (HiveBucketLayout) object;
+    return numBuckets == that.numBuckets && Arrays.equals( bucketColumns, that.bucketColumns )
+      && Arrays.equals( bucketColumnTypes, that.bucketColumnTypes );
+    }
+
+  @Override
+  public int hashCode()
+    {
+    int result = Arrays.hashCode( bucketColumns );
+    result = 31 * result + Arrays.hashCode( bucketColumnTypes );
+    result = 31 * result + numBuckets;
+    return result;
+    }
+
+  @Override
+  public String toString()
+    {
+    return "HiveBucketLayout{" +
+      "bucketColumns=" + Arrays.toString( bucketColumns ) +
+      ", numBuckets=" + numBuckets +
+      '}';
+    }
+  }
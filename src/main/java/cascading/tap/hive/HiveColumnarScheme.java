@@ -0,0 +1,176 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.util.Properties;
+import java.util.SortedSet;
+
+import cascading.flow.FlowProcess;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+
+/**
+ * HiveColumnarScheme is the base class of Schemes reading and writing the columnar file formats of Hive. The Scheme
+ * stores all columns of a table, which are not partition keys. When used as a source, only the columns of the source
+ * fields are requested from the input format, so that all other columns can be skipped. An optional
+ * {@link ColumnPredicate} is pushed down into the input format, so that stripes or row groups, which cannot contain
+ * matching rows, are skipped as well.
+ * <p/>
+ * Rows are converted by the SerDe of the file format. Values are converted between Cascading and Hive following the
+ * casting rules of Hive.
+ */
+public abstract class HiveColumnarScheme extends HiveSerDeScheme
+  {
+  /** property holding the serialized SearchArgument pushed down into the input format */
+  static final String SARG_PUSHDOWN = "sarg.pushdown";
+
+  /** predicate pushed down into the input format, if any */
+  private ColumnPredicate predicate;
+
+  /**
+   * Constructs a new HiveColumnarScheme writing all given columns and reading only the given source fields.
+   *
+   * @param fields        The columns stored in the files.
+   * @param columnTypes   The Hive types of the columns.
+   * @param storageFormat The file format, which determines the SerDe.
+   * @param sourceFields  The columns to read, which have to be a subset of fields.
+   */
+  protected HiveColumnarScheme( Fields fields, String[] columnTypes, HiveStorageFormat storageFormat, Fields sourceFields )
+    {
+    super( fields, columnTypes, storageFormat.getSerializationLib(), null, sourceFields );
+    }
+
+  public ColumnPredicate getPredicate()
+    {
+    return predicate;
+    }
+
+  /**
+   * Sets the predicate to push down into the input format, when the Scheme is used as a source. The columns of the
+   * predicate are read in addition to the source fields, so that the predicate can be evaluated. Rows of the stripes or
+   * row groups, which may contain matching rows, are not filtered.
+   *
+   * @param predicate The predicate or null.
+   */
+  public void setPredicate( ColumnPredicate predicate )
+    {
+    if( predicate != null )
+      predicate.toSearchArgument( getColumnNames(), getColumnTypes() );
+
+    this.predicate = predicate;
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<? extends Configuration> flowProcess, Tap<Configuration, RecordReader, OutputCollector> tap, Configuration conf )
+    {
+    super.sourceConfInit( flowProcess, tap, conf );
+
+    if( predicate != null )
+      {
+      conf.set( SARG_PUSHDOWN, predicate.toSearchArgument( getColumnNames(), getColumnTypes() ).toKryo() );
+      conf.setBoolean( HiveConf.ConfVars.HIVEOPTINDEXFILTER.varname, true );
+      }
+    }
+
+  /**
+   * Returns the positions of the source fields and the predicate columns. ORC maps the names of the read columns to the
+   * columns of the files in ascending order.
+   */
+  @Override
+  protected SortedSet<Integer> getReadColumns()
+    {
+    SortedSet<Integer> readColumns = super.getReadColumns();
+    if( predicate != null )
+      {
+      for( String column : predicate.getColumns() )
+        readColumns.add( getColumnIndex( column ) );
+      }
+    return readColumns;
+    }
+
+  /**
+   * Returns the table properties describing the columns stored in the files, as expected by the SerDe and the output
+   * format.
+   *
+   * @param conf The Configuration set up by sourceConfInit or sinkConfInit.
+   * @return the table properties.
+   */
+  static Properties getTableProperties( Configuration conf )
+    {
+    Properties properties = new Properties();
+    properties.setProperty( serdeConstants.LIST_COLUMNS, conf.get( serdeConstants.LIST_COLUMNS ) );
+    properties.setProperty( serdeConstants.LIST_COLUMN_TYPES, conf.get( serdeConstants.LIST_COLUMN_TYPES ) );
+    return properties;
+    }
+
+  /**
+   * Resolves the name of an output file handed in by Cascading against the work output path of the current task. Hive's
+   * output formats take the name as the path of the file, while Cascading only passes the file name, like "part-00000".
+   */
+  static Path getTaskOutputFile( JobConf conf, String name )
+    {
+    Path file = new Path( name );
+    Path workOutputPath = FileOutputFormat.getWorkOutputPath( conf );
+    if( file.isAbsolute() || workOutputPath == null )
+      return file;
+    return new Path( workOutputPath, name );
+    }
+
+  private int getColumnIndex( String name )
+    {
+    String[] columnNames = getColumnNames();
+    for( int index = 0; index < columnNames.length; index++ )
+      {
+      if( columnNames[ index ].equalsIgnoreCase( name ) )
+        return index;
+      }
+    throw new IllegalArgumentException( String.format( "predicate column '%s' not present in column names", name ) );
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( !super.equals( object ) )
+      return false;
+
+    HiveColumnarScheme that = (HiveColumnarScheme) object;
+    return predicate != null ? predicate.equals( that.predicate ) : that.predicate == null;
+    }
+
+  @Override
+  public int hashCode()
+    {
+    int result = super.hashCode();
+    result = 31 * result + ( predicate != null ? predicate.hashCode() : 0 );
+    return result;
+    }
+  }
@@ -0,0 +1,177 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.apache.hadoop.hive.common.type.HiveBaseChar;
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils.PrimitiveTypeEntry;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+
+/**
+ * HiveObjectConverter converts the values of Cascading tuples into the Java objects expected by the standard Java
+ * ObjectInspector of a Hive column and back. Primitive values are converted following the casting rules of Hive, e.g.
+ * a String is parsed, when it is written to an int column. Values of complex columns are passed through unchanged.
+ * <p/>
+ * Instances are not thread safe, since the last used Hive Converter is cached.
+ */
+class HiveObjectConverter
+  {
+  /** the standard Java ObjectInspector of the column */
+  private final ObjectInspector inspector;
+
+  /** class of the last converted value */
+  private Class<?> sourceClass;
+
+  /** Converter for values of sourceClass */
+  private ObjectInspectorConverters.Converter converter;
+
+  /**
+   * Constructs a new HiveObjectConverter for a column of the given Hive type.
+   *
+   * @param columnType The Hive type of the column.
+   */
+  HiveObjectConverter( String columnType )
+    {
+    this.inspector = TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo( TypeInfoUtils.getTypeInfoFromTypeString( columnType ) );
+    }
+
+  /**
+   * Returns the standard Java ObjectInspector of the column.
+   *
+   * @return the ObjectInspector.
+   */
+  ObjectInspector getInspector()
+    {
+    return inspector;
+    }
+
+  /**
+   * Converts the given value of a Cascading tuple into an object understood by the ObjectInspector of the column.
+   *
+   * @param value The value to convert.
+   * @return the converted value.
+   */
+  Object toHive( Object value )
+    {
+    if( value == null || inspector.getCategory() != ObjectInspector.Category.PRIMITIVE )
+      return value;
+
+    if( value instanceof BigDecimal )
+      value = HiveDecimal.create( (BigDecimal) value );
+    else if( value instanceof Date && !( value instanceof java.sql.Date ) && !( value instanceof Timestamp ) )
+      value = new Timestamp( ( (Date) value ).getTime() );
+
+    if( value.getClass() != sourceClass )
+      {
+      PrimitiveTypeEntry entry = PrimitiveObjectInspectorUtils.getTypeEntryFromPrimitiveJavaClass( value.getClass() );
+      if( entry == null )
+        {
+        value = value.toString();
+        entry = PrimitiveObjectInspectorUtils.getTypeEntryFromPrimitiveJavaClass( String.class );
+        }
+      ObjectInspector source = PrimitiveObjectInspectorFactory.getPrimitiveJavaObjectInspector( entry.primitiveCategory );
+      converter = ObjectInspectorConverters.getConverter( source, inspector );
+      sourceClass = value.getClass();
+      }
+
+    return converter.convert( value );
+    }
+
+  /**
+   * Converts the given Hive object into a value for a Cascading tuple. Hive specific types like HiveDecimal or
+   * HiveVarchar are converted into their Java counterparts.
+   *
+   * @param data      The Hive object.
+   * @param inspector The ObjectInspector of the object.
+   * @return the converted value.
+   */
+  static Object toCascading( Object data, ObjectInspector inspector )
+    {
+    if( data == null )
+      return null;
+
+    Object value = inspector.getCategory() == ObjectInspector.Category.PRIMITIVE
+      ? ( (PrimitiveObjectInspector) inspector ).getPrimitiveJavaObject( data )
+      : ObjectInspectorUtils.copyToStandardJavaObject( data, inspector );
+
+    if( value instanceof HiveDecimal )
+      return ( (HiveDecimal) value ).bigDecimalValue();
+    if( value instanceof HiveBaseChar )
+      return value.toString();
+    return value;
+    }
+  
+  /**
+   * Returns the type of the values of a Hive column in Cascading tuples, which is the type of the values returned by
+   * {@link #toCascading(Object, ObjectInspector)}. Values of complex columns are typed as Object.
+   *
+   * @param columnType The Hive type of the column.
+   * @return the Java type of the values.
+   */
+  static Type toCascadingType( String columnType )
+    {
+    TypeInfo typeInfo = TypeInfoUtils.getTypeInfoFromTypeString( columnType );
+    if( typeInfo.getCategory() != ObjectInspector.Category.PRIMITIVE )
+      return Object.class;
+
+    switch( ( (PrimitiveTypeInfo) typeInfo ).getPrimitiveCategory() )
+      {
+      case BOOLEAN:
+        return Boolean.class;
+      case BYTE:
+        return Byte.class;
+      case SHORT:
+        return Short.class;
+      case INT:
+        return Integer.class;
+      case LONG:
+        return Long.class;
+      case FLOAT:
+        return Float.class;
+      case DOUBLE:
+        return Double.class;
+      case DECIMAL:
+        return BigDecimal.class;
+      case DATE:
+        return java.sql.Date.class;
+      case TIMESTAMP:
+        return Timestamp.class;
+      case BINARY:
+        return byte[].class;
+      default:
+        return String.class;
+      }
+    }
+  }
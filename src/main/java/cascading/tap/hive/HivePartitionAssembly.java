@@ -0,0 +1,161 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.pipe.Each;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.pipe.SubAssembly;
+import cascading.pipe.assembly.Discard;
+import cascading.property.ConfigDef;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * SubAssembly, which clusters the tuples of a partitioned table by partition, so that every partition is written by
+ * exactly one reducer. It has to be placed directly in front of the HivePartitionTap sink of the table:
+ * <pre>
+ *   pipe = new HivePartitionAssembly( pipe, tableDescriptor );
+ *   flowDef.addTailSink( pipe, new HivePartitionTap( new HiveTap( tableDescriptor, tableDescriptor.toScheme() ) ) );
+ * </pre>
+ * The tuples are grouped by the partition keys, so every reducer receives the tuples of its partitions one partition
+ * after the other. The sink therefore needs only one open writer at a time and writes one file per partition, instead
+ * of one file per partition and reducer. Unless configured otherwise, {@link HivePartitionTap#MAX_OPEN_WRITERS} is set
+ * to 1 for the step.
+ * <p/>
+ * A single hot partition, e.g. the current day, makes its reducer the long tail of the job. Given a number of salts
+ * greater than 1, the map tasks sample the frequencies of the partitions they see. The tuples of partitions with a
+ * share of at least the hot fraction are spread round robin over that many salts, and every salt of a hot partition is
+ * grouped separately. So the partition is written by up to that many reducers, each writing its own file into the
+ * partition directory, while all other partitions are still written by a single reducer.
+ */
+public class HivePartitionAssembly extends SubAssembly
+  {
+  /** name of the temporary field holding the salt of a tuple */
+  public static final String SALT_FIELD = "__hive_partition_salt";
+
+  /** default minimum share of the tuples of a hot partition */
+  public static final double DEFAULT_HOT_FRACTION = 0.1;
+
+  /**
+   * Constructs a new HivePartitionAssembly for the given partitioned table.
+   *
+   * @param pipe            The tuples to write into the table.
+   * @param tableDescriptor The HiveTableDescriptor of the table.
+   */
+  public HivePartitionAssembly( Pipe pipe, HiveTableDescriptor tableDescriptor )
+    {
+    this( pipe, tableDescriptor, 1 );
+    }
+
+  /**
+   * Constructs a new HivePartitionAssembly for the given partitioned table, which spreads the tuples of hot partitions
+   * over the given number of salts, using the {@link #DEFAULT_HOT_FRACTION}.
+   *
+   * @param pipe            The tuples to write into the table.
+   * @param tableDescriptor The HiveTableDescriptor of the table.
+   * @param numSalts        The number of reducers hot partitions are spread over, 1 to disable salting.
+   */
+  public HivePartitionAssembly( Pipe pipe, HiveTableDescriptor tableDescriptor, int numSalts )
+    {
+    this( pipe, tableDescriptor, numSalts, DEFAULT_HOT_FRACTION );
+    }
+
+  /**
+   * Constructs a new HivePartitionAssembly for the given partitioned table, which spreads the tuples of hot partitions
+   * over the given number of salts.
+   *
+   * @param pipe            The tuples to write into the table.
+   * @param tableDescriptor The HiveTableDescriptor of the table.
+   * @param numSalts        The number of reducers hot partitions are spread over, 1 to disable salting.
+   * @param hotFraction     The minimum share of the tuples seen by a map task of a hot partition.
+   */
+  public HivePartitionAssembly( Pipe pipe, HiveTableDescriptor tableDescriptor, int numSalts, double hotFraction )
+    {
+    super( pipe );
+    if( !tableDescriptor.isPartitioned() )
+      throw new IllegalArgumentException( String.format( "table '%s' is not partitioned", tableDescriptor.getTableName() ) );
+    if( numSalts < 1 )
+      throw new IllegalArgumentException( "numSalts must be positive, got " + numSalts );
+    if( hotFraction <= 0 || hotFraction > 1 )
+      throw new IllegalArgumentException( "hotFraction must be within (0, 1], got " + hotFraction );
+
+    Fields groupFields = new Fields( tableDescriptor.getPartitionKeys() );
+    Fields saltField = new Fields( SALT_FIELD, Integer.class );
+    if( numSalts > 1 )
+      {
+      // grouping by partition first keeps the salts of a partition, which end up on the same reducer, adjacent
+      pipe = new Each( pipe, groupFields, new SaltFunction( saltField, numSalts, hotFraction ), Fields.ALL );
+      groupFields = groupFields.append( saltField );
+      }
+
+    pipe = new GroupBy( pipe, groupFields );
+    pipe.getStepConfigDef().setProperty( ConfigDef.Mode.DEFAULT, HivePartitionTap.MAX_OPEN_WRITERS, "1" );
+
+    if( numSalts > 1 )
+      pipe = new Discard( pipe, saltField );
+
+    setTails( pipe );
+    }
+
+  /**
+   * Function computing the salt of the tuples from the partition keys given as arguments.
+   */
+  static class SaltFunction extends BaseOperation<HivePartitionSampler> implements Function<HivePartitionSampler>
+    {
+    /** number of salts hot partitions are spread over */
+    private final int numSalts;
+
+    /** minimum share of the tuples of a hot partition */
+    private final double hotFraction;
+
+    SaltFunction( Fields saltField, int numSalts, double hotFraction )
+      {
+      super( saltField );
+      this.numSalts = numSalts;
+      this.hotFraction = hotFraction;
+      }
+
+    @Override
+    public void prepare( FlowProcess flowProcess, OperationCall<HivePartitionSampler> operationCall )
+      {
+      operationCall.setContext( new HivePartitionSampler( numSalts, hotFraction ) );
+      }
+
+    @Override
+    public void operate( FlowProcess flowProcess, FunctionCall<HivePartitionSampler> functionCall )
+      {
+      int salt = functionCall.getContext().getSalt( functionCall.getArguments().getTuple() );
+      functionCall.getOutputCollector().add( new Tuple( salt ) );
+      }
+
+    @Override
+    public void cleanup( FlowProcess flowProcess, OperationCall<HivePartitionSampler> operationCall )
+      {
+      operationCall.setContext( null );
+      }
+    }
+  }
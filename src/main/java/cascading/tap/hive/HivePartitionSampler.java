@@ -0,0 +1,100 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import cascading.tuple.Tuple;
+
+/**
+ * HivePartitionSampler spreads the tuples of hot partitions over several salts, while the tuples of all other
+ * partitions get the salt 0. It counts the partitions of all tuples seen so far. Once the sample holds at least
+ * {@link #MIN_SAMPLE_SIZE} tuples, a partition is hot, if its share of the sample is at least the given fraction. The
+ * tuples of a hot partition are assigned to the salts round robin.
+ * <p/>
+ * Instances are not thread safe.
+ */
+final class HivePartitionSampler
+  {
+  /** number of tuples to sample, before any partition is considered hot */
+  static final int MIN_SAMPLE_SIZE = 1000;
+
+  /** number of salts the tuples of hot partitions are spread over */
+  private final int numSalts;
+
+  /** minimum share of the sample of a hot partition */
+  private final double hotFraction;
+
+  /** counters by partition */
+  private final Map<Tuple, Counter> counters = new HashMap<Tuple, Counter>();
+
+  /** number of tuples sampled */
+  private long sampled = 0;
+
+  /**
+   * Constructs a new HivePartitionSampler.
+   *
+   * @param numSalts    The number of salts the tuples of hot partitions are spread over.
+   * @param hotFraction The minimum share of all tuples of a hot partition.
+   */
+  HivePartitionSampler( int numSalts, double hotFraction )
+    {
+    this.numSalts = numSalts;
+    this.hotFraction = hotFraction;
+    }
+
+  /**
+   * Samples the given partition and returns the salt of the current tuple.
+   *
+   * @param partition The values of the partition keys of the tuple. The Tuple is copied, if it is kept.
+   * @return the salt between 0 and the number of salts - 1.
+   */
+  int getSalt( Tuple partition )
+    {
+    Counter counter = counters.get( partition );
+    if( counter == null )
+      {
+      counter = new Counter();
+      counters.put( new Tuple( partition ), counter );
+      }
+
+    counter.count++;
+    sampled++;
+
+    if( sampled < MIN_SAMPLE_SIZE || counter.count < hotFraction * sampled )
+      return 0;
+
+    return (int) ( counter.salted++ % numSalts );
+    }
+
+  /**
+   * Mutable counters of a partition.
+   */
+  private static final class Counter
+    {
+    /** number of tuples of the partition */
+    long count;
+
+    /** number of tuples of the partition assigned to a salt while it was hot */
+    long salted;
+    }
+  }
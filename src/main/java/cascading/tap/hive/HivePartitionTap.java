@@ -21,21 +21,42 @@
 package cascading.tap.hive;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import cascading.CascadingException;
 import cascading.tap.SinkMode;
+import cascading.tap.TapException;
 import cascading.flow.FlowProcess;
 import cascading.tap.hadoop.PartitionTap;
 import cascading.tuple.TupleEntryCollector;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.hadoop.mapred.OutputCollector;
 
 /**
  * Subclass of PartitionTap which registers partitions created in a Cascading Flow in the HiveMetaStore. Since the registering
  * is happening cluster side, the MetaStore has to be deployed as a standalone service.
+ * <p/>
+ * Every task writes a file into every partition it receives tuples for. A {@link HivePartitionAssembly} in front of the
+ * tap clusters the tuples by partition, so that every partition is written by a single reducer.
  */
 public class HivePartitionTap extends PartitionTap
   {
+  /**
+   * property for the maximum number of partition writers kept open by a task. It overrides the open writes threshold
+   * of the tap within the tasks.
+   */
+  public static final String MAX_OPEN_WRITERS = "cascading.hive.partition.max.open.writers";
+
+  /** counter group used for reporting partition writes */
+  public static final String COUNTER_GROUP = "cascading.hive.HivePartitionTap";
+
+  /** counter of the partition writers closed to stay within the maximum number of open writers */
+  public static final String WRITERS_EVICTED = "writers.evicted";
+
   /**
    * Constructs a new HivePartitionTap with the given HiveTap as the parent directory.
    * @param parent The parent directory.
@@ -56,12 +77,38 @@ public class HivePartitionTap extends PartitionTap
     }
 
   /**
-   * Subclass of PartitionCollector, which will register each partition in the HiveMetaStore on the fly.
+   * Constructs a new HivePartitionTap with the given HiveTap as the parent directory, the given SinkMode and the given
+   * maximum number of partition writers kept open by a task.
+   * @param parent The parent directory.
+   * @param sinkMode The sinkMode of this tap.
+   * @param maxOpenWriters The maximum number of open partition writers.
+   */
+  public HivePartitionTap( HiveTap parent, SinkMode sinkMode, int maxOpenWriters )
+    {
+    super( parent, parent.getTableDescriptor().getPartition(), sinkMode, false, maxOpenWriters );
+
+    if( maxOpenWriters < 1 )
+      throw new IllegalArgumentException( "maxOpenWriters must be positive, got " + maxOpenWriters );
+    }
+
+  /**
+   * Subclass of PartitionCollector, which keeps track of all partitions written and registers them in the
+   * HiveMetaStore in bulk, when the collector is closed. If {@link HiveTap#PARTITION_MANIFESTS_ENABLED} is set, the
+   * partitions are written to a manifest instead and registered by the client, when the resource is committed.
+   * <p/>
+   * The least recently used partition writers are closed by the PartitionCollector, once the open writes threshold of
+   * the tap is exceeded, see {@link #MAX_OPEN_WRITERS}. Writing to their partitions again opens new part files.
    */
   class HivePartitionCollector extends PartitionCollector
     {
     private FlowProcess<? extends Configuration> flowProcess;
 
+    /** paths of all partitions written by this collector in order of appearance */
+    private final Set<String> partitionPaths = new LinkedHashSet<String>();
+
+    /** true once the collector itself is closed, writers closed before have been evicted */
+    private boolean closing;
+
     /**
      * Constructs a new HivePartitionCollector instance with the current FlowProcess instance.
      * @param flowProcess The currently running FlowProcess.
@@ -75,30 +122,108 @@ public class HivePartitionTap extends PartitionTap
     @Override
     public void closeCollector( String path )
       {
-      HivePartition partition = (HivePartition) getPartition();
+      // collectors can be closed and re-opened several times for the same partition, so we only remember the path.
+      partitionPaths.add( path );
+      if( !closing )
+        flowProcess.increment( COUNTER_GROUP, WRITERS_EVICTED, 1 );
+      super.closeCollector( path );
+      }
+
+    @Override
+    public void close()
+      {
+      closing = true;
+      super.close();
+
       HiveTap tap = (HiveTap) getParent();
       try
         {
-        // register the new partition, when we close the collector. If it already exists, nothing will happen.
-        tap.registerPartition( flowProcess.getConfigCopy(), partition.toHivePartition( path, tap.getTableDescriptor() ) );
+        if( !partitionPaths.isEmpty() )
+          {
+          Configuration conf = flowProcess.getConfigCopy();
+          // leave the registration to the client, if enabled
+          if( conf.getBoolean( HiveTap.PARTITION_MANIFESTS_ENABLED, false ) )
+            tap.writePartitionManifest( conf, partitionPaths );
+          else
+            tap.registerPartitions( conf, toHivePartitions( tap ) );
+          }
         }
       catch( IOException exception )
         {
         throw new CascadingException( exception );
         }
-       finally
+      finally
         {
-        super.closeCollector( path );
+        partitionPaths.clear();
+        MetaStoreMetrics.getInstance().reportTo( flowProcess );
         }
       }
+
+    /**
+     * Converts the paths of all written partitions to Hive MetaStore Partition objects.
+     */
+    private List<Partition> toHivePartitions( HiveTap tap )
+      {
+      HivePartition partition = (HivePartition) getPartition();
+      List<Partition> partitions = new ArrayList<Partition>( partitionPaths.size() );
+      for( String path : partitionPaths )
+        partitions.add( partition.toHivePartition( path, tap.getTableDescriptor() ) );
+      return partitions;
+      }
+    }
+
+  /**
+   * Returns the locations of the partitions registered in the MetaStore, if the parent HiveTap has a partition filter
+   * or {@link HiveTap#METASTORE_PARTITION_LISTING_ENABLED} is set. Otherwise all partition directories below the table
+   * location are returned. Since the partition values are derived from the paths, partitions with custom locations
+   * have to reside below the table location to be read by a HivePartitionTap.
+   */
+  @Override
+  public String[] getChildPartitionIdentifiers( FlowProcess<? extends Configuration> flowProcess, boolean fullyQualified ) throws IOException
+    {
+    HiveTap tap = (HiveTap) getParent();
+    if( !tap.isListingPartitionsFromMetaStore( flowProcess.getConfig() ) )
+      return super.getChildPartitionIdentifiers( flowProcess, fullyQualified );
+
+    return tap.getPartitionPaths( flowProcess.getConfig(), fullyQualified );
     }
 
   @Override
   public TupleEntryCollector openForWrite( FlowProcess<? extends Configuration> flowProcess, OutputCollector output ) throws IOException
     {
+    HiveTableDescriptor tableDescriptor = ( (HiveTap) getParent() ).getTableDescriptor();
+    if( tableDescriptor.isBucketed() )
+      throw new TapException( String.format( "writing partitions of the bucketed table '%s' is not supported",
+        tableDescriptor.getTableName() ) );
+
+    openWritesThreshold = Math.max( 1, flowProcess.getConfig().getInt( MAX_OPEN_WRITERS, openWritesThreshold ) );
     return new HivePartitionCollector( flowProcess );
     }
 
+  /**
+   * Prepares the parent HiveTap for the manifests of the tasks, if {@link HiveTap#PARTITION_MANIFESTS_ENABLED} is set.
+   */
+  @Override
+  public void sinkConfInit( FlowProcess<? extends Configuration> flowProcess, Configuration conf )
+    {
+    super.sinkConfInit( flowProcess, conf );
+    if( conf.getBoolean( HiveTap.PARTITION_MANIFESTS_ENABLED, false ) )
+      ( (HiveTap) getParent() ).preparePartitionManifests( conf );
+    }
+
+  @Override
+  public boolean rollbackResource( Configuration conf ) throws IOException
+    {
+    return parent.rollbackResource( conf );
+    }
+
+  @Override
+  public boolean commitResource( Configuration conf ) throws IOException
+    {
+    // the parent takes care of creating the table and publishing partitions from manifests.
+    return parent.commitResource( conf );
+    }
+
   @Override
   public String getFullIdentifier( Configuration conf )
     {
@@ -0,0 +1,385 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import cascading.CascadingException;
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.scheme.SinkCall;
+import cascading.scheme.SourceCall;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import static cascading.flow.hadoop.util.HadoopUtil.asJobConfInstance;
+
+/**
+ * HiveSerDeScheme is a Scheme reading and writing the files of a table through the SerDe configured for the table, like
+ * the RegexSerDe or a LazySimpleSerDe with custom parameters. By default the files are read as lines of text, which
+ * are handed to the SerDe one by one, and the serialized rows are written as lines of text. SerDes serializing rows to
+ * anything else than Text, like the AvroSerDe, are rejected, see {@link HiveStorageFormat#forSerializationLib(String)}.
+ * <p/>
+ * The SerDe is instantiated and initialized once per task. Its ObjectInspector is only asked for the columns of the
+ * source fields, so that lazy SerDes never parse the other columns of a row. The record value and the row handed out by
+ * the SerDe are reused across records.
+ */
+public class HiveSerDeScheme extends Scheme<Configuration, RecordReader, OutputCollector, Object[], Object[]>
+  {
+  /** table property holding the comments of the columns, as set by the MetaStore and expected by some SerDes */
+  private static final String LIST_COLUMN_COMMENTS = "columns.comments";
+
+  /** names of the columns stored in the files */
+  private final String[] columnNames;
+
+  /** Hive types of the columns stored in the files */
+  private final String[] columnTypes;
+
+  /** class name of the SerDe */
+  private final String serializationLib;
+
+  /** parameters the SerDe is initialized with */
+  private final HashMap<String, String> serDeParameters;
+
+  /**
+   * Constructs a new HiveSerDeScheme reading and writing all given columns with the given SerDe.
+   *
+   * @param fields           The columns stored in the files.
+   * @param columnTypes      The Hive types of the columns.
+   * @param serializationLib The class name of the SerDe.
+   * @param serDeParameters  The parameters of the SerDe, can be null.
+   */
+  public HiveSerDeScheme( Fields fields, String[] columnTypes, String serializationLib, Map<String, String> serDeParameters )
+    {
+    this( fields, columnTypes, serializationLib, serDeParameters, fields );
+    }
+
+  /**
+   * Constructs a new HiveSerDeScheme writing all given columns with the given SerDe and reading only the given source
+   * fields.
+   *
+   * @param fields           The columns stored in the files.
+   * @param columnTypes      The Hive types of the columns.
+   * @param serializationLib The class name of the SerDe.
+   * @param serDeParameters  The parameters of the SerDe, can be null.
+   * @param sourceFields     The columns to read, which have to be a subset of fields.
+   */
+  public HiveSerDeScheme( Fields fields, String[] columnTypes, String serializationLib, Map<String, String> serDeParameters,
+                          Fields sourceFields )
+    {
+    super( sourceFields, fields );
+    if( fields.size() != columnTypes.length )
+      throw new IllegalArgumentException( "fields and columnTypes must have the same size" );
+    if( !fields.contains( sourceFields ) )
+      throw new IllegalArgumentException( "sourceFields must be a subset of fields" );
+    if( serializationLib == null || serializationLib.isEmpty() )
+      throw new IllegalArgumentException( "serializationLib cannot be null or empty" );
+    // rejects SerDes, which do not store text files
+    HiveStorageFormat.forSerializationLib( serializationLib );
+
+    this.columnNames = new String[ fields.size() ];
+    for( int index = 0; index < columnNames.length; index++ )
+      columnNames[ index ] = fields.get( index ).toString();
+    this.columnTypes = columnTypes.clone();
+    this.serializationLib = serializationLib;
+    this.serDeParameters = serDeParameters == null ? new HashMap<String, String>() : new HashMap<String, String>( serDeParameters );
+    }
+
+  public String[] getColumnTypes()
+    {
+    return columnTypes.clone();
+    }
+
+  public String getSerializationLib()
+    {
+    return serializationLib;
+    }
+
+  public Map<String, String> getSerDeParameters()
+    {
+    return Collections.unmodifiableMap( serDeParameters );
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<? extends Configuration> flowProcess, Tap<Configuration, RecordReader, OutputCollector> tap, Configuration conf )
+    {
+    asJobConfInstance( conf ).setInputFormat( TextInputFormat.class );
+    conf.set( serdeConstants.LIST_COLUMNS, join( columnNames, "," ) );
+    conf.set( serdeConstants.LIST_COLUMN_TYPES, join( columnTypes, ":" ) );
+
+    SortedSet<Integer> readColumns = getReadColumns();
+    List<Integer> ids = new ArrayList<Integer>( readColumns );
+    List<String> names = new ArrayList<String>( readColumns.size() );
+    for( int column : readColumns )
+      names.add( columnNames[ column ] );
+    ColumnProjectionUtils.appendReadColumns( conf, ids, names );
+    }
+
+  @Override
+  public void sinkConfInit( FlowProcess<? extends Configuration> flowProcess, Tap<Configuration, RecordReader, OutputCollector> tap, Configuration conf )
+    {
+    asJobConfInstance( conf ).setOutputFormat( TextOutputFormat.class );
+    conf.set( serdeConstants.LIST_COLUMNS, join( columnNames, "," ) );
+    conf.set( serdeConstants.LIST_COLUMN_TYPES, join( columnTypes, ":" ) );
+    }
+
+  @Override
+  public void sourcePrepare( FlowProcess<? extends Configuration> flowProcess, SourceCall<Object[], RecordReader> sourceCall ) throws IOException
+    {
+    SerDe serDe = createInitializedSerDe( flowProcess.getConfig() );
+    StructObjectInspector inspector = getInspector( serDe );
+    List<? extends StructField> allFields = inspector.getAllStructFieldRefs();
+
+    Fields fields = new Fields( columnNames );
+    Fields sourceFields = getSourceFields();
+    StructField[] readFields = new StructField[ sourceFields.size() ];
+    for( int index = 0; index < readFields.length; index++ )
+      readFields[ index ] = allFields.get( fields.getPos( sourceFields.get( index ) ) );
+
+    RecordReader input = sourceCall.getInput();
+    sourceCall.setContext( new Object[]{input.createKey(), input.createValue(), serDe, inspector, readFields} );
+    }
+
+  @Override
+  public boolean source( FlowProcess<? extends Configuration> flowProcess, SourceCall<Object[], RecordReader> sourceCall ) throws IOException
+    {
+    Object[] context = sourceCall.getContext();
+    if( !sourceCall.getInput().next( context[ 0 ], context[ 1 ] ) )
+      return false;
+
+    Object row = deserialize( (SerDe) context[ 2 ], (Writable) context[ 1 ] );
+    StructObjectInspector inspector = (StructObjectInspector) context[ 3 ];
+    StructField[] fields = (StructField[]) context[ 4 ];
+    Tuple tuple = sourceCall.getIncomingEntry().getTuple();
+    for( int index = 0; index < fields.length; index++ )
+      {
+      Object data = inspector.getStructFieldData( row, fields[ index ] );
+      tuple.set( index, HiveObjectConverter.toCascading( data, fields[ index ].getFieldObjectInspector() ) );
+      }
+    return true;
+    }
+
+  @Override
+  public void sourceCleanup( FlowProcess<? extends Configuration> flowProcess, SourceCall<Object[], RecordReader> sourceCall ) throws IOException
+    {
+    sourceCall.setContext( null );
+    }
+
+  @Override
+  public void sinkPrepare( FlowProcess<? extends Configuration> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    HiveObjectConverter[] converters = new HiveObjectConverter[ columnTypes.length ];
+    List<ObjectInspector> inspectors = new ArrayList<ObjectInspector>( columnTypes.length );
+    List<Object> row = new ArrayList<Object>( columnTypes.length );
+    for( int index = 0; index < columnTypes.length; index++ )
+      {
+      converters[ index ] = new HiveObjectConverter( columnTypes[ index ] );
+      inspectors.add( converters[ index ].getInspector() );
+      row.add( null );
+      }
+
+    StructObjectInspector inspector = ObjectInspectorFactory.getStandardStructObjectInspector( Arrays.asList( columnNames ), inspectors );
+    sinkCall.setContext( new Object[]{createInitializedSerDe( flowProcess.getConfig() ), inspector, converters, row} );
+    }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void sink( FlowProcess<? extends Configuration> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    Object[] context = sinkCall.getContext();
+    HiveObjectConverter[] converters = (HiveObjectConverter[]) context[ 2 ];
+    List<Object> row = (List<Object>) context[ 3 ];
+
+    TupleEntry entry = sinkCall.getOutgoingEntry();
+    for( int index = 0; index < converters.length; index++ )
+      row.set( index, converters[ index ].toHive( entry.getObject( index ) ) );
+
+    try
+      {
+      sinkCall.getOutput().collect( null, ( (SerDe) context[ 0 ] ).serialize( row, (ObjectInspector) context[ 1 ] ) );
+      }
+    catch( SerDeException exception )
+      {
+      throw new IOException( exception );
+      }
+    }
+
+  @Override
+  public void sinkCleanup( FlowProcess<? extends Configuration> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    sinkCall.setContext( null );
+    }
+
+  /**
+   * Returns the positions of the columns to read within the columns of the files, in ascending order. These are the
+   * positions of the source fields.
+   *
+   * @return the positions of the columns to read.
+   */
+  protected SortedSet<Integer> getReadColumns()
+    {
+    Fields fields = new Fields( columnNames );
+    Fields sourceFields = getSourceFields();
+    SortedSet<Integer> readColumns = new TreeSet<Integer>();
+    for( int index = 0; index < sourceFields.size(); index++ )
+      readColumns.add( fields.getPos( sourceFields.get( index ) ) );
+    return readColumns;
+    }
+
+  /**
+   * Returns the names of the columns stored in the files.
+   *
+   * @return the column names.
+   */
+  protected String[] getColumnNames()
+    {
+    return columnNames;
+    }
+
+  /**
+   * Creates a new instance of the SerDe. The default implementation instantiates the serialization lib.
+   *
+   * @param conf The Configuration of the current task.
+   * @return a new, uninitialized SerDe.
+   */
+  protected SerDe createSerDe( Configuration conf )
+    {
+    try
+      {
+      Class<?> type = Class.forName( serializationLib, true, Thread.currentThread().getContextClassLoader() );
+      return (SerDe) ReflectionUtils.newInstance( type, conf );
+      }
+    catch( ClassNotFoundException exception )
+      {
+      throw new CascadingException( "unable to load serialization lib " + serializationLib, exception );
+      }
+    }
+
+  /**
+   * Private helper method creating a SerDe initialized with the columns stored in the files and the SerDe parameters.
+   */
+  private SerDe createInitializedSerDe( Configuration conf ) throws IOException
+    {
+    Properties properties = new Properties();
+    properties.putAll( serDeParameters );
+    properties.setProperty( serdeConstants.LIST_COLUMNS, join( columnNames, "," ) );
+    properties.setProperty( serdeConstants.LIST_COLUMN_TYPES, join( columnTypes, ":" ) );
+    String[] comments = new String[ columnNames.length ];
+    Arrays.fill( comments, "" );
+    properties.setProperty( LIST_COLUMN_COMMENTS, join( comments, "\0" ) );
+    SerDe serDe = createSerDe( conf );
+    try
+      {
+      serDe.initialize( conf, properties );
+      }
+    catch( SerDeException exception )
+      {
+      throw new IOException( exception );
+      }
+    return serDe;
+    }
+
+  private static StructObjectInspector getInspector( SerDe serDe ) throws IOException
+    {
+    try
+      {
+      return (StructObjectInspector) serDe.getObjectInspector();
+      }
+    catch( SerDeException exception )
+      {
+      throw new IOException( exception );
+      }
+    }
+
+  private static Object deserialize( SerDe serDe, Writable value ) throws IOException
+    {
+    try
+      {
+      return serDe.deserialize( value );
+      }
+    catch( SerDeException exception )
+      {
+      throw new IOException( exception );
+      }
+    }
+
+  static String join( String[] values, String separator )
+    {
+    StringBuilder builder = new StringBuilder();
+    for( int index = 0; index < values.length; index++ )
+      {
+      if( index > 0 )
+        builder.append( separator );
+      builder.append( values[ index ] );
+      }
+    return builder.toString();
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( object == null || getClass() != object.getClass() || !super.equals( object ) )
+      return false;
+
+    HiveSerDeScheme that = (HiveSerDeScheme) object;
+    return Arrays.equals( columnNames, that.columnNames ) && Arrays.equals( columnTypes, that.columnTypes )
+      && serializationLib.equals( that.serializationLib ) && serDeParameters.equals( that.serDeParameters );
+    }
+
+  @Override
+  public int hashCode()
+    {
+    int result = super.hashCode();
+    result = 31 * result + Arrays.hashCode( columnNames );
+    result = 31 * result + Arrays.hashCode( columnTypes );
+    result = 31 * result + serializationLib.hashCode();
+    result = 31 * result + serDeParameters.hashCode();
+    return result;
+    }
+  }
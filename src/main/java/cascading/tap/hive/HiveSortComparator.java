@@ -0,0 +1,107 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+
+/**
+ * Comparator ordering the values of a sort column of a bucketed table the way Hive does: the values are converted into
+ * the type of the column and compared by ObjectInspectorUtils, with null values first. Descending columns are ordered
+ * the other way round. Converting first makes sure that e.g. Strings written to an int column are ordered by their
+ * numeric value.
+ */
+class HiveSortComparator implements Comparator<Object>, Serializable
+  {
+  /** Hive type of the column */
+  private final String columnType;
+
+  /** true, if the column is sorted in descending order */
+  private final boolean descending;
+
+  /** converters for both sides, since converted values may be reused. Created lazily, they are not serializable. */
+  private transient HiveObjectConverter leftConverter;
+
+  private transient HiveObjectConverter rightConverter;
+
+  /**
+   * Constructs a new HiveSortComparator.
+   *
+   * @param columnType The Hive type of the column.
+   * @param descending true, if the column is sorted in descending order.
+   */
+  HiveSortComparator( String columnType, boolean descending )
+    {
+    this.columnType = columnType;
+    this.descending = descending;
+    }
+
+  /**
+   * Creates a HiveSortComparator for each sort column of the given table.
+   *
+   * @param tableDescriptor The HiveTableDescriptor of a table with sorted buckets.
+   * @return the comparators in the order of the sort columns.
+   */
+  static HiveSortComparator[] forSortColumns( HiveTableDescriptor tableDescriptor )
+    {
+    String[] sortColumnTypes = tableDescriptor.getSortColumnTypes();
+    boolean[] descending = tableDescriptor.getSortDescending();
+    HiveSortComparator[] comparators = new HiveSortComparator[ sortColumnTypes.length ];
+    for( int index = 0; index < comparators.length; index++ )
+      comparators[ index ] = new HiveSortComparator( sortColumnTypes[ index ], descending[ index ] );
+    return comparators;
+    }
+
+  @Override
+  public int compare( Object left, Object right )
+    {
+    if( leftConverter == null )
+      {
+      leftConverter = new HiveObjectConverter( columnType );
+      rightConverter = new HiveObjectConverter( columnType );
+      }
+
+    Object leftValue = leftConverter.toHive( left );
+    Object rightValue = rightConverter.toHive( right );
+    int result = ObjectInspectorUtils.compare( leftValue, leftConverter.getInspector(), rightValue, rightConverter.getInspector() );
+    return descending ? -result : result;
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( object == null || getClass() != object.getClass() )
+      return false;
+
+    HiveSortComparator that = (HiveSortComparator) object;
+    return descending == that.descending && columnType.equals( that.columnType );
+    }
+
+  @Override
+  public int hashCode()
+    {
+    return 31 * columnType.hashCode() + ( descending ? 1 : 0 );
+    }
+  }
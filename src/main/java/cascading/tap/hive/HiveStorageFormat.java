@@ -0,0 +1,127 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import org.apache.hadoop.hive.serde2.Serializer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * HiveStorageFormat enumerates the file formats of Hive tables, which can be read and written by Cascading. Each
+ * format knows the input format, output format and SerDe to register in the MetaStore.
+ */
+public enum HiveStorageFormat
+  {
+  /** delimited text files */
+  TEXT( HiveTableDescriptor.HIVE_DEFAULT_INPUT_FORMAT_NAME, HiveTableDescriptor.HIVE_DEFAULT_OUTPUT_FORMAT_NAME,
+    HiveTableDescriptor.HIVE_DEFAULT_SERIALIZATION_LIB_NAME ),
+
+  /** Optimized Row Columnar files */
+  ORC( "org.apache.hadoop.hive.ql.io.orc.OrcInputFormat", "org.apache.hadoop.hive.ql.io.orc.OrcOutputFormat",
+    "org.apache.hadoop.hive.ql.io.orc.OrcSerde" ),
+
+  /** Parquet files */
+  PARQUET( "org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat",
+    "org.apache.hadoop.hive.ql.io.parquet.MapredParquetOutputFormat",
+    "org.apache.hadoop.hive.ql.io.parquet.serde.ParquetHiveSerDe" );
+
+  /** name of the input format */
+  private final String inputFormat;
+
+  /** name of the output format */
+  private final String outputFormat;
+
+  /** name of the serialization lib */
+  private final String serializationLib;
+
+  HiveStorageFormat( String inputFormat, String outputFormat, String serializationLib )
+    {
+    this.inputFormat = inputFormat;
+    this.outputFormat = outputFormat;
+    this.serializationLib = serializationLib;
+    }
+
+  public String getInputFormat()
+    {
+    return inputFormat;
+    }
+
+  public String getOutputFormat()
+    {
+    return outputFormat;
+    }
+
+  public String getSerializationLib()
+    {
+    return serializationLib;
+    }
+
+  /**
+   * Returns the HiveStorageFormat using the given serialization lib. Other serialization libs, like the RegexSerDe, are
+   * assumed to store text files, if they serialize rows to Text or cannot be loaded. Serialization libs writing any
+   * other Writable, like the AvroSerDe, are rejected, since their files can neither be read nor written as text.
+   *
+   * @param serializationLib The name of the serialization lib.
+   * @return the HiveStorageFormat.
+   * @throws IllegalArgumentException if the serialization lib does not store text files.
+   */
+  public static HiveStorageFormat forSerializationLib( String serializationLib )
+    {
+    for( HiveStorageFormat format : values() )
+      {
+      if( format.serializationLib.equals( serializationLib ) )
+        return format;
+      }
+
+    Class<?> serializedClass = getSerializedClass( serializationLib );
+    if( serializedClass != null && !Text.class.isAssignableFrom( serializedClass ) )
+      throw new IllegalArgumentException( String.format( "serialization lib '%s' writes %s instead of text, only text, ORC and Parquet tables are supported",
+        serializationLib, serializedClass.getName() ) );
+
+    return TEXT;
+    }
+
+  /**
+   * Private helper method returning the class of the rows serialized by the given serialization lib, or null if it is
+   * not available.
+   */
+  private static Class<?> getSerializedClass( String serializationLib )
+    {
+    if( serializationLib == null )
+      return null;
+
+    Class<?> type;
+    try
+      {
+      type = Class.forName( serializationLib, false, Thread.currentThread().getContextClassLoader() );
+      }
+    catch( ClassNotFoundException exception )
+      {
+      return null;
+      }
+
+    if( !Serializer.class.isAssignableFrom( type ) )
+      throw new IllegalArgumentException( String.format( "serialization lib '%s' is not a SerDe", serializationLib ) );
+
+    return ( (Serializer) ReflectionUtils.newInstance( type, null ) ).getSerializedClass();
+    }
+  }
@@ -21,8 +21,10 @@
 package cascading.tap.hive;
 
 import java.io.Serializable;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,7 +32,6 @@ import java.util.Map;
 
 import cascading.CascadingException;
 import cascading.scheme.Scheme;
-import cascading.scheme.hadoop.TextDelimited;
 import cascading.tap.partition.Partition;
 import cascading.tuple.Fields;
 
@@ -40,6 +41,7 @@ import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.MetaStoreUtils;
 import org.apache.hadoop.hive.metastore.TableType;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Order;
 import org.apache.hadoop.hive.metastore.api.SerDeInfo;
 import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
 import org.apache.hadoop.hive.metastore.api.Table;
@@ -64,6 +66,15 @@ public class HiveTableDescriptor implements Serializable
   /** default output format used by Hive */
   public static final String HIVE_DEFAULT_OUTPUT_FORMAT_NAME = "org.apache.hadoop.hive.ql.io.HiveIgnoreKeyTextOutputFormat";
 
+  /** SerDe parameter holding the escape character of text tables */
+  public static final String ESCAPE_DELIM = "escape.delim";
+
+  /** sort order of ascending sort columns in the MetaStore */
+  static final int HIVE_SORT_ASCENDING = 1;
+
+  /** sort order of descending sort columns in the MetaStore */
+  static final int HIVE_SORT_DESCENDING = 0;
+
   /** default serialization lib name */
   public static final String HIVE_DEFAULT_SERIALIZATION_LIB_NAME = "org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe";
 
@@ -88,9 +99,24 @@ public class HiveTableDescriptor implements Serializable
   /** Hive serialization library */
   private String serializationLib;
 
+  /** parameters of the serialization library */
+  private HashMap<String, String> serDeParameters = new HashMap<String, String>();
+
   /** Optional alternate location of the table */
   private String location = null;
 
+  /** columns the table is clustered by, empty if the table is not bucketed */
+  private String[] bucketColumns = new String[]{};
+
+  /** number of buckets of a bucketed table */
+  private int numBuckets = -1;
+
+  /** columns the buckets are sorted by, empty if the buckets are not sorted */
+  private String[] sortColumns = new String[]{};
+
+  /** sort order of the sort columns, true for descending columns */
+  private boolean[] sortDescending = new boolean[]{};
+
   /**
    * Constructs a new HiveTableDescriptor object.
    *
@@ -184,6 +210,100 @@ public class HiveTableDescriptor implements Serializable
       HIVE_DEFAULT_SERIALIZATION_LIB_NAME, null );
     }
 
+  /**
+   * Constructs a new HiveTableDescriptor object for a table stored in the given HiveStorageFormat.
+   *
+   * @param databaseName  The database name.
+   * @param tableName     The table name
+   * @param columnNames   Names of the columns
+   * @param columnTypes   Hive types of the columns
+   * @param partitionKeys The keys for partitioning the table.
+   * @param storageFormat The format of the files of the table.
+   * @param location      Optional alternate location of the table, can be null.
+   */
+  public HiveTableDescriptor( String databaseName, String tableName, String[] columnNames, String[] columnTypes,
+                              String[] partitionKeys, HiveStorageFormat storageFormat, Path location )
+    {
+    this( databaseName, tableName, columnNames, columnTypes, partitionKeys,
+      storageFormat == HiveStorageFormat.TEXT ? HIVE_DEFAULT_DELIMITER : null, storageFormat.getSerializationLib(), location );
+    }
+
+  /**
+   * Constructs a new HiveTableDescriptor object for a bucketed table, like CLUSTERED BY (...) INTO n BUCKETS in Hive.
+   * The rows of the table are distributed over the buckets by Hive's hash function of the bucket columns.
+   *
+   * @param databaseName  The database name.
+   * @param tableName     The table name
+   * @param columnNames   Names of the columns
+   * @param columnTypes   Hive types of the columns
+   * @param partitionKeys The keys for partitioning the table.
+   * @param storageFormat The format of the files of the table.
+   * @param bucketColumns The columns the table is clustered by.
+   * @param numBuckets    The number of buckets.
+   * @param location      Optional alternate location of the table, can be null.
+   */
+  public HiveTableDescriptor( String databaseName, String tableName, String[] columnNames, String[] columnTypes,
+                              String[] partitionKeys, HiveStorageFormat storageFormat, String[] bucketColumns,
+                              int numBuckets, Path location )
+    {
+    this( databaseName, tableName, columnNames, columnTypes, partitionKeys, storageFormat, bucketColumns,
+      new String[]{}, numBuckets, location );
+    }
+
+  /**
+   * Constructs a new HiveTableDescriptor object for a bucketed table with sorted buckets, like
+   * CLUSTERED BY (...) SORTED BY (...) INTO n BUCKETS in Hive. Sort columns are given by name, optionally followed by
+   * ASC or DESC, e.g. "timestamp DESC". Tables with sorted buckets can be joined by Hive with sort-merge-bucket joins.
+   *
+   * @param databaseName  The database name.
+   * @param tableName     The table name
+   * @param columnNames   Names of the columns
+   * @param columnTypes   Hive types of the columns
+   * @param partitionKeys The keys for partitioning the table.
+   * @param storageFormat The format of the files of the table.
+   * @param bucketColumns The columns the table is clustered by.
+   * @param sortColumns   The columns the buckets are sorted by, can be empty.
+   * @param numBuckets    The number of buckets.
+   * @param location      Optional alternate location of the table, can be null.
+   */
+  public HiveTableDescriptor( String databaseName, String tableName, String[] columnNames, String[] columnTypes,
+                              String[] partitionKeys, HiveStorageFormat storageFormat, String[] bucketColumns,
+                              String[] sortColumns, int numBuckets, Path location )
+    {
+    this( databaseName, tableName, columnNames, columnTypes, partitionKeys, storageFormat, location );
+    if( bucketColumns == null || bucketColumns.length == 0 )
+      throw new IllegalArgumentException( "bucketColumns cannot be null or empty" );
+    if( numBuckets <= 0 )
+      throw new IllegalArgumentException( "numBuckets must be greater than 0" );
+    this.bucketColumns = bucketColumns;
+    this.numBuckets = numBuckets;
+    verifyDataColumns( "bucket", bucketColumns );
+    parseSortColumns( sortColumns != null ? sortColumns : new String[]{} );
+    verifyDataColumns( "sort", this.sortColumns );
+    }
+
+  /**
+   * Constructs a new HiveTableDescriptor object for a table read and written by the given SerDe, like the RegexSerDe.
+   *
+   * @param databaseName     The database name.
+   * @param tableName        The table name
+   * @param columnNames      Names of the columns
+   * @param columnTypes      Hive types of the columns
+   * @param partitionKeys    The keys for partitioning the table.
+   * @param serializationLib Hive serialization library.
+   * @param serDeParameters  The parameters of the serialization library, like "input.regex".
+   * @param location         Optional alternate location of the table, can be null.
+   */
+  public HiveTableDescriptor( String databaseName, String tableName, String[] columnNames, String[] columnTypes,
+                              String[] partitionKeys, String serializationLib, Map<String, String> serDeParameters,
+                              Path location )
+    {
+    this( databaseName, tableName, columnNames, columnTypes, partitionKeys,
+      serDeParameters != null ? serDeParameters.get( "field.delim" ) : null, serializationLib, location );
+    if( serDeParameters != null )
+      this.serDeParameters.putAll( serDeParameters );
+    }
+
   /**
    * Constructs a new HiveTableDescriptor object.
    *
@@ -242,6 +362,38 @@ public class HiveTableDescriptor implements Serializable
       }
     }
 
+  /**
+   * Private method to verify that all given bucket or sort columns are data columns of the table.
+   */
+  private void verifyDataColumns( String kind, String[] columns )
+    {
+    for( String column : columns )
+      {
+      if( !caseInsensitiveContains( columnNames, column ) )
+        throw new IllegalArgumentException( String.format( "Given %s column '%s' not present in column names", kind, column ) );
+      if( caseInsensitiveContains( partitionKeys, column ) )
+        throw new IllegalArgumentException( String.format( "Given %s column '%s' is a partition key", kind, column ) );
+      }
+    }
+
+  /**
+   * Private method splitting the given sort columns into names and sort orders.
+   */
+  private void parseSortColumns( String[] columns )
+    {
+    sortColumns = new String[ columns.length ];
+    sortDescending = new boolean[ columns.length ];
+    for( int index = 0; index < columns.length; index++ )
+      {
+      String[] parts = columns[ index ].trim().split( "\\s+" );
+      if( parts.length > 2 || parts.length == 2 && !parts[ 1 ].equalsIgnoreCase( "ASC" ) && !parts[ 1 ].equalsIgnoreCase( "DESC" ) )
+        throw new IllegalArgumentException( String.format( "Given sort column '%s' is not of the form 'name [ASC|DESC]'", columns[ index ] ) );
+
+      sortColumns[ index ] = parts[ 0 ];
+      sortDescending[ index ] = parts.length == 2 && parts[ 1 ].equalsIgnoreCase( "DESC" );
+      }
+    }
+
   /**
    * Converts the instance to a Hive Table object, which can be used with the MetaStore API.
    *
@@ -275,11 +427,20 @@ public class HiveTableDescriptor implements Serializable
       {
       serDeParameters.put( "serialization.format", "1" );
       }
+    serDeParameters.putAll( this.serDeParameters );
     serDeInfo.setParameters( serDeParameters );
 
     sd.setSerdeInfo( serDeInfo );
-    sd.setInputFormat( HIVE_DEFAULT_INPUT_FORMAT_NAME );
-    sd.setOutputFormat( HIVE_DEFAULT_OUTPUT_FORMAT_NAME );
+    sd.setInputFormat( getStorageFormat().getInputFormat() );
+    sd.setOutputFormat( getStorageFormat().getOutputFormat() );
+
+    if( isBucketed() )
+      {
+      sd.setBucketCols( new ArrayList<String>( Arrays.asList( bucketColumns ) ) );
+      sd.setNumBuckets( numBuckets );
+      for( int index = 0; index < sortColumns.length; index++ )
+        sd.addToSortCols( new Order( sortColumns[ index ], sortDescending[ index ] ? HIVE_SORT_DESCENDING : HIVE_SORT_ASCENDING ) );
+      }
 
     if ( location != null )
       {
@@ -331,21 +492,106 @@ public class HiveTableDescriptor implements Serializable
 
   /**
    * Converts the HiveTableDescriptor to a Fields instance. If the table is partitioned only the columns not
-   * part of the partitioning will be returned.
+   * part of the partitioning will be returned. The fields are typed with the Java types of the values read from the
+   * columns, e.g. Integer for an int column or BigDecimal for a decimal column.
    * @return A Fields instance.
    */
    public Fields toFields()
     {
-    if ( !isPartitioned() )
-      return new Fields( columnNames );
+    List<Comparable> names = new ArrayList<Comparable>();
+    List<Type> types = new ArrayList<Type>();
+    for( int index = 0; index < columnNames.length; index++ )
+      {
+      if( isPartitioned() && caseInsensitiveContains( partitionKeys, columnNames[ index ] ) )
+        continue;
+
+      names.add( columnNames[ index ] );
+      types.add( HiveObjectConverter.toCascadingType( columnTypes[ index ] ) );
+      }
+
+    return new Fields( names.toArray( new Comparable[ names.size() ] ), types.toArray( new Type[ types.size() ] ) );
+    }
+
+
+  /**
+   * Returns the Hive types of the columns, which are not part of the partitioning.
+   *
+   * @return the column types.
+   */
+  String[] getDataColumnTypes()
+    {
+    List<String> types = new ArrayList<String>();
+    for( int index = 0; index < columnNames.length; index++ )
+      {
+      if( !caseInsensitiveContains( partitionKeys, columnNames[ index ] ) )
+        types.add( columnTypes[ index ] );
+      }
+    return types.toArray( new String[ types.size() ] );
+    }
+
+  /**
+   * Returns the positions of the bucket columns within the columns, which are not part of the partitioning.
+   *
+   * @return the positions of the bucket columns.
+   */
+  int[] getBucketColumnPositions()
+    {
+    return getDataColumnPositions( bucketColumns );
+    }
+
+  /**
+   * Returns the positions of the sort columns within the columns, which are not part of the partitioning.
+   *
+   * @return the positions of the sort columns.
+   */
+  int[] getSortColumnPositions()
+    {
+    return getDataColumnPositions( sortColumns );
+    }
+
+  /**
+   * Returns the Hive types of the bucket columns.
+   *
+   * @return the bucket column types.
+   */
+  String[] getBucketColumnTypes()
+    {
+    return getDataColumnTypes( getBucketColumnPositions() );
+    }
 
-    List<String> names =  new ArrayList<String>( Arrays.asList( columnNames ) );
-    names.removeAll( Arrays.asList( getPartitionKeys() ) );
+  /**
+   * Returns the Hive types of the sort columns.
+   *
+   * @return the sort column types.
+   */
+  String[] getSortColumnTypes()
+    {
+    return getDataColumnTypes( getSortColumnPositions() );
+    }
 
-    Comparable [] comparables = new Comparable[names.size()];
-    return new Fields( (Comparable[]) names.toArray( comparables ) );
+  private int[] getDataColumnPositions( String[] columns )
+    {
+    List<String> dataColumns = new ArrayList<String>();
+    for( String column : columnNames )
+      {
+      if( !caseInsensitiveContains( partitionKeys, column ) )
+        dataColumns.add( column.toLowerCase() );
+      }
+
+    int[] positions = new int[ columns.length ];
+    for( int index = 0; index < columns.length; index++ )
+      positions[ index ] = dataColumns.indexOf( columns[ index ].toLowerCase() );
+    return positions;
     }
 
+  private String[] getDataColumnTypes( int[] positions )
+    {
+    String[] dataColumnTypes = getDataColumnTypes();
+    String[] types = new String[ positions.length ];
+    for( int index = 0; index < positions.length; index++ )
+      types[ index ] = dataColumnTypes[ positions[ index ] ];
+    return types;
+    }
 
   /**
    * Returns the path of the table within the warehouse directory.
@@ -362,16 +608,64 @@ public class HiveTableDescriptor implements Serializable
     }
 
   /**
-   * Converts the HiveTableDescriptor to a Scheme instance based on the information available.
+   * Converts the HiveTableDescriptor to a Scheme instance based on the information available. Text tables are read and
+   * written by a HiveTextScheme, unless the table uses a custom SerDe.
    *
    * @return a new Scheme instance.
+   * @throws IllegalArgumentException if the SerDe of the table does not store text files, like the AvroSerDe.
    */
   public Scheme toScheme()
     {
-    // TODO add smarts to return the right thing.
-    Scheme scheme = new TextDelimited( false, getDelimiter() );
-    scheme.setSinkFields( toFields() );
-    return scheme;
+    if( getStorageFormat() == HiveStorageFormat.ORC )
+      return new OrcScheme( toFields(), getDataColumnTypes() );
+    if( getStorageFormat() == HiveStorageFormat.PARQUET )
+      return new ParquetScheme( toFields(), getDataColumnTypes() );
+
+    if( isCustomSerDe() )
+      return new HiveSerDeScheme( toFields(), getDataColumnTypes(), serializationLib, getSerDeParameters() );
+
+    return new HiveTextScheme( toFields(), getDelimiter() != null ? getDelimiter() : HIVE_DEFAULT_DELIMITER,
+      getEscape(), toFields() );
+    }
+
+  /**
+   * Converts the HiveTableDescriptor to a Scheme instance, which only reads the given columns from the files of the
+   * table. Text files are scanned only up to the last given column, columnar files skip all other columns entirely.
+   * Partition keys are accepted as well, but are left to the HivePartitionTap, since they are not stored in the files.
+   *
+   * @param sourceFields The columns to read.
+   * @return a new Scheme instance.
+   * @throws IllegalArgumentException if the SerDe of the table does not store text files, like the AvroSerDe.
+   */
+  public Scheme toScheme( Fields sourceFields )
+    {
+    Fields fields = toFields();
+    List<Comparable> projection = new ArrayList<Comparable>();
+    for( int index = 0; index < sourceFields.size(); index++ )
+      {
+      String name = sourceFields.get( index ).toString();
+      if( !caseInsensitiveContains( columnNames, name ) )
+        throw new IllegalArgumentException( String.format( "Given source field '%s' not present in column names", name ) );
+      if( isPartitioned() && caseInsensitiveContains( partitionKeys, name ) )
+        continue;
+
+      for( int pos = 0; pos < fields.size(); pos++ )
+        {
+        if( fields.get( pos ).toString().equalsIgnoreCase( name ) )
+          projection.add( fields.get( pos ) );
+        }
+      }
+
+    Fields projectedFields = fields.select( new Fields( projection.toArray( new Comparable[ projection.size() ] ) ) );
+    if( getStorageFormat() == HiveStorageFormat.ORC )
+      return new OrcScheme( fields, getDataColumnTypes(), projectedFields );
+    if( getStorageFormat() == HiveStorageFormat.PARQUET )
+      return new ParquetScheme( fields, getDataColumnTypes(), projectedFields );
+    if( isCustomSerDe() )
+      return new HiveSerDeScheme( fields, getDataColumnTypes(), serializationLib, getSerDeParameters(), projectedFields );
+
+    return new HiveTextScheme( fields, getDelimiter() != null ? getDelimiter() : HIVE_DEFAULT_DELIMITER, getEscape(),
+      projectedFields );
     }
 
   public String[] getColumnNames()
@@ -399,6 +693,63 @@ public class HiveTableDescriptor implements Serializable
     return delimiter;
     }
 
+  public String getSerializationLib()
+    {
+    return serializationLib;
+    }
+
+  public Map<String, String> getSerDeParameters()
+    {
+    return Collections.unmodifiableMap( serDeParameters );
+    }
+
+  /**
+   * Private helper method returning true, if the text files of the table have to be read and written by the configured
+   * SerDe instead of splitting lines at the delimiter.
+   */
+  private boolean isCustomSerDe()
+    {
+    if( serializationLib != null && !HIVE_DEFAULT_SERIALIZATION_LIB_NAME.equals( serializationLib ) )
+      return true;
+
+    for( String key : serDeParameters.keySet() )
+      {
+      if( !key.equals( "field.delim" ) && !key.equals( "serialization.format" ) && !key.equals( ESCAPE_DELIM ) )
+        return true;
+      }
+    return false;
+    }
+
+  /**
+   * Private helper method returning the escape character of a text table or null. Like in Hive, the parameter holds
+   * either the character itself or its decimal code.
+   */
+  private Character getEscape()
+    {
+    String escape = serDeParameters.get( ESCAPE_DELIM );
+    if( escape == null || escape.isEmpty() )
+      return null;
+
+    try
+      {
+      return (char) Byte.parseByte( escape );
+      }
+    catch( NumberFormatException exception )
+      {
+      return escape.charAt( 0 );
+      }
+    }
+
+  /**
+   * Returns the format of the files of the table, which is derived from the serialization lib.
+   *
+   * @return the HiveStorageFormat.
+   */
+  public HiveStorageFormat getStorageFormat()
+    {
+    return HiveStorageFormat.forSerializationLib( serializationLib );
+    }
+
   public String[] getPartitionKeys()
     {
     return partitionKeys;
@@ -409,6 +760,46 @@ public class HiveTableDescriptor implements Serializable
     return partitionKeys != null && partitionKeys.length > 0;
     }
 
+  public String[] getBucketColumns()
+    {
+    return bucketColumns;
+    }
+
+  public int getNumBuckets()
+    {
+    return numBuckets;
+    }
+
+  public boolean isBucketed()
+    {
+    return bucketColumns != null && bucketColumns.length > 0;
+    }
+
+  /**
+   * Returns the names of the columns the buckets are sorted by.
+   *
+   * @return the sort columns, empty if the buckets are not sorted.
+   */
+  public String[] getSortColumns()
+    {
+    return sortColumns;
+    }
+
+  /**
+   * Returns the sort order of each sort column.
+   *
+   * @return true for each sort column sorted in descending order.
+   */
+  public boolean[] getSortDescending()
+    {
+    return sortDescending;
+    }
+
+  public boolean isSorted()
+    {
+    return sortColumns != null && sortColumns.length > 0;
+    }
+
   @Override
   public boolean equals( Object object )
     {
@@ -435,6 +826,16 @@ public class HiveTableDescriptor implements Serializable
       return false;
     if( location != null ? !location.equals( that.location ) : that.location != null )
       return false;
+    if( !serDeParameters.equals( that.serDeParameters ) )
+      return false;
+    if( !arraysEqualCaseInsensitive( bucketColumns, that.bucketColumns ) )
+      return false;
+    if( numBuckets != that.numBuckets )
+      return false;
+    if( !arraysEqualCaseInsensitive( sortColumns, that.sortColumns ) )
+      return false;
+    if( !Arrays.equals( sortDescending, that.sortDescending ) )
+      return false;
 
     return true;
     }
@@ -450,6 +851,11 @@ public class HiveTableDescriptor implements Serializable
     result = 31 * result + ( columnTypes != null ? arraysHashCodeCaseInsensitive( columnTypes ) : 0 );
     result = 31 * result + ( serializationLib != null ? serializationLib.hashCode() : 0 );
     result = 31 * result + ( location != null ? location.hashCode() : 0 );
+    result = 31 * result + serDeParameters.hashCode();
+    result = 31 * result + arraysHashCodeCaseInsensitive( bucketColumns );
+    result = 31 * result + numBuckets;
+    result = 31 * result + arraysHashCodeCaseInsensitive( sortColumns );
+    result = 31 * result + Arrays.hashCode( sortDescending );
     return result;
     }
 
@@ -465,6 +871,9 @@ public class HiveTableDescriptor implements Serializable
       ", columnTypes=" + Arrays.toString( columnTypes ) +
       ", serializationLib='" + serializationLib + '\'' +
       ( location != null ? ", location='" + location + '\'' : "" ) +
+      ( !serDeParameters.isEmpty() ? ", serDeParameters=" + serDeParameters : "" ) +
+      ( isBucketed() ? ", bucketColumns=" + Arrays.toString( bucketColumns ) + ", numBuckets=" + numBuckets : "" ) +
+      ( isSorted() ? ", sortColumns=" + Arrays.toString( sortColumns ) + ", sortDescending=" + Arrays.toString( sortDescending ) : "" ) +
       '}';
     }
 
@@ -20,38 +20,62 @@
 
 package cascading.tap.hive;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
 
 import cascading.CascadingException;
+import cascading.flow.FlowProcess;
+import cascading.flow.hadoop.HadoopFlowProcess;
 import cascading.flow.hadoop.util.HadoopUtil;
 import cascading.property.AppProps;
 import cascading.scheme.Scheme;
 import cascading.tap.SinkMode;
 import cascading.tap.TapException;
 import cascading.tap.hadoop.Hfs;
+import cascading.tuple.Fields;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntryIterator;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
-import org.apache.hadoop.hive.metastore.HiveMetaHook;
-import org.apache.hadoop.hive.metastore.HiveMetaHookLoader;
-import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
 import org.apache.hadoop.hive.metastore.IMetaStoreClient;
-import org.apache.hadoop.hive.metastore.RetryingMetaStoreClient;
 import org.apache.hadoop.hive.metastore.api.AlreadyExistsException;
 import org.apache.hadoop.hive.metastore.api.Database;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
-import org.apache.hadoop.hive.metastore.api.InvalidObjectException;
 import org.apache.hadoop.hive.metastore.api.MetaException;
 import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
 import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.api.hive_metastoreConstants;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.lib.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,6 +90,39 @@ public class HiveTap extends Hfs
   /** Field LOG */
   private static final Logger LOG = LoggerFactory.getLogger( HiveTap.class );
 
+  /** property for the maximum number of partitions registered with a single MetaStore call */
+  public static final String PARTITION_BATCH_SIZE = "cascading.hive.partition.batch.size";
+
+  /** default number of partitions registered with a single MetaStore call */
+  public static final int DEFAULT_PARTITION_BATCH_SIZE = 1000;
+
+  /**
+   * property to enable driver side partition registration. If set to true, tasks only write manifests of the
+   * partitions they have produced and all partitions are registered once, when the resource is committed.
+   */
+  public static final String PARTITION_MANIFESTS_ENABLED = "cascading.hive.partition.manifests.enabled";
+
+  /** name of the hidden directory within the output location, in which partition manifests are collected */
+  static final String PARTITION_MANIFESTS_DIR = "_cascading_partitions";
+
+  /** property holding the id of the current write of the table, which keys its partition manifests */
+  static final String PARTITION_MANIFESTS_ID = "cascading.hive.partition.manifests.id";
+
+  /**
+   * property to take the data files of the table into account, when computing the modified time. By default the table
+   * directory and the directories of all partitions are listed, without descending into nested directories, since
+   * writes into an existing table or partition do not change its DDL time. If set to false, only the DDL times of the
+   * table and its partitions are used.
+   */
+  public static final String MODIFIED_TIME_CHECK_FILES = "cascading.hive.modified.time.check.files";
+
+  /**
+   * property to read partitioned tables from the locations of the partitions registered in the MetaStore instead of
+   * globbing all partition directories below the table location. Directories unknown to the MetaStore are skipped and
+   * partitions with custom locations are read from there.
+   */
+  public static final String METASTORE_PARTITION_LISTING_ENABLED = "cascading.hive.partition.listing.metastore.enabled";
+
   static
     {
     // add cascading-hive release to frameworks
@@ -96,8 +153,29 @@ public class HiveTap extends Hfs
   /** strict mode enforces that an existing table has to match the given TableDescriptor */
   private boolean strict;
 
-  /** last modified time */
-  private long modifiedTime;
+  /** last modified time, negative until it has been computed */
+  private long modifiedTime = -1;
+
+  /** location of the table without any partition globs */
+  private String tableLocation;
+
+  /** true, once the location of the table has been resolved */
+  private boolean locationResolved = false;
+
+  /** MetaStore filter restricting the partitions read, if the tap is used as a source */
+  private String partitionFilter;
+
+  /** id keying the partition manifests of the current write, null if no manifests are expected */
+  private transient String manifestsId;
+
+  /** output location of the current write, below which committed manifests are found */
+  private transient String manifestsLocation;
+
+  /** buckets read, if the tap is used as a source, or null to read all buckets */
+  private int[] buckets;
+
+  /** predicate of bucketed tables, which cannot be pushed down into the scheme and is only used to prune buckets */
+  private ColumnPredicate bucketPredicate;
 
   /**
    * Constructs a new HiveTap instance.
@@ -110,6 +188,18 @@ public class HiveTap extends Hfs
     this( tableDesc, scheme, SinkMode.KEEP, false );
     }
 
+  /**
+   * Constructs a new HiveTap instance, which only reads the given columns of the table. The Scheme is created via
+   * {@link HiveTableDescriptor#toScheme(Fields)}.
+   *
+   * @param tableDesc    The HiveTableDescriptor for creating and validating Hive tables.
+   * @param sourceFields The columns to read.
+   */
+  public HiveTap( HiveTableDescriptor tableDesc, Fields sourceFields )
+    {
+    this( tableDesc, tableDesc.toScheme( sourceFields ) );
+    }
+
   /**
    * Constructs a new HiveTap instance.
    *
@@ -124,7 +214,6 @@ public class HiveTap extends Hfs
     this.tableDescriptor = tableDesc;
     this.strict = strict;
     setScheme( scheme );
-    setFilesystemLocation();
     }
 
   @Override
@@ -163,6 +252,7 @@ public class HiveTap extends Hfs
       LOG.info( "creating table '{}' at '{}' ", tableDescriptor.getTableName(), getPath().toString() );
 
       metaStoreClient.createTable( hiveTable );
+      MetaStoreTableCache.getInstance().invalidate( hiveConf, tableDescriptor.getDatabaseName(), tableDescriptor.getTableName() );
       modifiedTime = System.currentTimeMillis();
       return true;
       }
@@ -184,14 +274,10 @@ public class HiveTap extends Hfs
   @Override
   public boolean resourceExists( Configuration conf ) throws IOException
     {
-    IMetaStoreClient metaStoreClient = null;
     try
       {
-      metaStoreClient = createMetaStoreClient( conf );
-      Table table = metaStoreClient.getTable( tableDescriptor.getDatabaseName(),
-        tableDescriptor.getTableName() );
+      Table table = getHiveTable( conf );
 
-      modifiedTime = table.getLastAccessTime();
       // check if the schema matches the table descriptor. If not, throw an exception.
       if( strict )
         {
@@ -211,6 +297,11 @@ public class HiveTap extends Hfs
             "table in MetaStore does not have the sampe path. Expected %s got %s",
             expectedPath, actualPath ) );
 
+        if( tableDescriptor.isBucketed() && sd.getNumBuckets() != tableDescriptor.getNumBuckets() )
+          throw new HiveTableValidationException( String.format(
+            "table in MetaStore does not have the same number of buckets. expected %d got %d",
+            tableDescriptor.getNumBuckets(), sd.getNumBuckets() ) );
+
         List<FieldSchema> schemaList = sd.getCols();
         if( schemaList.size() != tableDescriptor.getColumnNames().length - tableDescriptor.getPartitionKeys().length )
           throw new HiveTableValidationException( String.format(
@@ -265,11 +356,6 @@ public class HiveTap extends Hfs
       {
       throw new IOException( exception );
       }
-    finally
-      {
-      if( metaStoreClient != null )
-        metaStoreClient.close();
-      }
     }
 
   @Override
@@ -285,6 +371,8 @@ public class HiveTap extends Hfs
       metaStoreClient = createMetaStoreClient( conf );
       metaStoreClient.dropTable( tableDescriptor.getDatabaseName(), tableDescriptor.getTableName(),
         true, true );
+      MetaStoreTableCache.getInstance().invalidate( hiveConf, tableDescriptor.getDatabaseName(), tableDescriptor.getTableName() );
+      modifiedTime = -1;
       }
     catch( MetaException exception )
       {
@@ -316,7 +404,21 @@ public class HiveTap extends Hfs
    */
   void registerPartition( Configuration conf, Partition partition ) throws IOException
     {
-    if( !tableDescriptor.isPartitioned() )
+    registerPartitions( conf, Collections.singletonList( partition ) );
+    }
+
+  /**
+   * Registers the given Partitions of a HiveTable in bulk. Partitions are sent to the MetaStore in chunks of
+   * {@link #PARTITION_BATCH_SIZE} and already existing ones are ignored. If the current table is not partitioned, the
+   * call is also ignored.
+   *
+   * @param conf       Configuration object of the current flow.
+   * @param partitions The partitions to register.
+   * @throws IOException In case any interaction with the HiveMetaStore fails.
+   */
+  void registerPartitions( Configuration conf, Collection<Partition> partitions ) throws IOException
+    {
+    if( !tableDescriptor.isPartitioned() || partitions.isEmpty() )
       return;
 
     // throw exception to avoid inconsistent meta store, otherwise the user will end up with a table with 0 partitions
@@ -324,38 +426,235 @@ public class HiveTap extends Hfs
     if( !HadoopUtil.isLocal( conf ) && conf.get( ConfVars.METASTOREURIS.varname ) == null )
       throw new TapException( "Cannot register partition without central metastore. Please set 'hive.metastore.uris' to your metastore." );
 
+    addPartitionsToMetaStore( conf, partitions );
+    modifiedTime = -1;
+    }
+
+  /**
+   * Private method to create the table, if necessary, and to add the given partitions to the MetaStore.
+   */
+  private void addPartitionsToMetaStore( Configuration conf, Collection<Partition> partitions ) throws IOException
+    {
     if( !resourceExists( conf ) )
       createHiveTable( conf );
 
+    int batchSize = Math.max( 1, conf.getInt( PARTITION_BATCH_SIZE, DEFAULT_PARTITION_BATCH_SIZE ) );
+
     IMetaStoreClient metaStoreClient = null;
     try
       {
       metaStoreClient = createMetaStoreClient( conf );
-      metaStoreClient.add_partition( partition );
+      List<Partition> batch = new ArrayList<Partition>( Math.min( batchSize, partitions.size() ) );
+      for( Partition partition : partitions )
+        {
+        batch.add( partition );
+        if( batch.size() == batchSize )
+          {
+          addPartitions( metaStoreClient, batch );
+          batch.clear();
+          }
+        }
+      if( !batch.isEmpty() )
+        addPartitions( metaStoreClient, batch );
       }
     catch( MetaException exception )
       {
       throw new IOException( exception );
       }
-    catch( InvalidObjectException exception )
+    catch( TException exception )
       {
       throw new IOException( exception );
       }
+    finally
+      {
+      if( metaStoreClient != null )
+        metaStoreClient.close();
+      }
+    }
+
+  /**
+   * Private helper method to add a batch of partitions, ignoring the ones which already exist.
+   */
+  private void addPartitions( IMetaStoreClient metaStoreClient, List<Partition> batch ) throws TException
+    {
+    LOG.debug( "registering {} partitions of table '{}'", batch.size(), tableDescriptor.getTableName() );
+    try
+      {
+      metaStoreClient.add_partitions( batch, true, false );
+      }
     catch( AlreadyExistsException exception )
       {
       // ignore
       }
-    catch( TException exception )
+    }
+
+  /**
+   * Prepares the current write of the table for partition manifests. Every write gets its own id, which is passed to
+   * the tasks via the given Configuration, so that concurrent writes of the same table never see each others
+   * manifests. Must be called on the client, after the output path of the step has been configured.
+   *
+   * @param conf The Configuration of the step writing the table.
+   */
+  synchronized void preparePartitionManifests( Configuration conf )
+    {
+    if( manifestsId == null )
+      manifestsId = UUID.randomUUID().toString();
+
+    Path output = FileOutputFormat.getOutputPath( HadoopUtil.asJobConfInstance( conf ) );
+    manifestsLocation = output != null ? output.toString() : null;
+    conf.set( PARTITION_MANIFESTS_ID, manifestsId );
+    }
+
+  /**
+   * Writes a manifest of the given partition paths, so that the partitions can be registered on the client, when the
+   * resource is committed. Within a task the manifest is written to the work output path of the task attempt, so that
+   * only the manifests of committed attempts reach the output location, while those of failed or speculative attempts
+   * are discarded with their output. Outside of a task, the manifest is written to the output location directly, under
+   * a hidden name first, so that incomplete manifests are never picked up.
+   *
+   * @param conf           Configuration object of the current task.
+   * @param partitionPaths The paths of the partitions, relative to the table location.
+   * @throws IOException In case the manifest cannot be written.
+   */
+  void writePartitionManifest( Configuration conf, Collection<String> partitionPaths ) throws IOException
+    {
+    if( !tableDescriptor.isPartitioned() || partitionPaths.isEmpty() )
+      return;
+
+    String id = conf.get( PARTITION_MANIFESTS_ID );
+    if( id == null )
+      throw new IOException( String.format( "no partition manifest id configured for table '%s'", tableDescriptor.getTableName() ) );
+
+    JobConf jobConf = HadoopUtil.asJobConfInstance( conf );
+    Path base = FileOutputFormat.getWorkOutputPath( jobConf );
+    if( base == null )
+      base = FileOutputFormat.getOutputPath( jobConf );
+    if( base == null )
+      base = new Path( getTableLocation() );
+
+    Path manifestDir = new Path( new Path( base, PARTITION_MANIFESTS_DIR ), id );
+    FileSystem fs = manifestDir.getFileSystem( conf );
+    String name = UUID.randomUUID().toString();
+    Path temporary = new Path( manifestDir, "." + name );
+
+    Writer writer = new OutputStreamWriter( fs.create( temporary, false ), "UTF-8" );
+    try
       {
-      throw new IOException( exception );
+      for( String partitionPath : partitionPaths )
+        writer.write( partitionPath + "\n" );
       }
     finally
       {
-      if( metaStoreClient != null )
-        metaStoreClient.close();
+      writer.close();
+      }
+
+    if( !fs.rename( temporary, new Path( manifestDir, name ) ) )
+      throw new IOException( "unable to rename partition manifest " + temporary );
+    }
+
+  /**
+   * Private method to merge all committed partition manifests of the current write and to register the distinct
+   * partitions in the MetaStore at once. Only the manifests of the current write are deleted afterwards.
+   */
+  private synchronized void publishPartitionManifests( Configuration conf ) throws IOException
+    {
+    if( !tableDescriptor.isPartitioned() || manifestsId == null )
+      return;
+
+    Path manifestDir = getPartitionManifestsPath();
+    FileSystem fs = manifestDir.getFileSystem( conf );
+    if( !fs.exists( manifestDir ) )
+      {
+      manifestsId = null;
+      return;
+      }
+
+    Set<String> partitionPaths = new LinkedHashSet<String>();
+    for( FileStatus status : fs.listStatus( manifestDir ) )
+      {
+      // skip manifests, which are still in progress or have been abandoned by failed tasks
+      if( status.isDirectory() || status.getPath().getName().startsWith( "." ) )
+        continue;
+
+      BufferedReader reader = new BufferedReader( new InputStreamReader( fs.open( status.getPath() ), "UTF-8" ) );
+      try
+        {
+        String line;
+        while( ( line = reader.readLine() ) != null )
+          {
+          if( !line.isEmpty() )
+            partitionPaths.add( line );
+          }
+        }
+      finally
+        {
+        reader.close();
+        }
+      }
+
+    LOG.info( "registering {} partitions of table '{}' from manifests", partitionPaths.size(), tableDescriptor.getTableName() );
+
+    HivePartition partition = (HivePartition) tableDescriptor.getPartition();
+    List<Partition> partitions = new ArrayList<Partition>( partitionPaths.size() );
+    for( String partitionPath : partitionPaths )
+      partitions.add( partition.toHivePartition( partitionPath, tableDescriptor ) );
+
+    addPartitionsToMetaStore( conf, partitions );
+    deletePartitionManifests( fs, manifestDir );
+    }
+
+  /**
+   * Private helper method deleting the manifests of the current write. The shared parent directory is only removed,
+   * if no other write has left manifests in it.
+   */
+  private void deletePartitionManifests( FileSystem fs, Path manifestDir ) throws IOException
+    {
+    manifestsId = null;
+    fs.delete( manifestDir, true );
+
+    Path parent = manifestDir.getParent();
+    try
+      {
+      if( fs.exists( parent ) && fs.listStatus( parent ).length == 0 )
+        fs.delete( parent, false );
+      }
+    catch( IOException exception )
+      {
+      // another write has added its manifests in the meantime
+      LOG.debug( "not deleting partition manifest directory {}", parent, exception );
       }
     }
 
+  /**
+   * Private helper method returning the directory, in which the committed partition manifests of the current write
+   * are collected.
+   */
+  private Path getPartitionManifestsPath()
+    {
+    String base = manifestsLocation != null ? manifestsLocation : getTableLocation();
+    return new Path( new Path( base, PARTITION_MANIFESTS_DIR ), manifestsId );
+    }
+
+  private String getTableLocation()
+    {
+    resolveLocation();
+    return tableLocation;
+    }
+
+  /**
+   * Discards the partition manifests of a failed write, so that its partitions are never registered.
+   */
+  @Override
+  public synchronized boolean rollbackResource( Configuration conf ) throws IOException
+    {
+    if( tableDescriptor.isPartitioned() && manifestsId != null )
+      {
+      Path manifestDir = getPartitionManifestsPath();
+      deletePartitionManifests( manifestDir.getFileSystem( conf ), manifestDir );
+      }
+    return super.rollbackResource( conf );
+    }
+
   @Override
   public boolean commitResource( Configuration conf ) throws IOException
     {
@@ -364,20 +663,600 @@ public class HiveTap extends Hfs
       {
       if( !resourceExists( conf ) )
         result = createHiveTable( conf );
+      publishPartitionManifests( conf );
+      if( tableDescriptor.isBucketed() && !tableDescriptor.isPartitioned() )
+        completeBuckets( conf );
       }
     catch( IOException exception )
       {
       throw new TapException( exception );
       }
+    // new data has been written
+    modifiedTime = -1;
     return super.commitResource( conf ) && result;
     }
 
+  /**
+   * Private helper method making sure the directory of a bucketed table holds one file per bucket, as expected by Hive.
+   * Buckets, which did not receive any tuples, get an empty file written by the output format of the Scheme. No other
+   * files are touched, the tasks do not leave any behind, see {@link #sinkConfInit(FlowProcess, Configuration)}.
+   */
+  private void completeBuckets( Configuration conf ) throws IOException
+    {
+    // only the Scheme is needed to write the empty files, the tap itself is already set up
+    JobConf jobConf = new JobConf( conf );
+    FlowProcess<JobConf> flowProcess = new HadoopFlowProcess( jobConf );
+    getScheme().sinkConfInit( flowProcess, this, jobConf );
+
+    new HiveBucketCollector( flowProcess, this, jobConf, getPath() ).createMissingBuckets();
+    }
+
+  /**
+   * Returns the time of the last modification of the table. This is the newest of the DDL time of the table and the
+   * DDL times of its partitions, which are read from the MetaStore in chunks of {@link #PARTITION_BATCH_SIZE}, and of
+   * the modification times of the table directory, the partition directories, wherever they are located, and of the
+   * files and directories directly within them. The directories are skipped, if {@link #MODIFIED_TIME_CHECK_FILES} is
+   * set to false. The table is always read from the MetaStore and never from the MetaStoreTableCache. The result is computed once per tap and recomputed after the tap has changed the table. If the
+   * table does not exist, 0 is returned.
+   *
+   * @param conf The Configuration of the current flow.
+   * @return the last modified time in milliseconds.
+   * @throws IOException in case the interaction with the MetaStore or the FileSystem fails.
+   */
   @Override
   public long getModifiedTime( Configuration conf ) throws IOException
     {
+    if( modifiedTime < 0 )
+      modifiedTime = computeModifiedTime( conf );
     return modifiedTime;
     }
 
+  /**
+   * Private method computing the last modified time of the table from the MetaStore and the FileSystem.
+   */
+  private long computeModifiedTime( Configuration conf ) throws IOException
+    {
+    boolean checkFiles = conf.getBoolean( MODIFIED_TIME_CHECK_FILES, true );
+    List<Path> directories = new ArrayList<Path>();
+    long time;
+    IMetaStoreClient metaStoreClient = null;
+    try
+      {
+      String databaseName = tableDescriptor.getDatabaseName();
+      String tableName = tableDescriptor.getTableName();
+      metaStoreClient = createMetaStoreClient( conf );
+
+      // a cached table may miss the DDL time of a recent change
+      Table table = metaStoreClient.getTable( databaseName, tableName );
+      time = getDdlTime( table.getParameters(), table.getCreateTime() );
+      if( checkFiles && table.getSd().getLocation() != null )
+        directories.add( new Path( table.getSd().getLocation() ) );
+
+      if( tableDescriptor.isPartitioned() )
+        {
+        int batchSize = Math.max( 1, conf.getInt( PARTITION_BATCH_SIZE, DEFAULT_PARTITION_BATCH_SIZE ) );
+
+        List<String> names = metaStoreClient.listPartitionNames( databaseName, tableName, (short) -1 );
+        for( int start = 0; start < names.size(); start += batchSize )
+          {
+          List<String> batch = names.subList( start, Math.min( names.size(), start + batchSize ) );
+          for( Partition partition : metaStoreClient.getPartitionsByNames( databaseName, tableName, batch ) )
+            {
+            time = Math.max( time, getDdlTime( partition.getParameters(), partition.getCreateTime() ) );
+            // partitions can be located anywhere, so each of them is checked on its own
+            if( checkFiles && partition.getSd() != null && partition.getSd().getLocation() != null )
+              directories.add( new Path( partition.getSd().getLocation() ) );
+            }
+          }
+        }
+      }
+    catch( NoSuchObjectException exception )
+      {
+      return 0;
+      }
+    catch( TException exception )
+      {
+      throw new IOException( exception );
+      }
+    finally
+      {
+      if( metaStoreClient != null )
+        metaStoreClient.close();
+      }
+
+    for( Path directory : directories )
+      time = Math.max( time, getNewestModificationTime( directory.getFileSystem( conf ), directory ) );
+
+    LOG.debug( "table '{}' was last modified at {}", tableDescriptor.getTableName(), time );
+    return time;
+    }
+
+  /**
+   * Private helper method returning the DDL time of a table or partition in milliseconds. If the DDL time is not
+   * available, the creation time is used.
+   */
+  private static long getDdlTime( Map<String, String> parameters, int createTime )
+    {
+    long time = createTime * 1000L;
+    String ddlTime = parameters == null ? null : parameters.get( hive_metastoreConstants.DDL_TIME );
+    if( ddlTime != null )
+      {
+      try
+        {
+        time = Math.max( time, Long.parseLong( ddlTime ) * 1000L );
+        }
+      catch( NumberFormatException exception )
+        {
+        LOG.warn( "ignoring invalid DDL time '{}'", ddlTime );
+        }
+      }
+    return time;
+    }
+
+  /**
+   * Private helper method returning the newest modification time of the given path and the files and directories
+   * directly within it. Hidden files and directories are skipped. Changes in nested directories are only visible
+   * through the modification times of the directories themselves.
+   */
+  private static long getNewestModificationTime( FileSystem fs, Path path ) throws IOException
+    {
+    if( !fs.exists( path ) )
+      return 0;
+
+    FileStatus status = fs.getFileStatus( path );
+    long time = status.getModificationTime();
+    if( !status.isDirectory() )
+      return time;
+
+    for( FileStatus child : fs.listStatus( path ) )
+      {
+      String name = child.getPath().getName();
+      if( !name.startsWith( "_" ) && !name.startsWith( "." ) )
+        time = Math.max( time, child.getModificationTime() );
+      }
+    return time;
+    }
+
+  @Override
+  public Path getPath()
+    {
+    resolveLocation();
+    return super.getPath();
+    }
+
+  @Override
+  public String getIdentifier()
+    {
+    resolveLocation();
+    return super.getIdentifier();
+    }
+
+  @Override
+  public String getFullIdentifier( Configuration conf )
+    {
+    resolveLocation();
+    return super.getFullIdentifier( conf );
+    }
+
+  @Override
+  public URI getURIScheme( Configuration conf )
+    {
+    resolveLocation();
+    return super.getURIScheme( conf );
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<? extends Configuration> process, Configuration conf )
+    {
+    resolveLocation();
+    if( !isListingPartitionsFromMetaStore( conf ) && getSelectedBuckets() == null )
+      {
+      super.sourceConfInit( process, conf );
+      return;
+      }
+
+    try
+      {
+      applySourceConfInitIdentifiers( process, conf, getInputPaths( conf ) );
+      }
+    catch( IOException exception )
+      {
+      throw new TapException( exception );
+      }
+    }
+
+  /**
+   * Restricts the partitions read by this tap, when it is used as a source, to the ones matching the given filter. The
+   * matching partitions are looked up in the MetaStore via <code>listPartitionsByFilter</code>, so that only their
+   * locations are added as input paths, instead of globbing all partition directories of the table. The filter uses the
+   * syntax of the MetaStore, e.g. <code>year = "2015" and month &lt; "04"</code>. The MetaStore supports filters on
+   * string partition keys only. The filter is ignored for tables without partitions.
+   *
+   * @param partitionFilter The filter expression or null to read all partitions.
+   */
+  public void setPartitionFilter( String partitionFilter )
+    {
+    this.partitionFilter = partitionFilter;
+    }
+
+  /**
+   * Returns the MetaStore filter restricting the partitions read by this tap.
+   *
+   * @return the filter expression or null, if all partitions are read.
+   */
+  public String getPartitionFilter()
+    {
+    return partitionFilter;
+    }
+
+  /**
+   * Sets a predicate on the columns of the table, which is pushed down into the files read by this tap, when it is used
+   * as a source. ORC files skip the stripes and row groups, Parquet files the row groups, whose statistics show that they
+   * cannot contain matching rows. The remaining rows are not filtered, so the flow still has to apply the predicate.
+   * <p/>
+   * Predicates are only pushed down into ORC and Parquet tables read through a {@link HiveColumnarScheme}. For all other
+   * Schemes the predicate is ignored, unless the table is bucketed.
+   * <p/>
+   * For bucketed tables, the predicate is also used to skip the files of buckets, which cannot contain matching rows.
+   * This requires the predicate to restrict all bucket columns to a set of values, see
+   * {@link HiveBucketLayout#getBuckets(ColumnPredicate)}.
+   *
+   * @param predicate The predicate or null to read all rows.
+   */
+  public void setPredicate( ColumnPredicate predicate )
+    {
+    if( getScheme() instanceof HiveColumnarScheme )
+      ( (HiveColumnarScheme) getScheme() ).setPredicate( predicate );
+    else if( tableDescriptor.isBucketed() )
+      bucketPredicate = predicate;
+    else if( predicate != null )
+      LOG.warn( "ignoring predicate {}, which cannot be pushed down into scheme {}", predicate, getScheme() );
+    }
+
+  /**
+   * Returns the predicate pushed down into the files read by this tap or used to prune the buckets of the table.
+   *
+   * @return the predicate or null.
+   */
+  public ColumnPredicate getPredicate()
+    {
+    if( getScheme() instanceof HiveColumnarScheme )
+      return ( (HiveColumnarScheme) getScheme() ).getPredicate();
+    return bucketPredicate;
+    }
+
+  /**
+   * Restricts the buckets read by this tap, when it is used as a source, to the given ones. Only the files of the given
+   * buckets are added as input paths, in every partition of a partitioned table. This allows to process identically
+   * bucketed tables bucket by bucket, e.g. to join bucket i of one table with bucket i of another one without a shuffle
+   * of the whole tables. If a predicate is set as well, only the given buckets matching the predicate are read.
+   *
+   * @param buckets The buckets to read, none to read all buckets.
+   */
+  public void setBuckets( int... buckets )
+    {
+    if( buckets == null || buckets.length == 0 )
+      {
+      this.buckets = null;
+      return;
+      }
+
+    if( !tableDescriptor.isBucketed() )
+      throw new IllegalArgumentException( String.format( "table '%s' is not bucketed", tableDescriptor.getTableName() ) );
+
+    for( int bucket : buckets )
+      {
+      if( bucket < 0 || bucket >= tableDescriptor.getNumBuckets() )
+        throw new IllegalArgumentException( String.format( "bucket %d is out of range, table '%s' has %d buckets",
+          bucket, tableDescriptor.getTableName(), tableDescriptor.getNumBuckets() ) );
+      }
+
+    this.buckets = buckets.clone();
+    }
+
+  /**
+   * Returns the buckets read by this tap, as set via {@link #setBuckets(int...)}.
+   *
+   * @return the buckets or null, if all buckets are read.
+   */
+  public int[] getBuckets()
+    {
+    return buckets != null ? buckets.clone() : null;
+    }
+
+  /**
+   * Returns the HiveBucketLayout of the table of this tap.
+   *
+   * @return the HiveBucketLayout.
+   * @throws IllegalArgumentException in case the table is not bucketed.
+   */
+  public HiveBucketLayout getBucketLayout()
+    {
+    return new HiveBucketLayout( tableDescriptor );
+    }
+
+  /**
+   * Returns the buckets to read, which are the buckets set via {@link #setBuckets(int...)} matching the predicate of
+   * this tap.
+   *
+   * @return the buckets to read or null, if all buckets are read.
+   */
+  SortedSet<Integer> getSelectedBuckets()
+    {
+    if( !tableDescriptor.isBucketed() )
+      return null;
+
+    SortedSet<Integer> selected = null;
+    if( buckets != null )
+      {
+      selected = new TreeSet<Integer>();
+      for( int bucket : buckets )
+        selected.add( bucket );
+      }
+
+    SortedSet<Integer> matching = getBucketLayout().getBuckets( getPredicate() );
+    if( matching == null )
+      return selected;
+    if( selected == null )
+      return matching;
+
+    selected.retainAll( matching );
+    return selected;
+    }
+
+  /**
+   * Returns the input paths of this tap. These are the table or partition directories, or the files of the selected
+   * buckets within them. Directories, which do not contain one file per bucket, are read completely.
+   *
+   * @param conf The Configuration of the current flow.
+   * @return the fully qualified input paths.
+   * @throws IOException in case the interaction with the MetaStore or the FileSystem fails or nothing is to be read.
+   */
+  String[] getInputPaths( Configuration conf ) throws IOException
+    {
+    String[] directories;
+    if( isListingPartitionsFromMetaStore( conf ) )
+      directories = getPartitionPaths( conf, true );
+    else
+      directories = getDirectories( conf );
+
+    SortedSet<Integer> selected = getSelectedBuckets();
+    if( selected == null )
+      return directories;
+    if( selected.isEmpty() )
+      throw new IOException( String.format( "no bucket of table '%s' matches buckets %s and predicate %s",
+        tableDescriptor.getTableName(), Arrays.toString( buckets ), getPredicate() ) );
+
+    HiveBucketLayout layout = getBucketLayout();
+    List<String> paths = new ArrayList<String>();
+    for( String directory : directories )
+      {
+      List<Path> files = layout.getBucketFiles( conf, new Path( directory ) );
+      if( files == null )
+        {
+        LOG.warn( "directory {} does not contain one file per bucket, reading it completely", directory );
+        paths.add( directory );
+        continue;
+        }
+
+      for( int bucket : selected )
+        paths.add( files.get( bucket ).toString() );
+      }
+
+    LOG.info( "reading buckets {} of {} of table '{}'", selected, layout.getNumBuckets(), tableDescriptor.getTableName() );
+
+    return paths.toArray( new String[ paths.size() ] );
+    }
+
+  /**
+   * Private helper method returning the fully qualified table directory or the partition directories matching the path
+   * of this tap.
+   */
+  private String[] getDirectories( Configuration conf ) throws IOException
+    {
+    Path path = getPath();
+    FileSystem fs = path.getFileSystem( conf );
+    FileStatus[] statuses = fs.globStatus( path );
+    if( statuses == null || statuses.length == 0 )
+      throw new IOException( String.format( "no data found for table '%s' at %s", tableDescriptor.getTableName(), path ) );
+
+    List<String> directories = new ArrayList<String>( statuses.length );
+    for( FileStatus status : statuses )
+      {
+      if( status.isDirectory() )
+        directories.add( fs.makeQualified( status.getPath() ).toString() );
+      }
+    return directories.toArray( new String[ directories.size() ] );
+    }
+
+  /**
+   * Returns true, if the input paths of this tap are the partition locations found in the MetaStore. This is the case
+   * for partitioned tables, if either a partition filter is set or {@link #METASTORE_PARTITION_LISTING_ENABLED} is
+   * enabled.
+   *
+   * @param conf The Configuration of the current flow.
+   * @return true, if the partitions are listed via the MetaStore.
+   */
+  boolean isListingPartitionsFromMetaStore( Configuration conf )
+    {
+    if( !tableDescriptor.isPartitioned() )
+      return false;
+    return partitionFilter != null || conf.getBoolean( METASTORE_PARTITION_LISTING_ENABLED, false );
+    }
+
+  /**
+   * Returns the locations of all registered partitions matching the partition filter of this tap or of all registered
+   * partitions, if no filter is set. The partitions are fetched with a single MetaStore call.
+   *
+   * @param conf           The Configuration of the current flow.
+   * @param fullyQualified true, if the locations should include the scheme and authority of the FileSystem.
+   * @return the partition locations.
+   * @throws IOException in case the interaction with the MetaStore fails or no partition is found.
+   */
+  String[] getPartitionPaths( Configuration conf, boolean fullyQualified ) throws IOException
+    {
+    List<Partition> partitions;
+    IMetaStoreClient metaStoreClient = null;
+    try
+      {
+      metaStoreClient = createMetaStoreClient( conf );
+      if( partitionFilter == null )
+        partitions = metaStoreClient.listPartitions( tableDescriptor.getDatabaseName(), tableDescriptor.getTableName(), (short) -1 );
+      else
+        partitions = metaStoreClient.listPartitionsByFilter( tableDescriptor.getDatabaseName(), tableDescriptor.getTableName(),
+          partitionFilter, (short) -1 );
+      }
+    catch( TException exception )
+      {
+      throw new IOException( exception );
+      }
+    finally
+      {
+      if( metaStoreClient != null )
+        metaStoreClient.close();
+      }
+
+    if( partitions.isEmpty() && partitionFilter == null )
+      throw new IOException( String.format( "table '%s' has no registered partitions", tableDescriptor.getTableName() ) );
+    if( partitions.isEmpty() )
+      throw new IOException( String.format( "no partitions of table '%s' match the filter '%s'",
+        tableDescriptor.getTableName(), partitionFilter ) );
+
+    LOG.info( "reading {} partitions of table '{}' registered in the MetaStore", partitions.size(), tableDescriptor.getTableName() );
+
+    String[] paths = new String[ partitions.size() ];
+    for( int index = 0; index < paths.length; index++ )
+      {
+      Path path = new Path( partitions.get( index ).getSd().getLocation() );
+      if( fullyQualified )
+        paths[ index ] = path.getFileSystem( conf ).makeQualified( path ).toString();
+      else
+        paths[ index ] = path.toUri().getPath();
+      }
+    return paths;
+    }
+
+  /**
+   * Sets up the given Configuration for writing the table. Bucketed tables are written by a HiveBucketCollector, the
+   * output format of the tasks is wrapped in a LazyOutputFormat, so that the unused OutputCollectors of the tasks do not
+   * create any files in the table directory. Bucketed tables can only be replaced, since the files of a new write
+   * would otherwise be mixed with the existing buckets.
+   */
+  @Override
+  public void sinkConfInit( FlowProcess<? extends Configuration> process, Configuration conf )
+    {
+    if( tableDescriptor.isBucketed() && !isReplace() )
+      throw new TapException( String.format( "the bucketed table '%s' can only be written with SinkMode.REPLACE, got %s",
+        tableDescriptor.getTableName(), getSinkMode() ) );
+
+    resolveLocation();
+    super.sinkConfInit( process, conf );
+
+    if( tableDescriptor.isBucketed() && conf instanceof JobConf )
+      {
+      JobConf jobConf = (JobConf) conf;
+      if( !( jobConf.getOutputFormat() instanceof LazyOutputFormat ) )
+        LazyOutputFormat.setOutputFormatClass( jobConf, jobConf.getOutputFormat().getClass() );
+      }
+    }
+
+  @Override
+  public TupleEntryIterator openForRead( FlowProcess<? extends Configuration> flowProcess, RecordReader input ) throws IOException
+    {
+    resolveLocation();
+    return super.openForRead( flowProcess, input );
+    }
+
+  /**
+   * Opens the tap for writing. Bucketed tables are written by a collector creating one file per bucket, the given
+   * OutputCollector is not used in that case. Within a task, the table has to be written by the reducers of a step with
+   * one reducer per bucket, see {@link HiveBucketAssembly}, otherwise several tasks would write the same bucket files.
+   */
+  @Override
+  public TupleEntryCollector openForWrite( FlowProcess<? extends Configuration> flowProcess, OutputCollector output ) throws IOException
+    {
+    resolveLocation();
+    if( !tableDescriptor.isBucketed() )
+      return super.openForWrite( flowProcess, output );
+
+    JobConf conf = HadoopUtil.asJobConfInstance( flowProcess.getConfigCopy() );
+    if( output != null )
+      verifyBucketTask( conf );
+
+    Path directory = output != null ? FileOutputFormat.getWorkOutputPath( conf ) : null;
+    if( directory == null )
+      {
+      // outside of a task the files are written directly into the table directory
+      sinkConfInit( flowProcess, conf );
+      directory = getPath();
+      }
+    return new HiveBucketCollector( flowProcess, this, conf, directory );
+    }
+
+  /**
+   * Private helper method making sure the current task is the only writer of its bucket files, which are named after
+   * the bucket only. Map tasks and steps with another number of reducers than buckets are rejected.
+   */
+  private void verifyBucketTask( JobConf conf )
+    {
+    String attemptId = conf.get( HiveBucketCollector.TASK_ATTEMPT_ID );
+    if( attemptId == null )
+      return;
+
+    if( TaskAttemptID.forName( attemptId ).getTaskType() != TaskType.REDUCE )
+      throw new TapException( String.format( "the bucketed table '%s' has to be written by reducers, use a HiveBucketAssembly in front of the sink",
+        tableDescriptor.getTableName() ) );
+
+    if( conf.getNumReduceTasks() != tableDescriptor.getNumBuckets() )
+      throw new TapException( String.format( "the bucketed table '%s' has %d buckets, but is written by %d reducers, use a HiveBucketAssembly in front of the sink",
+        tableDescriptor.getTableName(), tableDescriptor.getNumBuckets(), conf.getNumReduceTasks() ) );
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( object == null || getClass() != object.getClass() )
+      return false;
+
+    // the location is resolved lazily, so the table is used to identify the tap.
+    HiveTap that = (HiveTap) object;
+
+    if( !tableDescriptor.equals( that.tableDescriptor ) )
+      return false;
+    if( getScheme() != null ? !getScheme().equals( that.getScheme() ) : that.getScheme() != null )
+      return false;
+    if( getSinkMode() != that.getSinkMode() )
+      return false;
+    if( partitionFilter != null ? !partitionFilter.equals( that.partitionFilter ) : that.partitionFilter != null )
+      return false;
+    if( !Arrays.equals( buckets, that.buckets ) )
+      return false;
+    if( bucketPredicate != null ? !bucketPredicate.equals( that.bucketPredicate ) : that.bucketPredicate != null )
+      return false;
+
+    return true;
+    }
+
+  @Override
+  public int hashCode()
+    {
+    int result = tableDescriptor.hashCode();
+    result = 31 * result + ( getScheme() != null ? getScheme().hashCode() : 0 );
+    result = 31 * result + ( partitionFilter != null ? partitionFilter.hashCode() : 0 );
+    result = 31 * result + Arrays.hashCode( buckets );
+    result = 31 * result + ( bucketPredicate != null ? bucketPredicate.hashCode() : 0 );
+    return result;
+    }
+
+  @Override
+  public String toString()
+    {
+    return getClass().getSimpleName() + "[\"" + getScheme() + "\"]" + "[\"" + tableDescriptor.getDatabaseName() + "."
+      + tableDescriptor.getTableName() + "\"]";
+    }
+
   /**
    * Internal method to get access to the HiveTableDescriptor of the HiveTap.
    *
@@ -388,6 +1267,50 @@ public class HiveTap extends Hfs
     return tableDescriptor;
     }
 
+  /**
+   * Private method resolving the location of the table once. The location is not resolved in the constructor, since
+   * that requires a round trip to the MetaStore, which is wasted for taps, which are never used.
+   */
+  private synchronized void resolveLocation()
+    {
+    if( locationResolved )
+      return;
+
+    setFilesystemLocation();
+    locationResolved = true;
+    }
+
+  /**
+   * Resolves the location of the table from the given Table, which has been fetched from the MetaStore by the caller.
+   * If the location has already been resolved, the call is ignored.
+   *
+   * @param table The Table as found in the MetaStore or null, if the table does not exist.
+   */
+  synchronized void resolveLocation( Table table )
+    {
+    resolveLocation( null, table );
+    }
+
+  /**
+   * Resolves the location of the table from the given Table, which has been fetched by the caller from the MetaStore
+   * described by the given HiveConf. The tap talks to the same MetaStore from then on. If the location has already
+   * been resolved, the call is ignored.
+   *
+   * @param hiveConf The HiveConf describing the MetaStore or null to keep the HiveConf of the tap.
+   * @param table    The Table as found in the MetaStore or null, if the table does not exist.
+   */
+  synchronized void resolveLocation( HiveConf hiveConf, Table table )
+    {
+    if( locationResolved )
+      return;
+
+    if( hiveConf != null )
+      this.hiveConf = new HiveConf( hiveConf );
+
+    setFilesystemLocation( table );
+    locationResolved = true;
+    }
+
   /**
    * Private method that sets the correct location of the files on HDFS. For an existing table
    * it uses the value from the Hive MetaStore. Otherwise it uses the default location for Hive.
@@ -396,18 +1319,9 @@ public class HiveTap extends Hfs
   private void setFilesystemLocation()
     {
     // If the table already exists get the location otherwise use the location from the table descriptor.
-    IMetaStoreClient metaStoreClient = null;
     try
       {
-      metaStoreClient = createMetaStoreClient( null );
-      Table table = metaStoreClient.getTable( tableDescriptor.getDatabaseName(),
-        tableDescriptor.getTableName() );
-      String path = table.getSd().getLocation();
-      String[] partitionKeys = tableDescriptor.getPartitionKeys();
-      if(null != partitionKeys)
-          for (String partitionKey: partitionKeys)
-              path = path + "/*";
-      setStringPath( path );
+      setFilesystemLocation( getHiveTable( null ) );
       }
     catch( MetaException exception )
       {
@@ -415,44 +1329,91 @@ public class HiveTap extends Hfs
       }
     catch( NoSuchObjectException exception )
       {
-      setStringPath( tableDescriptor.getLocation( hiveConf.getVar( ConfVars.METASTOREWAREHOUSE ) ) );
+      setFilesystemLocation( null );
       }
     catch( TException exception )
       {
       throw new CascadingException( exception );
       }
+    }
+
+  /**
+   * Private method that sets the location of the files on HDFS based on the given Table or on the default location
+   * for Hive, if the table is null.
+   */
+  private void setFilesystemLocation( Table table )
+    {
+    if( table == null )
+      {
+      tableLocation = tableDescriptor.getLocation( getHiveConf( null ).getVar( ConfVars.METASTOREWAREHOUSE ) );
+      setStringPath( tableLocation );
+      return;
+      }
+
+    String path = table.getSd().getLocation();
+    tableLocation = path;
+    String[] partitionKeys = tableDescriptor.getPartitionKeys();
+    if(null != partitionKeys)
+        for (String partitionKey: partitionKeys)
+            path = path + "/*";
+    setStringPath( path );
+    }
+
+  /**
+   * Private helper method to fetch the Table of this tap. Tables are served from the MetaStoreTableCache, if possible,
+   * and fetched from the MetaStore otherwise.
+   *
+   * @return the Table
+   * @throws NoSuchObjectException in case the table does not exist.
+   * @throws TException in case the interaction with the MetaStore fails.
+   */
+  private Table getHiveTable( Configuration configuration ) throws TException
+    {
+    MetaStoreTableCache cache = MetaStoreTableCache.getInstance();
+    Table table = cache.get( getHiveConf( configuration ), tableDescriptor.getDatabaseName(), tableDescriptor.getTableName() );
+    if( table != null )
+      return table;
+    if( cache.isMissing( hiveConf, tableDescriptor.getDatabaseName(), tableDescriptor.getTableName() ) )
+      throw new NoSuchObjectException( tableDescriptor.getDatabaseName() + "." + tableDescriptor.getTableName() + " table not found" );
+
+    IMetaStoreClient metaStoreClient = createMetaStoreClient( null );
+    try
+      {
+      table = metaStoreClient.getTable( tableDescriptor.getDatabaseName(), tableDescriptor.getTableName() );
+      }
     finally
       {
-      if( metaStoreClient != null )
-        metaStoreClient.close();
+      metaStoreClient.close();
       }
+    cache.put( hiveConf, table );
+    return table;
     }
 
   /**
-   * Private helper method to create a IMetaStore client.
+   * Private helper method to borrow a IMetaStore client from the JVM wide MetaStoreClientPool. Closing the client
+   * returns it to the pool.
    *
-   * @return a new IMetaStoreClient
+   * @return a pooled IMetaStoreClient
    * @throws MetaException in case the creation fails.
    */
   private IMetaStoreClient createMetaStoreClient( Configuration configuration ) throws MetaException
     {
-    // it is a bit unclear if it is safe to re-use these instances, so we create a
-    // new one every time, to be sure
+    return MetaStoreClientPool.getInstance().borrowClient( getHiveConf( configuration ) );
+    }
+
+  /**
+   * Private helper method to return the HiveConf object, which is merged with the given Configuration.
+   *
+   * @return the HiveConf object.
+   */
+  private HiveConf getHiveConf( Configuration configuration )
+    {
     if( hiveConf == null )
       hiveConf = new HiveConf();
 
     if( configuration != null )
       hiveConf.addResource( configuration );
 
-    return RetryingMetaStoreClient.getProxy( hiveConf,
-      new HiveMetaHookLoader()
-      {
-      @Override
-      public HiveMetaHook getHook( Table tbl ) throws MetaException
-        {
-        return null;
-        }
-      }, HiveMetaStoreClient.class.getName()
-    );
+    return hiveConf;
     }
   }
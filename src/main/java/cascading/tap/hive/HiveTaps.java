@@ -0,0 +1,205 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cascading.CascadingException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.api.UnknownDBException;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory methods for creating many HiveTap instances at once. Instead of fetching each table on its own, the tables
+ * are fetched with one MetaStore call per database and the resulting taps are created with their location already
+ * resolved. The fetched tables and the ones found missing are also put into the MetaStoreTableCache, so that
+ * subsequent existence checks of the taps are served from memory. The taps talk to the MetaStore the tables have been
+ * fetched from.
+ */
+public class HiveTaps
+  {
+  /** Field LOG */
+  private static final Logger LOG = LoggerFactory.getLogger( HiveTaps.class );
+
+  /** the TapFactory creating HiveTaps with the Scheme of the HiveTableDescriptor and the default settings */
+  private static final TapFactory DEFAULT_FACTORY = new TapFactory()
+    {
+    @Override
+    public HiveTap createTap( HiveTableDescriptor descriptor )
+      {
+      return new HiveTap( descriptor, descriptor.toScheme() );
+      }
+    };
+
+  /**
+   * Callback creating the HiveTap of a single table, e.g. with a projected Scheme, a different SinkMode or strict
+   * validation. The location of the returned tap is resolved by {@link HiveTaps}.
+   */
+  public interface TapFactory
+    {
+    /**
+     * Creates the HiveTap for the given HiveTableDescriptor.
+     *
+     * @param descriptor The HiveTableDescriptor of the table.
+     * @return a new HiveTap for the given table.
+     */
+    HiveTap createTap( HiveTableDescriptor descriptor );
+    }
+
+  private HiveTaps()
+    {
+    }
+
+  /**
+   * Creates HiveTaps for all given HiveTableDescriptors, using the Scheme returned by
+   * {@link HiveTableDescriptor#toScheme()}.
+   *
+   * @param descriptors The HiveTableDescriptors of the tables.
+   * @return a Map of HiveTableDescriptor to HiveTap in the order of the given descriptors.
+   */
+  public static Map<HiveTableDescriptor, HiveTap> resolveAll( Collection<HiveTableDescriptor> descriptors )
+    {
+    return resolveAll( null, descriptors );
+    }
+
+  /**
+   * Creates HiveTaps for all given HiveTableDescriptors, using the Scheme returned by
+   * {@link HiveTableDescriptor#toScheme()}.
+   *
+   * @param conf        Configuration to merge into the HiveConf used to talk to the MetaStore, can be null.
+   * @param descriptors The HiveTableDescriptors of the tables.
+   * @return a Map of HiveTableDescriptor to HiveTap in the order of the given descriptors.
+   */
+  public static Map<HiveTableDescriptor, HiveTap> resolveAll( Configuration conf, Collection<HiveTableDescriptor> descriptors )
+    {
+    return resolveAll( conf, descriptors, DEFAULT_FACTORY );
+    }
+
+  /**
+   * Creates HiveTaps for all given HiveTableDescriptors, using the given TapFactory to create each of them.
+   *
+   * @param conf        Configuration to merge into the HiveConf used to talk to the MetaStore, can be null.
+   * @param descriptors The HiveTableDescriptors of the tables.
+   * @param factory     The TapFactory creating the HiveTap of each descriptor.
+   * @return a Map of HiveTableDescriptor to HiveTap in the order of the given descriptors.
+   */
+  public static Map<HiveTableDescriptor, HiveTap> resolveAll( Configuration conf, Collection<HiveTableDescriptor> descriptors,
+                                                              TapFactory factory )
+    {
+    HiveConf hiveConf = new HiveConf();
+    if( conf != null )
+      hiveConf.addResource( conf );
+
+    Map<String, List<String>> tableNamesByDatabase = new LinkedHashMap<String, List<String>>();
+    for( HiveTableDescriptor descriptor : descriptors )
+      {
+      List<String> tableNames = tableNamesByDatabase.get( descriptor.getDatabaseName() );
+      if( tableNames == null )
+        {
+        tableNames = new ArrayList<String>();
+        tableNamesByDatabase.put( descriptor.getDatabaseName(), tableNames );
+        }
+      if( !tableNames.contains( descriptor.getTableName() ) )
+        tableNames.add( descriptor.getTableName() );
+      }
+
+    Map<String, Table> tables = fetchTables( hiveConf, tableNamesByDatabase );
+
+    MetaStoreTableCache cache = MetaStoreTableCache.getInstance();
+    Map<HiveTableDescriptor, HiveTap> taps = new LinkedHashMap<HiveTableDescriptor, HiveTap>();
+    for( HiveTableDescriptor descriptor : descriptors )
+      {
+      Table table = tables.get( createKey( descriptor.getDatabaseName(), descriptor.getTableName() ) );
+      if( table == null )
+        cache.putMissing( hiveConf, descriptor.getDatabaseName(), descriptor.getTableName() );
+
+      HiveTap tap = factory.createTap( descriptor );
+      if( tap == null || !descriptor.equals( tap.getTableDescriptor() ) )
+        throw new IllegalArgumentException( String.format( "the TapFactory must return a HiveTap for table '%s'",
+          descriptor.getTableName() ) );
+
+      tap.resolveLocation( hiveConf, table );
+      taps.put( descriptor, tap );
+      }
+
+    return taps;
+    }
+
+  /**
+   * Private helper method fetching all given tables with one MetaStore call per database. Tables, which do not exist
+   * are not part of the returned Map.
+   */
+  private static Map<String, Table> fetchTables( HiveConf hiveConf, Map<String, List<String>> tableNamesByDatabase )
+    {
+    Map<String, Table> tables = new HashMap<String, Table>();
+    MetaStoreTableCache cache = MetaStoreTableCache.getInstance();
+    IMetaStoreClient metaStoreClient = null;
+    try
+      {
+      metaStoreClient = MetaStoreClientPool.getInstance().borrowClient( hiveConf );
+      for( Map.Entry<String, List<String>> entry : tableNamesByDatabase.entrySet() )
+        {
+        LOG.debug( "fetching {} tables from database '{}'", entry.getValue().size(), entry.getKey() );
+        List<Table> found;
+        try
+          {
+          found = metaStoreClient.getTableObjectsByName( entry.getKey(), entry.getValue() );
+          }
+        catch( UnknownDBException exception )
+          {
+          // none of the tables exist yet
+          continue;
+          }
+
+        for( Table table : found )
+          {
+          tables.put( createKey( table.getDbName(), table.getTableName() ), table );
+          cache.put( hiveConf, table );
+          }
+        }
+      }
+    catch( TException exception )
+      {
+      throw new CascadingException( exception );
+      }
+    finally
+      {
+      if( metaStoreClient != null )
+        metaStoreClient.close();
+      }
+    return tables;
+    }
+
+  private static String createKey( String databaseName, String tableName )
+    {
+    return databaseName.toLowerCase() + "." + tableName.toLowerCase();
+    }
+  }
@@ -0,0 +1,180 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.CharacterCodingException;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import cascading.tuple.type.CoercibleType;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.hadoop.io.Text;
+
+/**
+ * HiveTextParser converts the fields of Hive's text format into typed values, reading directly from the UTF-8 bytes of
+ * a line. Integral numbers and booleans are parsed from the bytes without creating a String. Like the LazySimpleSerDe,
+ * values, which cannot be parsed into the type of the column, are read as null.
+ */
+final class HiveTextParser
+  {
+  private HiveTextParser()
+    {
+    }
+
+  /**
+   * Parses the bytes between start and end into a value of the given type. Untyped values are read as Strings.
+   *
+   * @param bytes The bytes of the line.
+   * @param start The offset of the first byte of the field.
+   * @param end   The offset after the last byte of the field.
+   * @param type  The type of the field, can be null.
+   * @return the parsed value or null.
+   * @throws CharacterCodingException if the bytes are no valid UTF-8.
+   */
+  static Object parse( byte[] bytes, int start, int end, Type type ) throws CharacterCodingException
+    {
+    if( type == null || type == String.class || type == Object.class )
+      return Text.decode( bytes, start, end - start );
+
+    try
+      {
+      if( type == Integer.class || type == int.class )
+        return (int) parseLong( bytes, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE );
+      if( type == Long.class || type == long.class )
+        return parseLong( bytes, start, end, Long.MIN_VALUE, Long.MAX_VALUE );
+      if( type == Short.class || type == short.class )
+        return (short) parseLong( bytes, start, end, Short.MIN_VALUE, Short.MAX_VALUE );
+      if( type == Byte.class || type == byte.class )
+        return (byte) parseLong( bytes, start, end, Byte.MIN_VALUE, Byte.MAX_VALUE );
+      if( type == Boolean.class || type == boolean.class )
+        return parseBoolean( bytes, start, end );
+      if( type == byte[].class )
+        return parseBinary( bytes, start, end );
+
+      String value = Text.decode( bytes, start, end - start );
+      if( type == Double.class || type == double.class )
+        return Double.valueOf( value );
+      if( type == Float.class || type == float.class )
+        return Float.valueOf( value );
+      if( type == BigDecimal.class )
+        return new BigDecimal( value.trim() );
+      if( type == Date.class )
+        return Date.valueOf( value );
+      if( type == Timestamp.class )
+        return Timestamp.valueOf( value );
+      if( type instanceof CoercibleType )
+        return ( (CoercibleType) type ).canonical( value );
+      return value;
+      }
+    catch( IllegalArgumentException exception )
+      {
+      // NumberFormatException included, Hive reads unparseable values as null
+      return null;
+      }
+    }
+
+  /**
+   * Parses a decimal integral number within the given bounds, following LazyLong and LazyInteger of Hive. A fractional
+   * part is truncated.
+   *
+   * @throws NumberFormatException if the bytes are no number within the bounds.
+   */
+  static long parseLong( byte[] bytes, int start, int end, long min, long max )
+    {
+    if( start >= end )
+      throw new NumberFormatException( "empty value" );
+
+    boolean negative = bytes[ start ] == '-';
+    int index = negative || bytes[ start ] == '+' ? start + 1 : start;
+    if( index == end )
+      throw new NumberFormatException( "sign without digits" );
+
+    // accumulate negatively, so that the minimum value does not overflow
+    long limit = negative ? min : -max;
+    long multiplyLimit = limit / 10;
+    long result = 0;
+    for( ; index < end; index++ )
+      {
+      int digit = bytes[ index ] - '0';
+      if( digit < 0 || digit > 9 )
+        {
+        if( bytes[ index ] == '.' && isDigits( bytes, index + 1, end ) )
+          break;
+        throw new NumberFormatException( "invalid digit" );
+        }
+      if( result < multiplyLimit )
+        throw new NumberFormatException( "value out of range" );
+      result *= 10;
+      if( result < limit + digit )
+        throw new NumberFormatException( "value out of range" );
+      result -= digit;
+      }
+
+    return negative ? result : -result;
+    }
+
+  /**
+   * Parses "true" or "false" regardless of the case, like LazyBoolean of Hive.
+   */
+  static Boolean parseBoolean( byte[] bytes, int start, int end )
+    {
+    if( equalsIgnoreCase( bytes, start, end, "true" ) )
+      return Boolean.TRUE;
+    if( equalsIgnoreCase( bytes, start, end, "false" ) )
+      return Boolean.FALSE;
+    return null;
+    }
+
+  /**
+   * Returns the base64 decoded bytes, if they are base64 encoded, otherwise a copy of the bytes, like LazyBinary.
+   */
+  private static byte[] parseBinary( byte[] bytes, int start, int end )
+    {
+    byte[] value = Arrays.copyOfRange( bytes, start, end );
+    return Base64.isArrayByteBase64( value ) ? Base64.decodeBase64( value ) : value;
+    }
+
+  private static boolean isDigits( byte[] bytes, int start, int end )
+    {
+    for( int index = start; index < end; index++ )
+      {
+      if( bytes[ index ] < '0' || bytes[ index ] > '9' )
+        return false;
+      }
+    return true;
+    }
+
+  private static boolean equalsIgnoreCase( byte[] bytes, int start, int end, String expected )
+    {
+    if( end - start != expected.length() )
+      return false;
+
+    for( int index = 0; index < expected.length(); index++ )
+      {
+      if( Character.toLowerCase( bytes[ start + index ] ) != expected.charAt( index ) )
+        return false;
+      }
+    return true;
+    }
+  }
@@ -0,0 +1,360 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.scheme.SinkCall;
+import cascading.scheme.SourceCall;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.hadoop.mapred.TextOutputFormat;
+
+import static cascading.flow.hadoop.util.HadoopUtil.asJobConfInstance;
+
+/**
+ * HiveTextScheme is a Scheme for reading and writing delimited text files in the layout of Hive's default text format.
+ * Null values are stored as <code>\N</code> and missing trailing columns are read as null, like Hive does. If an escape
+ * character is given, delimiters preceded by it are part of the value, like with the <code>escape.delim</code>
+ * property of the LazySimpleSerDe.
+ * <p/>
+ * When used as a source, only the columns of the source fields are extracted from each line. The line is scanned only
+ * up to the last requested column and no values are created for the columns in between. If the fields given to the
+ * Scheme are typed, the values are converted into these types once while reading, e.g. numbers are parsed directly
+ * from the bytes of the line. Values, which cannot be converted, are read as null like in Hive. Lines are split on their
+ * raw bytes and the buffers holding the offsets of the columns and unescaped values are reused across lines.
+ * <p/>
+ * When used as a sink, the values are encoded into a reusable buffer by a {@link HiveTextWriter}, escaping delimiters
+ * within values, if an escape character is given.
+ */
+public class HiveTextScheme extends Scheme<Configuration, RecordReader, OutputCollector, Object[], Object[]>
+  {
+  /** the representation of null values in the files */
+  public static final String NULL = "\\N";
+
+  /** the UTF-8 bytes of NULL */
+  private static final byte[] NULL_BYTES = NULL.getBytes( Charset.forName( "UTF-8" ) );
+
+  /** the field delimiter */
+  private final String delimiter;
+
+  /** the escape character or null */
+  private final Character escape;
+
+  /** positions of the source fields within the columns of the files */
+  private final int[] readColumns;
+
+  /** number of columns to scan, up to the last read column */
+  private final int scanColumns;
+
+  /**
+   * Constructs a new HiveTextScheme reading and writing all given columns.
+   *
+   * @param fields    The columns stored in the files.
+   * @param delimiter The field delimiter.
+   */
+  public HiveTextScheme( Fields fields, String delimiter )
+    {
+    this( fields, delimiter, fields );
+    }
+
+  /**
+   * Constructs a new HiveTextScheme writing all given columns and reading only the given source fields.
+   *
+   * @param fields       The columns stored in the files.
+   * @param delimiter    The field delimiter.
+   * @param sourceFields The columns to read, which have to be a subset of fields.
+   */
+  public HiveTextScheme( Fields fields, String delimiter, Fields sourceFields )
+    {
+    this( fields, delimiter, null, sourceFields );
+    }
+
+  /**
+   * Constructs a new HiveTextScheme writing all given columns and reading only the given source fields, using the given
+   * escape character.
+   *
+   * @param fields       The columns stored in the files.
+   * @param delimiter    The field delimiter.
+   * @param escape       The escape character, which has to be an ASCII character, or null.
+   * @param sourceFields The columns to read, which have to be a subset of fields.
+   */
+  public HiveTextScheme( Fields fields, String delimiter, Character escape, Fields sourceFields )
+    {
+    super( sourceFields, fields );
+    if( delimiter == null || delimiter.isEmpty() )
+      throw new IllegalArgumentException( "delimiter cannot be null or empty" );
+    if( escape != null && escape > 127 )
+      throw new IllegalArgumentException( "escape must be an ASCII character" );
+    if( !fields.contains( sourceFields ) )
+      throw new IllegalArgumentException( "sourceFields must be a subset of fields" );
+
+    this.delimiter = delimiter;
+    this.escape = escape;
+    this.readColumns = new int[ sourceFields.size() ];
+    for( int index = 0; index < readColumns.length; index++ )
+      readColumns[ index ] = fields.getPos( sourceFields.get( index ) );
+
+    int lastReadColumn = -1;
+    for( int readColumn : readColumns )
+      lastReadColumn = Math.max( lastReadColumn, readColumn );
+    this.scanColumns = lastReadColumn + 1;
+    }
+
+  public String getDelimiter()
+    {
+    return delimiter;
+    }
+
+  public Character getEscape()
+    {
+    return escape;
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<? extends Configuration> flowProcess, Tap<Configuration, RecordReader, OutputCollector> tap, Configuration conf )
+    {
+    asJobConfInstance( conf ).setInputFormat( TextInputFormat.class );
+    }
+
+  @Override
+  public void sinkConfInit( FlowProcess<? extends Configuration> flowProcess, Tap<Configuration, RecordReader, OutputCollector> tap, Configuration conf )
+    {
+    JobConf jobConf = asJobConfInstance( conf );
+    jobConf.setOutputKeyClass( Text.class );
+    jobConf.setOutputValueClass( Text.class );
+    jobConf.setOutputFormat( TextOutputFormat.class );
+    }
+
+  @Override
+  public void sourcePrepare( FlowProcess<? extends Configuration> flowProcess, SourceCall<Object[], RecordReader> sourceCall ) throws IOException
+    {
+    Type[] types = new Type[ readColumns.length ];
+    for( int index = 0; index < readColumns.length; index++ )
+      types[ index ] = getSinkFields().getType( readColumns[ index ] );
+
+    RecordReader input = sourceCall.getInput();
+    sourceCall.setContext( new Object[]{input.createKey(), input.createValue(), new int[ scanColumns ],
+                                        new int[ scanColumns ], types, delimiter.getBytes( Charset.forName( "UTF-8" ) ),
+                                        new byte[ 64 ]} );
+    }
+
+  @Override
+  public boolean source( FlowProcess<? extends Configuration> flowProcess, SourceCall<Object[], RecordReader> sourceCall ) throws IOException
+    {
+    Object[] context = sourceCall.getContext();
+    if( !sourceCall.getInput().next( context[ 0 ], context[ 1 ] ) )
+      return false;
+
+    Text line = (Text) context[ 1 ];
+    int[] starts = (int[]) context[ 2 ];
+    int[] ends = (int[]) context[ 3 ];
+    Type[] types = (Type[]) context[ 4 ];
+    byte[] bytes = line.getBytes();
+    split( bytes, line.getLength(), (byte[]) context[ 5 ], starts, ends );
+
+    Tuple tuple = sourceCall.getIncomingEntry().getTuple();
+    for( int index = 0; index < readColumns.length; index++ )
+      {
+      int start = starts[ readColumns[ index ] ];
+      int end = ends[ readColumns[ index ] ];
+      if( start < 0 || isNull( bytes, start, end ) )
+        {
+        tuple.set( index, null );
+        }
+      else if( escape != null && indexOf( bytes, start, end, (byte) escape.charValue() ) >= 0 )
+        {
+        byte[] buffer = (byte[]) context[ 6 ];
+        if( buffer.length < end - start )
+          {
+          buffer = new byte[ Math.max( end - start, 2 * buffer.length ) ];
+          context[ 6 ] = buffer;
+          }
+        int length = unescape( bytes, start, end, buffer );
+        tuple.set( index, HiveTextParser.parse( buffer, 0, length, types[ index ] ) );
+        }
+      else
+        {
+        tuple.set( index, HiveTextParser.parse( bytes, start, end, types[ index ] ) );
+        }
+      }
+    return true;
+    }
+
+  @Override
+  public void sourceCleanup( FlowProcess<? extends Configuration> flowProcess, SourceCall<Object[], RecordReader> sourceCall ) throws IOException
+    {
+    sourceCall.setContext( null );
+    }
+
+  @Override
+  public void sinkPrepare( FlowProcess<? extends Configuration> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    sinkCall.setContext( new Object[]{new HiveTextWriter( delimiter, escape ), new Text()} );
+    }
+
+  @Override
+  public void sink( FlowProcess<? extends Configuration> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    Object[] context = sinkCall.getContext();
+    HiveTextWriter writer = (HiveTextWriter) context[ 0 ];
+    Text text = (Text) context[ 1 ];
+
+    writer.reset();
+    TupleEntry entry = sinkCall.getOutgoingEntry();
+    for( int index = 0; index < entry.size(); index++ )
+      writer.append( entry.getObject( index ) );
+
+    writer.writeTo( text );
+    sinkCall.getOutput().collect( null, text );
+    }
+
+  @Override
+  public void sinkCleanup( FlowProcess<? extends Configuration> flowProcess, SinkCall<Object[], OutputCollector> sinkCall ) throws IOException
+    {
+    sinkCall.setContext( null );
+    }
+
+  /**
+   * Splits the given line into the offsets of the columns up to the last read column. The start offset of missing
+   * trailing columns is -1.
+   */
+  private void split( byte[] bytes, int length, byte[] delimiter, int[] starts, int[] ends )
+    {
+    int start = 0;
+    for( int column = 0; column < starts.length; column++ )
+      {
+      if( start > length )
+        {
+        starts[ column ] = -1;
+        continue;
+        }
+
+      int end = indexOfDelimiter( bytes, length, delimiter, start );
+      starts[ column ] = start;
+      ends[ column ] = end;
+      start = end + delimiter.length;
+      }
+    }
+
+  /**
+   * Returns the offset of the next unescaped delimiter at or after start or length, if there is none.
+   */
+  private int indexOfDelimiter( byte[] bytes, int length, byte[] delimiter, int start )
+    {
+    if( escape == null && delimiter.length == 1 )
+      {
+      int index = indexOf( bytes, start, length, delimiter[ 0 ] );
+      return index < 0 ? length : index;
+      }
+
+    byte first = delimiter[ 0 ];
+    int last = length - delimiter.length;
+    for( int index = start; index <= last; index++ )
+      {
+      if( escape != null && bytes[ index ] == escape )
+        {
+        index++;
+        continue;
+        }
+      if( bytes[ index ] != first )
+        continue;
+
+      int matched = 1;
+      while( matched < delimiter.length && bytes[ index + matched ] == delimiter[ matched ] )
+        matched++;
+      if( matched == delimiter.length )
+        return index;
+      }
+    return length;
+    }
+
+  /**
+   * Copies the bytes between start and end into the given buffer, dropping escape characters like the LazySimpleSerDe
+   * does, and returns the number of copied bytes.
+   */
+  private int unescape( byte[] bytes, int start, int end, byte[] buffer )
+    {
+    int length = 0;
+    for( int index = start; index < end; index++ )
+      {
+      if( bytes[ index ] == escape && index < end - 1 )
+        index++;
+      buffer[ length++ ] = bytes[ index ];
+      }
+    return length;
+    }
+
+  private static int indexOf( byte[] bytes, int start, int end, byte value )
+    {
+    for( int index = start; index < end; index++ )
+      {
+      if( bytes[ index ] == value )
+        return index;
+      }
+    return -1;
+    }
+
+  private static boolean isNull( byte[] bytes, int start, int end )
+    {
+    if( end - start != NULL_BYTES.length )
+      return false;
+
+    for( int index = 0; index < NULL_BYTES.length; index++ )
+      {
+      if( bytes[ start + index ] != NULL_BYTES[ index ] )
+        return false;
+      }
+    return true;
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( this == object )
+      return true;
+    if( !( object instanceof HiveTextScheme ) || !super.equals( object ) )
+      return false;
+
+    HiveTextScheme that = (HiveTextScheme) object;
+    return delimiter.equals( that.delimiter ) && ( escape != null ? escape.equals( that.escape ) : that.escape == null );
+    }
+
+  @Override
+  public int hashCode()
+    {
+    int result = 31 * super.hashCode() + delimiter.hashCode();
+    return 31 * result + ( escape != null ? escape.hashCode() : 0 );
+    }
+  }
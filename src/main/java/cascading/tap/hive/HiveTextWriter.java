@@ -0,0 +1,198 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.hadoop.io.Text;
+
+/**
+ * HiveTextWriter encodes the values of a row into a reusable byte buffer in the layout of Hive's text format. Integral
+ * numbers, booleans and Strings are encoded directly into the buffer without creating intermediate Strings. Null values
+ * are written as <code>\N</code> and binary values are base64 encoded, like the LazySimpleSerDe does. If an escape
+ * character is given, occurrences of the delimiter and the escape character in values are escaped.
+ * <p/>
+ * Instances are not thread safe.
+ */
+final class HiveTextWriter
+  {
+  /** the UTF-8 bytes of the representation of null values */
+  private static final byte[] NULL_BYTES = HiveTextScheme.NULL.getBytes( Charset.forName( "UTF-8" ) );
+
+  private static final byte[] TRUE_BYTES = "true".getBytes( Charset.forName( "UTF-8" ) );
+
+  private static final byte[] FALSE_BYTES = "false".getBytes( Charset.forName( "UTF-8" ) );
+
+  /** the UTF-8 bytes of the delimiter */
+  private final byte[] delimiter;
+
+  /** the escape character or -1 */
+  private final int escape;
+
+  /** the buffer holding the current row */
+  private byte[] buffer = new byte[ 256 ];
+
+  /** the number of bytes of the current row */
+  private int length;
+
+  /** number of values of the current row */
+  private int values;
+
+  /**
+   * Constructs a new HiveTextWriter.
+   *
+   * @param delimiter The field delimiter.
+   * @param escape    The ASCII escape character or null.
+   */
+  HiveTextWriter( String delimiter, Character escape )
+    {
+    this.delimiter = delimiter.getBytes( Charset.forName( "UTF-8" ) );
+    this.escape = escape == null ? -1 : escape;
+    }
+
+  /**
+   * Starts a new row.
+   */
+  void reset()
+    {
+    length = 0;
+    values = 0;
+    }
+
+  /**
+   * Appends the given value to the current row, preceded by the delimiter, if it is not the first value.
+   *
+   * @param value The value to append, can be null.
+   */
+  void append( Object value )
+    {
+    if( values++ > 0 )
+      appendBytes( delimiter );
+
+    if( value == null )
+      appendBytes( NULL_BYTES );
+    else if( value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte )
+      appendLong( ( (Number) value ).longValue() );
+    else if( value instanceof Boolean )
+      appendBytes( (Boolean) value ? TRUE_BYTES : FALSE_BYTES );
+    else if( value instanceof byte[] )
+      appendBytes( Base64.encodeBase64( (byte[]) value ) );
+    else if( value instanceof BigDecimal )
+      appendString( ( (BigDecimal) value ).toPlainString() );
+    else
+      appendString( value.toString() );
+    }
+
+  /**
+   * Sets the bytes of the current row as the content of the given Text.
+   *
+   * @param text The Text to write to.
+   */
+  void writeTo( Text text )
+    {
+    text.set( buffer, 0, length );
+    }
+
+  private void appendLong( long value )
+    {
+    ensureCapacity( 20 );
+    if( value < 0 )
+      buffer[ length++ ] = '-';
+    else
+      value = -value;
+
+    // write the digits of the negated value backwards, so that the minimum value does not overflow
+    int start = length;
+    do
+      {
+      buffer[ length++ ] = (byte) ( '0' - value % 10 );
+      value /= 10;
+      }
+    while( value != 0 );
+
+    for( int left = start, right = length - 1; left < right; left++, right-- )
+      {
+      byte swap = buffer[ left ];
+      buffer[ left ] = buffer[ right ];
+      buffer[ right ] = swap;
+      }
+    }
+
+  private void appendString( String value )
+    {
+    // no char takes more than 4 bytes, including escaped ones
+    ensureCapacity( 4 * value.length() );
+    for( int index = 0; index < value.length(); index++ )
+      {
+      char current = value.charAt( index );
+      if( current < 0x80 )
+        {
+        if( current == escape || ( current == delimiter[ 0 ] && escape >= 0 ) )
+          buffer[ length++ ] = (byte) escape;
+        buffer[ length++ ] = (byte) current;
+        }
+      else if( current < 0x800 )
+        {
+        buffer[ length++ ] = (byte) ( 0xc0 | current >> 6 );
+        buffer[ length++ ] = (byte) ( 0x80 | current & 0x3f );
+        }
+      else if( Character.isHighSurrogate( current ) && index + 1 < value.length()
+        && Character.isLowSurrogate( value.charAt( index + 1 ) ) )
+        {
+        int codePoint = Character.toCodePoint( current, value.charAt( ++index ) );
+        buffer[ length++ ] = (byte) ( 0xf0 | codePoint >> 18 );
+        buffer[ length++ ] = (byte) ( 0x80 | codePoint >> 12 & 0x3f );
+        buffer[ length++ ] = (byte) ( 0x80 | codePoint >> 6 & 0x3f );
+        buffer[ length++ ] = (byte) ( 0x80 | codePoint & 0x3f );
+        }
+      else if( Character.isSurrogate( current ) )
+        {
+        // unpaired surrogates are replaced, like String.getBytes() does
+        buffer[ length++ ] = '?';
+        }
+      else
+        {
+        buffer[ length++ ] = (byte) ( 0xe0 | current >> 12 );
+        buffer[ length++ ] = (byte) ( 0x80 | current >> 6 & 0x3f );
+        buffer[ length++ ] = (byte) ( 0x80 | current & 0x3f );
+        }
+      }
+    }
+
+  private void appendBytes( byte[] bytes )
+    {
+    ensureCapacity( bytes.length );
+    System.arraycopy( bytes, 0, buffer, length, bytes.length );
+    length += bytes.length;
+    }
+
+  private void ensureCapacity( int additional )
+    {
+    if( length + additional <= buffer.length )
+      return;
+
+    byte[] grown = new byte[ Math.max( length + additional, 2 * buffer.length ) ];
+    System.arraycopy( buffer, 0, grown, 0, length );
+    buffer = grown;
+    }
+  }
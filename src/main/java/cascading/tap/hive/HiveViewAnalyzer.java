@@ -45,6 +45,9 @@ import org.slf4j.LoggerFactory;
  * The HiveViewAnalyzer can take a query representing a Hive view and find the underlying tables on HDFS. This works in a
  * recursive way so that views, based on views, based on views etc. can be deconstructed into the participating tables.
  * This is useful when running a query on a view, which is meant to participate in a Cascade.
+ * <p/>
+ * The views are compiled by Hive's Driver, which talks to the MetaStore on its own. These calls are not recorded by
+ * {@link MetaStoreMetrics}.
  */
 public class HiveViewAnalyzer implements Closeable
   {
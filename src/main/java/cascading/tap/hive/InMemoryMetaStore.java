@@ -0,0 +1,686 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.MetaStoreUtils;
+import org.apache.hadoop.hive.metastore.Warehouse;
+import org.apache.hadoop.hive.metastore.api.AlreadyExistsException;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.InvalidObjectException;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.hadoop.hive.metastore.api.UnknownDBException;
+import org.apache.hadoop.hive.metastore.parser.ExpressionTree;
+import org.apache.hadoop.hive.metastore.parser.FilterLexer;
+import org.apache.hadoop.hive.metastore.parser.FilterParser;
+
+/**
+ * InMemoryMetaStore is a Hive MetaStore, which lives entirely in memory. It is meant for testing and benchmarking
+ * HiveTap and HivePartitionTap without Derby or a Thrift server. HiveTap uses an InMemoryMetaStore, if
+ * <code>hive.metastore.uris</code> is set to <code>memory://&lt;name&gt;</code>; all clients using the same name share
+ * the same store within the JVM.
+ * <p/>
+ * The store supports databases, tables and partitions including the batch calls used by this project. Each call can be
+ * slowed down by an artificial latency and can fail randomly with a MetaException to simulate a remote MetaStore under
+ * load. The store counts all calls per operation, so that tests can assert on the number of round trips.
+ */
+public class InMemoryMetaStore
+  {
+  /** scheme of MetaStore URIs pointing to an InMemoryMetaStore */
+  public static final String URI_SCHEME = "memory://";
+
+  /** property for the artificial latency in milliseconds added to each call */
+  public static final String LATENCY = "cascading.hive.metastore.memory.latency";
+
+  /** property for the rate (0.0 - 1.0) of calls failing with a MetaException */
+  public static final String FAILURE_RATE = "cascading.hive.metastore.memory.failure.rate";
+
+  /** stores by name */
+  private static final ConcurrentMap<String, InMemoryMetaStore> STORES = new ConcurrentHashMap<String, InMemoryMetaStore>();
+
+  /** databases by name */
+  private final Map<String, Database> databases = new LinkedHashMap<String, Database>();
+
+  /** tables by qualified name */
+  private final Map<String, Table> tables = new LinkedHashMap<String, Table>();
+
+  /** partitions by qualified table name and partition name */
+  private final Map<String, Map<String, Partition>> partitions = new HashMap<String, Map<String, Partition>>();
+
+  /** number of calls per operation */
+  private final ConcurrentMap<String, AtomicLong> calls = new ConcurrentHashMap<String, AtomicLong>();
+
+  /** source of the injected failures */
+  private final Random random = new Random();
+
+  /** the name of the store */
+  private final String name;
+
+  /**
+   * Returns the InMemoryMetaStore with the given name, creating it if necessary.
+   *
+   * @param name The name of the store.
+   * @return an InMemoryMetaStore.
+   */
+  public static InMemoryMetaStore getInstance( String name )
+    {
+    InMemoryMetaStore store = STORES.get( name );
+    if( store == null )
+      {
+      store = new InMemoryMetaStore( name );
+      InMemoryMetaStore existing = STORES.putIfAbsent( name, store );
+      if( existing != null )
+        store = existing;
+      }
+    return store;
+    }
+
+  /**
+   * Returns true, if the given MetaStore URIs point to an InMemoryMetaStore.
+   *
+   * @param uris The value of <code>hive.metastore.uris</code>.
+   * @return true, if an InMemoryMetaStore is configured.
+   */
+  public static boolean isInMemory( String uris )
+    {
+    return uris != null && uris.trim().startsWith( URI_SCHEME );
+    }
+
+  /**
+   * Removes the store with the given name, so that the next call to {@link #getInstance(String)} returns an empty one.
+   *
+   * @param name The name of the store.
+   */
+  public static void remove( String name )
+    {
+    STORES.remove( name );
+    }
+
+  InMemoryMetaStore( String name )
+    {
+    this.name = name;
+    }
+
+  /**
+   * Creates a new client for the store configured in the given HiveConf.
+   *
+   * @param hiveConf The HiveConf with <code>hive.metastore.uris</code> pointing to an InMemoryMetaStore.
+   * @return a new IMetaStoreClient.
+   */
+  public static IMetaStoreClient createClient( HiveConf hiveConf )
+    {
+    String uris = hiveConf.getVar( ConfVars.METASTOREURIS ).trim();
+    return getInstance( uris.substring( URI_SCHEME.length() ) ).createClient( hiveConf.getVar( ConfVars.METASTOREWAREHOUSE ),
+      hiveConf.getLong( LATENCY, 0 ), hiveConf.getFloat( FAILURE_RATE, 0f ) );
+    }
+
+  /**
+   * MetaStoreClientFactory creating clients of InMemoryMetaStores. The MetaStoreClientPool uses it by default for
+   * <code>memory://</code> URIs.
+   */
+  public static class ClientFactory implements MetaStoreClientFactory
+    {
+    @Override
+    public IMetaStoreClient createClient( HiveConf hiveConf )
+      {
+      return InMemoryMetaStore.createClient( hiveConf );
+      }
+    }
+
+  /**
+   * Creates a new client for this store.
+   *
+   * @param warehouse   The warehouse directory, used for the location of the default database.
+   * @param latency     The artificial latency of each call in milliseconds.
+   * @param failureRate The rate of calls failing with a MetaException.
+   * @return a new IMetaStoreClient.
+   */
+  public IMetaStoreClient createClient( String warehouse, final long latency, final float failureRate )
+    {
+    final Operations operations = new Operations( warehouse );
+    return (IMetaStoreClient) Proxy.newProxyInstance( IMetaStoreClient.class.getClassLoader(),
+      new Class[]{IMetaStoreClient.class}, new InvocationHandler()
+      {
+      @Override
+      public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+        {
+        if( method.getName().equals( "close" ) || method.getName().equals( "reconnect" ) )
+          return null;
+        if( method.getName().equals( "isCompatibleWith" ) )
+          return true;
+
+        Method operation;
+        try
+          {
+          operation = Operations.class.getMethod( method.getName(), method.getParameterTypes() );
+          }
+        catch( NoSuchMethodException exception )
+          {
+          throw new UnsupportedOperationException( "InMemoryMetaStore does not support " + method.getName() );
+          }
+
+        countCall( method.getName() );
+        if( latency > 0 )
+          Thread.sleep( latency );
+        if( failureRate > 0 && nextFloat() < failureRate )
+          throw new MetaException( "injected failure of " + method.getName() );
+
+        try
+          {
+          synchronized( InMemoryMetaStore.this )
+            {
+            return operation.invoke( operations, args );
+            }
+          }
+        catch( InvocationTargetException exception )
+          {
+          throw exception.getCause();
+          }
+        }
+      } );
+    }
+
+  /**
+   * Returns the number of calls made to the given operation.
+   *
+   * @param operation The name of the operation, e.g. <code>getTable</code>.
+   * @return the number of calls.
+   */
+  public long getCallCount( String operation )
+    {
+    AtomicLong count = calls.get( operation );
+    return count == null ? 0 : count.get();
+    }
+
+  /**
+   * Returns the total number of calls made to the store.
+   *
+   * @return the number of calls.
+   */
+  public long getCallCount()
+    {
+    long total = 0;
+    for( AtomicLong count : calls.values() )
+      total += count.get();
+    return total;
+    }
+
+  /**
+   * Returns the number of calls per operation.
+   *
+   * @return a Map of operation name to number of calls.
+   */
+  public Map<String, Long> getCallCounts()
+    {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for( Map.Entry<String, AtomicLong> entry : calls.entrySet() )
+      result.put( entry.getKey(), entry.getValue().get() );
+    return result;
+    }
+
+  /**
+   * Resets all call counts.
+   */
+  public void resetCallCounts()
+    {
+    calls.clear();
+    }
+
+  public String getName()
+    {
+    return name;
+    }
+
+  private void countCall( String operation )
+    {
+    AtomicLong count = calls.get( operation );
+    if( count == null )
+      {
+      count = new AtomicLong();
+      AtomicLong existing = calls.putIfAbsent( operation, count );
+      if( existing != null )
+        count = existing;
+      }
+    count.incrementAndGet();
+    }
+
+  private synchronized float nextFloat()
+    {
+    return random.nextFloat();
+    }
+
+  private static String qualify( String databaseName, String tableName )
+    {
+    return databaseName.toLowerCase() + "." + tableName.toLowerCase();
+    }
+
+  /**
+   * The operations supported by the store. The methods have the same signatures as the ones in IMetaStoreClient and
+   * are called with the lock of the store held.
+   */
+  class Operations
+    {
+    private final String warehouse;
+
+    Operations( String warehouse )
+      {
+      this.warehouse = warehouse;
+      }
+
+    public Database getDatabase( String databaseName ) throws NoSuchObjectException
+      {
+      Database database = databases.get( databaseName.toLowerCase() );
+      if( database == null && databaseName.equalsIgnoreCase( MetaStoreUtils.DEFAULT_DATABASE_NAME ) )
+        {
+        database = new Database( MetaStoreUtils.DEFAULT_DATABASE_NAME, "default database", warehouse, null );
+        databases.put( MetaStoreUtils.DEFAULT_DATABASE_NAME, database );
+        }
+      if( database == null )
+        throw new NoSuchObjectException( databaseName + " not found" );
+      return database.deepCopy();
+      }
+
+    public void createDatabase( Database database ) throws AlreadyExistsException
+      {
+      String databaseName = database.getName().toLowerCase();
+      if( databases.containsKey( databaseName ) )
+        throw new AlreadyExistsException( "Database " + databaseName + " already exists" );
+      Database copy = database.deepCopy();
+      copy.setName( databaseName );
+      databases.put( databaseName, copy );
+      }
+
+    public void dropDatabase( String databaseName ) throws NoSuchObjectException
+      {
+      getDatabase( databaseName );
+      databases.remove( databaseName.toLowerCase() );
+      }
+
+    public List<String> getAllDatabases() throws NoSuchObjectException
+      {
+      getDatabase( MetaStoreUtils.DEFAULT_DATABASE_NAME );
+      return new ArrayList<String>( databases.keySet() );
+      }
+
+    public List<String> getDatabases( String pattern ) throws NoSuchObjectException
+      {
+      List<String> result = new ArrayList<String>();
+      for( String databaseName : getAllDatabases() )
+        if( databaseName.matches( pattern.replace( "*", ".*" ) ) )
+          result.add( databaseName );
+      return result;
+      }
+
+    public Table getTable( String databaseName, String tableName ) throws NoSuchObjectException
+      {
+      Table table = tables.get( qualify( databaseName, tableName ) );
+      if( table == null )
+        throw new NoSuchObjectException( qualify( databaseName, tableName ) + " table not found" );
+      return table.deepCopy();
+      }
+
+    public boolean tableExists( String databaseName, String tableName )
+      {
+      return tables.containsKey( qualify( databaseName, tableName ) );
+      }
+
+    public List<Table> getTableObjectsByName( String databaseName, List<String> tableNames ) throws UnknownDBException
+      {
+      if( !databases.containsKey( databaseName.toLowerCase() ) && !databaseName.equalsIgnoreCase( MetaStoreUtils.DEFAULT_DATABASE_NAME ) )
+        throw new UnknownDBException( "Could not find database " + databaseName );
+
+      List<Table> result = new ArrayList<Table>();
+      for( String tableName : tableNames )
+        {
+        Table table = tables.get( qualify( databaseName, tableName ) );
+        if( table != null )
+          result.add( table.deepCopy() );
+        }
+      return result;
+      }
+
+    public List<String> getAllTables( String databaseName )
+      {
+      List<String> result = new ArrayList<String>();
+      for( Table table : tables.values() )
+        if( table.getDbName().equalsIgnoreCase( databaseName ) )
+          result.add( table.getTableName() );
+      return result;
+      }
+
+    public void createTable( Table table ) throws AlreadyExistsException, InvalidObjectException, NoSuchObjectException
+      {
+      String qualifiedName = qualify( table.getDbName(), table.getTableName() );
+      if( tables.containsKey( qualifiedName ) )
+        throw new AlreadyExistsException( "Table " + qualifiedName + " already exists" );
+
+      Database database;
+      try
+        {
+        database = getDatabase( table.getDbName() );
+        }
+      catch( NoSuchObjectException exception )
+        {
+        throw new InvalidObjectException( "database " + table.getDbName() + " does not exist" );
+        }
+
+      Table copy = table.deepCopy();
+      copy.setDbName( table.getDbName().toLowerCase() );
+      copy.setTableName( table.getTableName().toLowerCase() );
+      if( copy.getSd().getLocation() == null )
+        copy.getSd().setLocation( database.getLocationUri() + "/" + copy.getTableName() );
+      int now = (int) ( System.currentTimeMillis() / 1000 );
+      copy.setCreateTime( now );
+      copy.putToParameters( "transient_lastDdlTime", String.valueOf( now ) );
+      tables.put( qualifiedName, copy );
+      partitions.put( qualifiedName, new LinkedHashMap<String, Partition>() );
+      }
+
+    public void alter_table( String databaseName, String tableName, Table table ) throws NoSuchObjectException
+      {
+      String qualifiedName = qualify( databaseName, tableName );
+      getTable( databaseName, tableName );
+      Table copy = table.deepCopy();
+      copy.putToParameters( "transient_lastDdlTime", String.valueOf( System.currentTimeMillis() / 1000 ) );
+      tables.put( qualifiedName, copy );
+      }
+
+    public void dropTable( String databaseName, String tableName ) throws NoSuchObjectException
+      {
+      dropTable( databaseName, tableName, true, false );
+      }
+
+    public void dropTable( String databaseName, String tableName, boolean deleteData, boolean ignoreUnknownTable )
+      throws NoSuchObjectException
+      {
+      String qualifiedName = qualify( databaseName, tableName );
+      if( tables.remove( qualifiedName ) == null && !ignoreUnknownTable )
+        throw new NoSuchObjectException( qualifiedName + " table not found" );
+      partitions.remove( qualifiedName );
+      }
+
+    public Partition add_partition( Partition partition ) throws InvalidObjectException, AlreadyExistsException, MetaException
+      {
+      List<Partition> added = add_partitions( Collections.singletonList( partition ), false, true );
+      return added.get( 0 );
+      }
+
+    public int add_partitions( List<Partition> newPartitions ) throws InvalidObjectException, AlreadyExistsException, MetaException
+      {
+      return add_partitions( newPartitions, false, true ).size();
+      }
+
+    public List<Partition> add_partitions( List<Partition> newPartitions, boolean ifNotExists, boolean needResults )
+      throws InvalidObjectException, AlreadyExistsException, MetaException
+      {
+      Map<String, Partition> toAdd = new LinkedHashMap<String, Partition>();
+      for( Partition partition : newPartitions )
+        {
+        String qualifiedName = qualify( partition.getDbName(), partition.getTableName() );
+        Table table = tables.get( qualifiedName );
+        if( table == null )
+          throw new InvalidObjectException( "Unable to add partition because table or database do not exist" );
+
+        String partitionName = Warehouse.makePartName( table.getPartitionKeys(), partition.getValues() );
+        String key = qualifiedName + "/" + partitionName;
+        if( partitions.get( qualifiedName ).containsKey( partitionName ) || toAdd.containsKey( key ) )
+          {
+          if( ifNotExists )
+            continue;
+          throw new AlreadyExistsException( "Partition already exists: " + partitionName );
+          }
+
+        Partition copy = partition.deepCopy();
+        copy.setDbName( table.getDbName() );
+        copy.setTableName( table.getTableName() );
+        if( copy.getSd() == null )
+          {
+          copy.setSd( table.getSd().deepCopy() );
+          copy.getSd().setLocation( null );
+          }
+        if( copy.getSd().getLocation() == null )
+          copy.getSd().setLocation( table.getSd().getLocation() + "/" + partitionName );
+        copy.putToParameters( "transient_lastDdlTime", String.valueOf( System.currentTimeMillis() / 1000 ) );
+        toAdd.put( key, copy );
+        }
+
+      List<Partition> added = new ArrayList<Partition>();
+      for( Map.Entry<String, Partition> entry : toAdd.entrySet() )
+        {
+        String key = entry.getKey();
+        int separator = key.indexOf( '/' );
+        partitions.get( key.substring( 0, separator ) ).put( key.substring( separator + 1 ), entry.getValue() );
+        added.add( entry.getValue().deepCopy() );
+        }
+      return needResults ? added : null;
+      }
+
+    public Partition getPartition( String databaseName, String tableName, List<String> values )
+      throws NoSuchObjectException, MetaException
+      {
+      Table table = getTable( databaseName, tableName );
+      Partition partition = partitions.get( qualify( databaseName, tableName ) )
+        .get( Warehouse.makePartName( table.getPartitionKeys(), values ) );
+      if( partition == null )
+        throw new NoSuchObjectException( "partition values=" + values );
+      return partition.deepCopy();
+      }
+
+    public List<Partition> getPartitionsByNames( String databaseName, String tableName, List<String> partitionNames )
+      throws NoSuchObjectException
+      {
+      getTable( databaseName, tableName );
+      Map<String, Partition> tablePartitions = partitions.get( qualify( databaseName, tableName ) );
+      List<Partition> result = new ArrayList<Partition>();
+      for( String partitionName : partitionNames )
+        {
+        Partition partition = tablePartitions.get( partitionName );
+        if( partition != null )
+          result.add( partition.deepCopy() );
+        }
+      return result;
+      }
+
+    public List<Partition> listPartitions( String databaseName, String tableName, short max ) throws NoSuchObjectException
+      {
+      getTable( databaseName, tableName );
+      List<Partition> result = new ArrayList<Partition>();
+      for( Partition partition : partitions.get( qualify( databaseName, tableName ) ).values() )
+        {
+        if( max >= 0 && result.size() >= max )
+          break;
+        result.add( partition.deepCopy() );
+        }
+      return result;
+      }
+
+    public List<Partition> listPartitions( String databaseName, String tableName, List<String> values, short max )
+      throws NoSuchObjectException
+      {
+      List<Partition> result = new ArrayList<Partition>();
+      for( Partition partition : listPartitions( databaseName, tableName, (short) -1 ) )
+        {
+        if( max >= 0 && result.size() >= max )
+          break;
+        if( matchesPrefix( partition.getValues(), values ) )
+          result.add( partition );
+        }
+      return result;
+      }
+
+    public List<Partition> listPartitionsByFilter( String databaseName, String tableName, String filter, short max )
+      throws NoSuchObjectException, MetaException
+      {
+      Table table = getTable( databaseName, tableName );
+      ExpressionTree.TreeNode root = parseFilter( filter );
+      List<Partition> result = new ArrayList<Partition>();
+      for( Partition partition : partitions.get( qualify( databaseName, tableName ) ).values() )
+        {
+        if( max >= 0 && result.size() >= max )
+          break;
+        if( root == null || matches( root, table.getPartitionKeys(), partition.getValues() ) )
+          result.add( partition.deepCopy() );
+        }
+      return result;
+      }
+
+    public List<String> listPartitionNames( String databaseName, String tableName, short max ) throws NoSuchObjectException
+      {
+      getTable( databaseName, tableName );
+      List<String> result = new ArrayList<String>();
+      for( String partitionName : partitions.get( qualify( databaseName, tableName ) ).keySet() )
+        {
+        if( max >= 0 && result.size() >= max )
+          break;
+        result.add( partitionName );
+        }
+      return result;
+      }
+
+    public boolean dropPartition( String databaseName, String tableName, List<String> values, boolean deleteData )
+      throws NoSuchObjectException, MetaException
+      {
+      Table table = getTable( databaseName, tableName );
+      Partition removed = partitions.get( qualify( databaseName, tableName ) )
+        .remove( Warehouse.makePartName( table.getPartitionKeys(), values ) );
+      if( removed == null )
+        throw new NoSuchObjectException( "partition values=" + values );
+      return true;
+      }
+
+    private ExpressionTree.TreeNode parseFilter( String filter ) throws MetaException
+      {
+      if( filter == null || filter.trim().isEmpty() )
+        return null;
+
+      FilterLexer lexer = new FilterLexer( new ExpressionTree.ANTLRNoCaseStringStream( filter ) );
+      FilterParser parser = new FilterParser( new CommonTokenStream( lexer ) );
+      try
+        {
+        parser.filter();
+        }
+      catch( RecognitionException exception )
+        {
+        throw new MetaException( "Error parsing partition filter " + filter + ": " + exception );
+        }
+      if( lexer.errorMsg != null )
+        throw new MetaException( "Error parsing partition filter " + filter + ": " + lexer.errorMsg );
+      return parser.tree.getRoot();
+      }
+
+    private boolean matches( ExpressionTree.TreeNode node, List<FieldSchema> partitionKeys, List<String> values )
+      throws MetaException
+      {
+      if( !( node instanceof ExpressionTree.LeafNode ) )
+        {
+        boolean lhs = matches( node.getLhs(), partitionKeys, values );
+        if( node.getAndOr() == ExpressionTree.LogicalOperator.AND )
+          return lhs && matches( node.getRhs(), partitionKeys, values );
+        return lhs || matches( node.getRhs(), partitionKeys, values );
+        }
+
+      ExpressionTree.LeafNode leaf = (ExpressionTree.LeafNode) node;
+      int index = 0;
+      while( index < partitionKeys.size() && !partitionKeys.get( index ).getName().equalsIgnoreCase( leaf.keyName ) )
+        index++;
+      if( index == partitionKeys.size() )
+        throw new MetaException( leaf.keyName + " is not a partitioning key for the table" );
+
+      String value = values.get( index );
+      if( leaf.operator == ExpressionTree.Operator.LIKE )
+        return value.matches( leaf.value.toString() );
+
+      int comparison = compare( value, leaf.value );
+      if( leaf.isReverseOrder )
+        comparison = -comparison;
+
+      switch( leaf.operator )
+        {
+        case EQUALS:
+          return comparison == 0;
+        case NOTEQUALS:
+        case NOTEQUALS2:
+          return comparison != 0;
+        case LESSTHAN:
+          return comparison < 0;
+        case LESSTHANOREQUALTO:
+          return comparison <= 0;
+        case GREATERTHAN:
+          return comparison > 0;
+        case GREATERTHANOREQUALTO:
+          return comparison >= 0;
+        default:
+          throw new MetaException( "unsupported operator " + leaf.operator );
+        }
+      }
+
+    private int compare( String value, Object filterValue )
+      {
+      if( filterValue instanceof Long )
+        {
+        try
+          {
+          return Long.valueOf( value ).compareTo( (Long) filterValue );
+          }
+        catch( NumberFormatException exception )
+          {
+          // fall through to string comparison
+          }
+        }
+      return value.compareTo( filterValue.toString() );
+      }
+
+    private boolean matchesPrefix( List<String> values, List<String> prefix )
+      {
+      for( int index = 0; index < prefix.size() && index < values.size(); index++ )
+        {
+        String expected = prefix.get( index );
+        if( expected != null && !expected.isEmpty() && !expected.equals( values.get( index ) ) )
+          return false;
+        }
+      return true;
+      }
+    }
+  }
@@ -0,0 +1,42 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+
+/**
+ * Factory for the clients of a MetaStore, which is not reached via Thrift, e.g. the {@link InMemoryMetaStore}.
+ * Implementations are configured via {@link MetaStoreClientPool#CLIENT_FACTORY} and must have a public no-arg
+ * constructor. The clients are pooled and instrumented like Thrift clients.
+ */
+public interface MetaStoreClientFactory
+  {
+  /**
+   * Creates a new client for the MetaStore described by the given HiveConf.
+   *
+   * @param hiveConf The HiveConf describing the MetaStore.
+   * @return a new IMetaStoreClient.
+   * @throws MetaException in case the client cannot be created.
+   */
+  IMetaStoreClient createClient( HiveConf hiveConf ) throws MetaException;
+  }
@@ -0,0 +1,428 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import cascading.CascadingException;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.metastore.HiveMetaHook;
+import org.apache.hadoop.hive.metastore.HiveMetaHookLoader;
+import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.RetryingMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MetaStoreClientPool is a JVM wide pool of IMetaStoreClient instances, keyed by the MetaStore they are connected to.
+ * Clients handed out by the pool are returned to it, when their <code>close()</code> method is called, so that callers
+ * can keep using the usual create/try/finally/close pattern. Idle clients are evicted after a configurable timeout and
+ * are checked for health before being handed out again, if they have been idle for a while.
+ */
+public class MetaStoreClientPool
+  {
+  /** Field LOG */
+  private static final Logger LOG = LoggerFactory.getLogger( MetaStoreClientPool.class );
+
+  /** property for the maximum number of idle clients kept per MetaStore */
+  public static final String POOL_MAX_IDLE = "cascading.hive.metastore.pool.max.idle";
+
+  /** property for the time in milliseconds after which idle clients are evicted */
+  public static final String POOL_IDLE_TIMEOUT = "cascading.hive.metastore.pool.idle.timeout";
+
+  /** property for the idle time in milliseconds after which a client is checked for health before being re-used */
+  public static final String POOL_VALIDATION_INTERVAL = "cascading.hive.metastore.pool.validation.interval";
+
+  /**
+   * property for the class name of a MetaStoreClientFactory creating the clients instead of Hive's Thrift client. If it
+   * is not set, clients for <code>memory://</code> URIs are created by the {@link InMemoryMetaStore}.
+   */
+  public static final String CLIENT_FACTORY = "cascading.hive.metastore.client.factory";
+
+  /** default maximum number of idle clients per MetaStore */
+  public static final int DEFAULT_MAX_IDLE = 4;
+
+  /** default idle timeout of 5 minutes */
+  public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000L;
+
+  /** default validation interval of 30 seconds */
+  public static final long DEFAULT_VALIDATION_INTERVAL = 30 * 1000L;
+
+  /** the JVM wide instance */
+  private static final MetaStoreClientPool INSTANCE = new MetaStoreClientPool();
+
+  /** configured client factories by class name */
+  private static final ConcurrentMap<String, MetaStoreClientFactory> CLIENT_FACTORIES = new ConcurrentHashMap<String, MetaStoreClientFactory>();
+
+  /** idle clients by MetaStore key, most recently used first */
+  private final ConcurrentMap<String, Deque<PooledClient>> idleClients = new ConcurrentHashMap<String, Deque<PooledClient>>();
+
+  /**
+   * Returns the JVM wide MetaStoreClientPool.
+   *
+   * @return the MetaStoreClientPool instance.
+   */
+  public static MetaStoreClientPool getInstance()
+    {
+    return INSTANCE;
+    }
+
+  MetaStoreClientPool()
+    {
+    }
+
+  /**
+   * Borrows a client connected to the MetaStore configured in the given HiveConf. The client is returned to the pool,
+   * when its <code>close()</code> method is called. Each client must only be used by one thread at a time. All calls
+   * made through the client are recorded by {@link MetaStoreMetrics}.
+   *
+   * @param hiveConf The HiveConf describing the MetaStore.
+   * @return an IMetaStoreClient.
+   * @throws MetaException in case a new client cannot be created.
+   */
+  IMetaStoreClient borrowClient( HiveConf hiveConf ) throws MetaException
+    {
+    String key = getMetaStoreKey( hiveConf );
+    long idleTimeout = hiveConf.getLong( POOL_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT );
+    long validationInterval = hiveConf.getLong( POOL_VALIDATION_INTERVAL, DEFAULT_VALIDATION_INTERVAL );
+
+    PooledClient pooled;
+    while( ( pooled = pollIdleClient( key, idleTimeout ) ) != null )
+      {
+      if( System.currentTimeMillis() - pooled.lastUsed < validationInterval || isHealthy( pooled ) )
+        break;
+
+      LOG.debug( "discarding unhealthy metastore client for '{}'", key );
+      closeQuietly( pooled );
+      }
+
+    if( pooled == null )
+      {
+      LOG.debug( "creating new metastore client for '{}'", key );
+      pooled = new PooledClient( createClient( hiveConf ) );
+      }
+
+    IMetaStoreClient client = (IMetaStoreClient) Proxy.newProxyInstance( IMetaStoreClient.class.getClassLoader(),
+      new Class[]{IMetaStoreClient.class}, new PooledClientHandler( key, pooled, hiveConf ) );
+    return MetaStoreMetrics.getInstance().instrument( client, hiveConf );
+    }
+
+  /**
+   * Closes all idle clients in the pool.
+   */
+  public void clear()
+    {
+    for( Deque<PooledClient> clients : idleClients.values() )
+      {
+      synchronized( clients )
+        {
+        for( PooledClient client : clients )
+          closeQuietly( client );
+        clients.clear();
+        }
+      }
+    }
+
+  /**
+   * Returns the number of idle clients in the pool for the MetaStore described by the given HiveConf.
+   *
+   * @param hiveConf The HiveConf describing the MetaStore.
+   * @return the number of idle clients.
+   */
+  int getIdleCount( HiveConf hiveConf )
+    {
+    Deque<PooledClient> clients = idleClients.get( getMetaStoreKey( hiveConf ) );
+    if( clients == null )
+      return 0;
+    synchronized( clients )
+      {
+      return clients.size();
+      }
+    }
+
+  /**
+   * Returns a client to the pool or closes it, if it is broken or the pool is full.
+   */
+  private void returnClient( String key, PooledClient pooled, boolean broken, int maxIdle, long idleTimeout )
+    {
+    if( broken )
+      {
+      LOG.debug( "discarding broken metastore client for '{}'", key );
+      closeQuietly( pooled );
+      return;
+      }
+
+    Deque<PooledClient> clients = getIdleClients( key );
+    boolean pooledAgain = false;
+    synchronized( clients )
+      {
+      evictExpired( clients, idleTimeout );
+      if( clients.size() < maxIdle )
+        {
+        pooled.lastUsed = System.currentTimeMillis();
+        clients.offerFirst( pooled );
+        pooledAgain = true;
+        }
+      }
+
+    if( !pooledAgain )
+      closeQuietly( pooled );
+    }
+
+  private PooledClient pollIdleClient( String key, long idleTimeout )
+    {
+    Deque<PooledClient> clients = getIdleClients( key );
+    synchronized( clients )
+      {
+      evictExpired( clients, idleTimeout );
+      return clients.pollFirst();
+      }
+    }
+
+  private Deque<PooledClient> getIdleClients( String key )
+    {
+    Deque<PooledClient> clients = idleClients.get( key );
+    if( clients == null )
+      {
+      clients = new ArrayDeque<PooledClient>();
+      Deque<PooledClient> existing = idleClients.putIfAbsent( key, clients );
+      if( existing != null )
+        clients = existing;
+      }
+    return clients;
+    }
+
+  /**
+   * Closes all clients at the tail of the deque, which have been idle longer than the given timeout. Must be called
+   * while holding the lock of the deque.
+   */
+  private void evictExpired( Deque<PooledClient> clients, long idleTimeout )
+    {
+    long now = System.currentTimeMillis();
+    Iterator<PooledClient> iterator = clients.descendingIterator();
+    while( iterator.hasNext() )
+      {
+      PooledClient client = iterator.next();
+      if( now - client.lastUsed < idleTimeout )
+        break;
+      iterator.remove();
+      closeQuietly( client );
+      }
+    }
+
+  private boolean isHealthy( PooledClient pooled )
+    {
+    try
+      {
+      pooled.client.getAllDatabases();
+      return true;
+      }
+    catch( Exception exception )
+      {
+      return false;
+      }
+    }
+
+  private void closeQuietly( PooledClient pooled )
+    {
+    try
+      {
+      pooled.client.close();
+      }
+    catch( Exception exception )
+      {
+      LOG.debug( "unable to close metastore client", exception );
+      }
+    }
+
+  /**
+   * Returns the key of the MetaStore described by the HiveConf. Remote MetaStores are identified by their URIs,
+   * embedded ones by their JDBC connection URL.
+   *
+   * @param hiveConf The HiveConf describing the MetaStore.
+   * @return the key of the MetaStore.
+   */
+  static String getMetaStoreKey( HiveConf hiveConf )
+    {
+    String uris = hiveConf.getVar( ConfVars.METASTOREURIS );
+    if( uris != null && !uris.trim().isEmpty() )
+      return uris.trim();
+    return "embedded:" + hiveConf.getVar( ConfVars.METASTORECONNECTURLKEY );
+    }
+
+  private static IMetaStoreClient createClient( HiveConf hiveConf ) throws MetaException
+    {
+    MetaStoreClientFactory factory = getClientFactory( hiveConf );
+    if( factory != null )
+      return factory.createClient( hiveConf );
+
+    return RetryingMetaStoreClient.getProxy( hiveConf,
+      new HiveMetaHookLoader()
+      {
+      @Override
+      public HiveMetaHook getHook( Table tbl ) throws MetaException
+        {
+        return null;
+        }
+      }, HiveMetaStoreClient.class.getName()
+    );
+    }
+
+  /**
+   * Returns the MetaStoreClientFactory configured in the given HiveConf or null, if Hive's Thrift client is to be used.
+   */
+  static MetaStoreClientFactory getClientFactory( HiveConf hiveConf )
+    {
+    String className = hiveConf.get( CLIENT_FACTORY );
+    if( className == null || className.isEmpty() )
+      {
+      if( !InMemoryMetaStore.isInMemory( hiveConf.getVar( ConfVars.METASTOREURIS ) ) )
+        return null;
+      className = InMemoryMetaStore.ClientFactory.class.getName();
+      }
+
+    MetaStoreClientFactory factory = CLIENT_FACTORIES.get( className );
+    if( factory == null )
+      {
+      try
+        {
+        factory = (MetaStoreClientFactory) Class.forName( className, true, Thread.currentThread().getContextClassLoader() ).newInstance();
+        }
+      catch( Exception exception )
+        {
+        throw new CascadingException( "unable to instantiate MetaStore client factory " + className, exception );
+        }
+      MetaStoreClientFactory existing = CLIENT_FACTORIES.putIfAbsent( className, factory );
+      if( existing != null )
+        factory = existing;
+      }
+    return factory;
+    }
+
+  /** An underlying client together with its pool bookkeeping. */
+  private static class PooledClient
+    {
+    private final IMetaStoreClient client;
+
+    private long lastUsed;
+
+    PooledClient( IMetaStoreClient client )
+      {
+      this.client = client;
+      this.lastUsed = System.currentTimeMillis();
+      }
+    }
+
+  /**
+   * InvocationHandler delegating all calls to the pooled client, except for <code>close()</code>, which returns the
+   * client to the pool, and the methods of Object, which are handled by the proxy itself. Clients, which fail with
+   * transport level errors, are discarded instead of being returned. All other errors, like a MetaException caused by
+   * an invalid filter, are raised by the server and leave the connection usable.
+   */
+  private class PooledClientHandler implements InvocationHandler
+    {
+    private final String key;
+    private final PooledClient pooled;
+    private final int maxIdle;
+    private final long idleTimeout;
+    private boolean broken = false;
+    private boolean returned = false;
+
+    PooledClientHandler( String key, PooledClient pooled, HiveConf hiveConf )
+      {
+      this.key = key;
+      this.pooled = pooled;
+      this.maxIdle = hiveConf.getInt( POOL_MAX_IDLE, DEFAULT_MAX_IDLE );
+      this.idleTimeout = hiveConf.getLong( POOL_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT );
+      }
+
+    @Override
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+      {
+      if( method.getDeclaringClass() == Object.class )
+        return invokeObjectMethod( proxy, method, args );
+
+      if( method.getName().equals( "close" ) && method.getParameterTypes().length == 0 )
+        {
+        if( !returned )
+          {
+          returned = true;
+          returnClient( key, pooled, broken, maxIdle, idleTimeout );
+          }
+        return null;
+        }
+
+      if( returned )
+        throw new IllegalStateException( "metastore client has already been returned to the pool" );
+
+      try
+        {
+        return method.invoke( pooled.client, args );
+        }
+      catch( InvocationTargetException exception )
+        {
+        Throwable cause = exception.getCause();
+        if( isTransportError( cause ) )
+          broken = true;
+        throw cause;
+        }
+      }
+
+    private Object invokeObjectMethod( Object proxy, Method method, Object[] args )
+      {
+      if( method.getName().equals( "equals" ) )
+        return proxy == args[ 0 ];
+      if( method.getName().equals( "hashCode" ) )
+        return System.identityHashCode( proxy );
+
+      return "PooledMetaStoreClient{key='" + key + "', returned=" + returned + "}";
+      }
+    }
+
+  /**
+   * Returns true, if the given error or one of its causes is a TTransportException. RetryingMetaStoreClient wraps
+   * transport errors, which it gave up retrying, into other exceptions.
+   */
+  static boolean isTransportError( Throwable throwable )
+    {
+    for( Throwable cause = throwable; cause != null; cause = cause.getCause() )
+      {
+      if( cause instanceof TTransportException )
+        return true;
+      if( cause.getCause() == cause )
+        break;
+      }
+    return false;
+    }
+  }
@@ -0,0 +1,425 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import cascading.CascadingException;
+import cascading.flow.FlowProcess;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MetaStoreMetrics keeps JVM wide statistics about the calls made to the Hive MetaStore: the number of calls, the
+ * number of failed calls and a latency histogram per operation. Every call is also forwarded to an optional
+ * {@link MetaStoreMetricsSink}.
+ * <p/>
+ * Each call is attributed to the flow, whose ID is found in the Configuration the client was borrowed with. The calls
+ * made within the tasks of a flow are reported as counters of the flow via {@link #reportTo(FlowProcess)}, which the
+ * HivePartitionTap does when its collector is closed. Calls made on the client side, e.g. while planning the flow or
+ * committing its sinks, cannot become counters, since the counters of the steps are final by then. They are only
+ * visible through the MetaStoreMetricsSink, which receives every call together with the ID of its flow. The
+ * {@link MetaStoreMetricsListener} logs a summary of them and releases them, once the flow has completed.
+ * <p/>
+ * The MetaStore calls Hive's Driver makes on its own, e.g. while the HiveViewAnalyzer compiles a view, do not go
+ * through the clients of this project and are not recorded.
+ */
+public class MetaStoreMetrics
+  {
+  /** Field LOG */
+  private static final Logger LOG = LoggerFactory.getLogger( MetaStoreMetrics.class );
+
+  /** property for the class name of a MetaStoreMetricsSink implementation */
+  public static final String METRICS_SINK = "cascading.hive.metastore.metrics.sink";
+
+  /** counter group used for reporting MetaStore calls */
+  public static final String COUNTER_GROUP = "cascading.hive.MetaStore";
+
+  /** property Cascading sets to the ID of the current flow */
+  static final String FLOW_ID = "cascading.flow.id";
+
+  /** maximum number of flows to keep unreported calls for, the calls of the oldest flow are dropped beyond that */
+  static final int MAX_UNREPORTED_FLOWS = 100;
+
+  /** upper bounds in milliseconds of the buckets of the latency histograms. The last bucket is unbounded. */
+  static final long[] LATENCY_BUCKETS = new long[]{1, 5, 10, 50, 100, 500, 1000, 5000};
+
+  /** the JVM wide instance */
+  private static final MetaStoreMetrics INSTANCE = new MetaStoreMetrics();
+
+  /** statistics by operation name */
+  private final ConcurrentMap<String, OperationStatistics> statistics = new ConcurrentHashMap<String, OperationStatistics>();
+
+  /** calls not reported yet by flow ID and operation name, calls outside of any flow are kept under "" */
+  private final Map<String, Map<String, UnreportedCalls>> unreported = new LinkedHashMap<String, Map<String, UnreportedCalls>>()
+    {
+    @Override
+    protected boolean removeEldestEntry( Map.Entry<String, Map<String, UnreportedCalls>> eldest )
+      {
+      return size() > MAX_UNREPORTED_FLOWS;
+      }
+    };
+
+  /** the current sink, if any */
+  private volatile MetaStoreMetricsSink sink;
+
+  /**
+   * Returns the JVM wide MetaStoreMetrics.
+   *
+   * @return the MetaStoreMetrics instance.
+   */
+  public static MetaStoreMetrics getInstance()
+    {
+    return INSTANCE;
+    }
+
+  MetaStoreMetrics()
+    {
+    }
+
+  /**
+   * Sets the MetaStoreMetricsSink to forward all calls to.
+   *
+   * @param sink The sink or null to disable forwarding.
+   */
+  public void setSink( MetaStoreMetricsSink sink )
+    {
+    this.sink = sink;
+    }
+
+  /**
+   * Returns a snapshot of the statistics of all operations called so far, sorted by operation name.
+   *
+   * @return a Map of operation name to OperationStatistics.
+   */
+  public Map<String, OperationStatistics> getStatistics()
+    {
+    return new TreeMap<String, OperationStatistics>( statistics );
+    }
+
+  /**
+   * Increments the counters of the given FlowProcess by the calls its flow made since the last report. Calls of other
+   * flows running in the same JVM are left for their own reports.
+   *
+   * @param flowProcess The FlowProcess of the flow to report.
+   */
+  public void reportTo( FlowProcess flowProcess )
+    {
+    Map<String, UnreportedCalls> calls;
+    synchronized( unreported )
+      {
+      calls = unreported.remove( getFlowID( flowProcess.getStringProperty( FLOW_ID ) ) );
+      }
+
+    if( calls == null )
+      return;
+
+    for( Map.Entry<String, UnreportedCalls> entry : calls.entrySet() )
+      {
+      UnreportedCalls operation = entry.getValue();
+      flowProcess.increment( COUNTER_GROUP, entry.getKey() + ".calls", operation.calls );
+      flowProcess.increment( COUNTER_GROUP, entry.getKey() + ".millis", operation.millis );
+      if( operation.errors > 0 )
+        flowProcess.increment( COUNTER_GROUP, entry.getKey() + ".errors", operation.errors );
+      }
+    }
+
+  /**
+   * Releases the calls of the given flow, which have not been reported as counters, and logs a summary of them. This is
+   * meant to be called on the client side, once the flow has completed.
+   *
+   * @param flowID The ID of the flow.
+   */
+  public void release( String flowID )
+    {
+    Map<String, UnreportedCalls> calls;
+    synchronized( unreported )
+      {
+      calls = unreported.remove( getFlowID( flowID ) );
+      }
+
+    if( calls == null || !LOG.isInfoEnabled() )
+      return;
+
+    for( Map.Entry<String, UnreportedCalls> entry : new TreeMap<String, UnreportedCalls>( calls ).entrySet() )
+      {
+      UnreportedCalls operation = entry.getValue();
+      LOG.info( "flow {} called {} {} times on the client side, taking {} ms, {} calls failed", flowID, entry.getKey(),
+        operation.calls, operation.millis, operation.errors );
+      }
+    }
+
+  /**
+   * Resets all statistics.
+   */
+  public void clear()
+    {
+    statistics.clear();
+    synchronized( unreported )
+      {
+      unreported.clear();
+      }
+    }
+
+  /**
+   * Wraps the given client in a proxy, which records all calls. If the given Configuration names a
+   * MetaStoreMetricsSink, which is not installed yet, it is instantiated and installed.
+   *
+   * @param client The client to instrument.
+   * @param conf   The Configuration to read the sink from.
+   * @return an instrumented IMetaStoreClient.
+   */
+  IMetaStoreClient instrument( final IMetaStoreClient client, Configuration conf )
+    {
+    installSink( conf );
+    final String flowID = getFlowID( conf == null ? null : conf.get( FLOW_ID ) );
+    return (IMetaStoreClient) Proxy.newProxyInstance( IMetaStoreClient.class.getClassLoader(),
+      new Class[]{IMetaStoreClient.class}, new InvocationHandler()
+      {
+      @Override
+      public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+        {
+        // the methods of Object are no MetaStore calls, they are answered by the proxy itself
+        if( method.getDeclaringClass() == Object.class )
+          {
+          if( method.getName().equals( "equals" ) )
+            return proxy == args[ 0 ];
+          if( method.getName().equals( "hashCode" ) )
+            return System.identityHashCode( proxy );
+          return "Instrumented" + client;
+          }
+
+        if( method.getName().equals( "close" ) )
+          return method.invoke( client, args );
+
+        long start = System.nanoTime();
+        boolean failed = false;
+        try
+          {
+          return method.invoke( client, args );
+          }
+        catch( InvocationTargetException exception )
+          {
+          failed = true;
+          throw exception.getCause();
+          }
+        finally
+          {
+          record( flowID, method.getName(), ( System.nanoTime() - start ) / 1000000, failed );
+          }
+        }
+      } );
+    }
+
+  /**
+   * Records a single call of the given operation.
+   *
+   * @param flowID         The ID of the flow making the call, empty if unknown.
+   * @param operation      The name of the operation.
+   * @param durationMillis The duration of the call in milliseconds.
+   * @param failed         true, if the call failed.
+   */
+  void record( String flowID, String operation, long durationMillis, boolean failed )
+    {
+    OperationStatistics operationStatistics = statistics.get( operation );
+    if( operationStatistics == null )
+      {
+      operationStatistics = new OperationStatistics( operation );
+      OperationStatistics existing = statistics.putIfAbsent( operation, operationStatistics );
+      if( existing != null )
+        operationStatistics = existing;
+      }
+    operationStatistics.record( durationMillis, failed );
+
+    synchronized( unreported )
+      {
+      Map<String, UnreportedCalls> calls = unreported.get( flowID );
+      if( calls == null )
+        {
+        calls = new HashMap<String, UnreportedCalls>();
+        unreported.put( flowID, calls );
+        }
+      UnreportedCalls operationCalls = calls.get( operation );
+      if( operationCalls == null )
+        {
+        operationCalls = new UnreportedCalls();
+        calls.put( operation, operationCalls );
+        }
+      operationCalls.record( durationMillis, failed );
+      }
+
+    MetaStoreMetricsSink current = sink;
+    if( current != null )
+      {
+      try
+        {
+        current.record( flowID, operation, durationMillis, failed );
+        }
+      catch( RuntimeException exception )
+        {
+        LOG.warn( "metrics sink failed to record operation {}", operation, exception );
+        }
+      }
+    }
+
+  private static String getFlowID( String flowID )
+    {
+    return flowID == null ? "" : flowID;
+    }
+
+  private void installSink( Configuration conf )
+    {
+    String className = conf == null ? null : conf.get( METRICS_SINK );
+    if( className == null || className.isEmpty() )
+      return;
+
+    synchronized( this )
+      {
+      if( sink != null && sink.getClass().getName().equals( className ) )
+        return;
+
+      try
+        {
+        sink = (MetaStoreMetricsSink) Class.forName( className, true, Thread.currentThread().getContextClassLoader() ).newInstance();
+        }
+      catch( Exception exception )
+        {
+        throw new CascadingException( "unable to instantiate metrics sink " + className, exception );
+        }
+      }
+    }
+
+  /**
+   * Calls of a single operation of a single flow, which are not reported yet. Guarded by the unreported map.
+   */
+  private static class UnreportedCalls
+    {
+    long calls;
+    long errors;
+    long millis;
+
+    void record( long durationMillis, boolean failed )
+      {
+      calls++;
+      millis += durationMillis;
+      if( failed )
+        errors++;
+      }
+    }
+
+  /**
+   * Statistics of a single MetaStore operation.
+   */
+  public static class OperationStatistics
+    {
+    private final String name;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray( LATENCY_BUCKETS.length + 1 );
+
+    OperationStatistics( String name )
+      {
+      this.name = name;
+      }
+
+    void record( long durationMillis, boolean failed )
+      {
+      calls.incrementAndGet();
+      totalMillis.addAndGet( durationMillis );
+      if( failed )
+        errors.incrementAndGet();
+
+      int bucket = 0;
+      while( bucket < LATENCY_BUCKETS.length && durationMillis > LATENCY_BUCKETS[ bucket ] )
+        bucket++;
+      histogram.incrementAndGet( bucket );
+      }
+
+    public String getName()
+      {
+      return name;
+      }
+
+    public long getCalls()
+      {
+      return calls.get();
+      }
+
+    public long getErrors()
+      {
+      return errors.get();
+      }
+
+    public long getTotalMillis()
+      {
+      return totalMillis.get();
+      }
+
+    /**
+     * Returns the latency histogram. Element i counts the calls, which took at most {@link #getBucketBounds()}[i]
+     * milliseconds, the last element counts all slower calls.
+     *
+     * @return the counts of the histogram buckets.
+     */
+    public long[] getHistogram()
+      {
+      long[] result = new long[ histogram.length() ];
+      for( int index = 0; index < result.length; index++ )
+        result[ index ] = histogram.get( index );
+      return result;
+      }
+
+    /**
+     * Returns the upper bounds in milliseconds of the histogram buckets.
+     *
+     * @return the bucket bounds.
+     */
+    public static long[] getBucketBounds()
+      {
+      return LATENCY_BUCKETS.clone();
+      }
+
+    @Override
+    public String toString()
+      {
+      return "OperationStatistics{" +
+        "name='" + name + '\'' +
+        ", calls=" + calls +
+        ", errors=" + errors +
+        ", totalMillis=" + totalMillis +
+        '}';
+      }
+    }
+  }
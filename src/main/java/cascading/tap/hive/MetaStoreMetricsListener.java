@@ -0,0 +1,59 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowListener;
+
+/**
+ * FlowListener releasing the MetaStore calls made on the client side, e.g. while checking and creating the tables or
+ * registering the partitions of a flow, once the flow has completed. A summary of the calls is logged; a
+ * {@link MetaStoreMetricsSink} receives each of them as it happens. Calls made within the tasks are reported as
+ * counters of the flow by the taps themselves.
+ * <p/>
+ * <pre>
+ * flow.addListener( new MetaStoreMetricsListener() );
+ * </pre>
+ */
+public class MetaStoreMetricsListener implements FlowListener
+  {
+  @Override
+  public void onStarting( Flow flow )
+    {
+    }
+
+  @Override
+  public void onStopping( Flow flow )
+    {
+    }
+
+  @Override
+  public void onCompleted( Flow flow )
+    {
+    MetaStoreMetrics.getInstance().release( flow.getID() );
+    }
+
+  @Override
+  public boolean onThrowable( Flow flow, Throwable throwable )
+    {
+    return false;
+    }
+  }
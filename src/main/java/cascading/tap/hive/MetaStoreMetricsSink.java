@@ -0,0 +1,40 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+/**
+ * Receiver of MetaStore call metrics recorded by {@link MetaStoreMetrics}. Implementations can forward the metrics to
+ * an external monitoring system. They must have a public no-arg constructor to be configurable via
+ * {@link MetaStoreMetrics#METRICS_SINK} and must be thread safe.
+ */
+public interface MetaStoreMetricsSink
+  {
+  /**
+   * Records a single MetaStore call.
+   *
+   * @param flowID         The ID of the flow, which made the call, or an empty String if the call was made outside of
+   *                       a flow.
+   * @param operation      The name of the operation, e.g. <code>getTable</code>.
+   * @param durationMillis The duration of the call in milliseconds.
+   * @param failed         true, if the call failed with an exception.
+   */
+  void record( String flowID, String operation, long durationMillis, boolean failed );
+  }
@@ -0,0 +1,205 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.util.LinkedHashMap;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.Table;
+
+/**
+ * MetaStoreTableCache is a JVM wide, size bounded cache of Table objects fetched from the Hive MetaStore. Entries expire
+ * after a configurable time to live and are invalidated explicitly, when a table is created or dropped through a
+ * HiveTap. Besides existing tables, the cache remembers tables found missing by {@link HiveTaps}, so that the taps
+ * created for them do not look them up again. Setting the time to live to 0 disables the cache.
+ */
+public class MetaStoreTableCache
+  {
+  /** property for the time in milliseconds a Table is served from the cache */
+  public static final String CACHE_TTL = "cascading.hive.metastore.cache.ttl";
+
+  /** property for the maximum number of Tables in the cache */
+  public static final String CACHE_MAX_SIZE = "cascading.hive.metastore.cache.max.size";
+
+  /** default time to live of 1 minute */
+  public static final long DEFAULT_CACHE_TTL = 60 * 1000L;
+
+  /** default maximum number of cached Tables */
+  public static final int DEFAULT_CACHE_MAX_SIZE = 1000;
+
+  /** the JVM wide instance */
+  private static final MetaStoreTableCache INSTANCE = new MetaStoreTableCache();
+
+  /** cached tables in least recently used order */
+  private final LinkedHashMap<String, CachedTable> tables = new LinkedHashMap<String, CachedTable>( 16, 0.75f, true );
+
+  /**
+   * Returns the JVM wide MetaStoreTableCache.
+   *
+   * @return the MetaStoreTableCache instance.
+   */
+  public static MetaStoreTableCache getInstance()
+    {
+    return INSTANCE;
+    }
+
+  MetaStoreTableCache()
+    {
+    }
+
+  /**
+   * Returns a copy of the cached Table or null, if it is not cached or has expired.
+   *
+   * @param hiveConf     The HiveConf describing the MetaStore.
+   * @param databaseName The name of the database.
+   * @param tableName    The name of the table.
+   * @return a Table or null.
+   */
+  synchronized Table get( HiveConf hiveConf, String databaseName, String tableName )
+    {
+    CachedTable cached = getCachedTable( hiveConf, databaseName, tableName );
+    if( cached == null || cached.table == null )
+      return null;
+
+    return cached.table.deepCopy();
+    }
+
+  /**
+   * Returns true, if the given table has been found missing and the entry has not expired yet.
+   *
+   * @param hiveConf     The HiveConf describing the MetaStore.
+   * @param databaseName The name of the database.
+   * @param tableName    The name of the table.
+   * @return true, if the table is known to be missing.
+   */
+  synchronized boolean isMissing( HiveConf hiveConf, String databaseName, String tableName )
+    {
+    CachedTable cached = getCachedTable( hiveConf, databaseName, tableName );
+    return cached != null && cached.table == null;
+    }
+
+  /**
+   * Puts a copy of the given Table into the cache.
+   *
+   * @param hiveConf The HiveConf describing the MetaStore.
+   * @param table    The Table to cache.
+   */
+  synchronized void put( HiveConf hiveConf, Table table )
+    {
+    long ttl = hiveConf.getLong( CACHE_TTL, DEFAULT_CACHE_TTL );
+    if( ttl <= 0 )
+      return;
+
+    put( hiveConf, createKey( hiveConf, table.getDbName(), table.getTableName() ),
+      new CachedTable( table.deepCopy(), System.currentTimeMillis() + ttl ) );
+    }
+
+  /**
+   * Remembers that the given table does not exist. The entry is removed, when the table is created through a HiveTap.
+   *
+   * @param hiveConf     The HiveConf describing the MetaStore.
+   * @param databaseName The name of the database.
+   * @param tableName    The name of the table.
+   */
+  synchronized void putMissing( HiveConf hiveConf, String databaseName, String tableName )
+    {
+    long ttl = hiveConf.getLong( CACHE_TTL, DEFAULT_CACHE_TTL );
+    if( ttl <= 0 )
+      return;
+
+    put( hiveConf, createKey( hiveConf, databaseName, tableName ), new CachedTable( null, System.currentTimeMillis() + ttl ) );
+    }
+
+  private void put( HiveConf hiveConf, String key, CachedTable cached )
+    {
+    int maxSize = hiveConf.getInt( CACHE_MAX_SIZE, DEFAULT_CACHE_MAX_SIZE );
+    tables.put( key, cached );
+
+    while( tables.size() > maxSize )
+      tables.remove( tables.keySet().iterator().next() );
+    }
+
+  private CachedTable getCachedTable( HiveConf hiveConf, String databaseName, String tableName )
+    {
+    String key = createKey( hiveConf, databaseName, tableName );
+    CachedTable cached = tables.get( key );
+    if( cached == null )
+      return null;
+
+    if( System.currentTimeMillis() >= cached.expires )
+      {
+      tables.remove( key );
+      return null;
+      }
+
+    return cached;
+    }
+
+  /**
+   * Removes the given table from the cache.
+   *
+   * @param hiveConf     The HiveConf describing the MetaStore.
+   * @param databaseName The name of the database.
+   * @param tableName    The name of the table.
+   */
+  synchronized void invalidate( HiveConf hiveConf, String databaseName, String tableName )
+    {
+    tables.remove( createKey( hiveConf, databaseName, tableName ) );
+    }
+
+  /**
+   * Removes all tables from the cache.
+   */
+  public synchronized void clear()
+    {
+    tables.clear();
+    }
+
+  /**
+   * Returns the number of tables in the cache.
+   *
+   * @return the number of tables in the cache.
+   */
+  synchronized int size()
+    {
+    return tables.size();
+    }
+
+  private static String createKey( HiveConf hiveConf, String databaseName, String tableName )
+    {
+    return MetaStoreClientPool.getMetaStoreKey( hiveConf ) + "/" + databaseName.toLowerCase() + "." + tableName.toLowerCase();
+    }
+
+  /** A cached Table together with its expiry time. */
+  private static class CachedTable
+    {
+    /** the table or null, if the table does not exist */
+    private final Table table;
+
+    private final long expires;
+
+    CachedTable( Table table, long expires )
+      {
+      this.table = table;
+      this.expires = expires;
+      }
+    }
+  }
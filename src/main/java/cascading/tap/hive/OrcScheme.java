@@ -0,0 +1,99 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.io.IOException;
+
+import cascading.flow.FlowProcess;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.hive.ql.io.orc.OrcInputFormat;
+import org.apache.hadoop.hive.ql.io.orc.OrcOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.util.Progressable;
+
+import static cascading.flow.hadoop.util.HadoopUtil.asJobConfInstance;
+
+/**
+ * OrcScheme is a Scheme for reading and writing ORC files, the columnar file format of Hive. When used as a source,
+ * only the columns of the source fields are read from the files; the streams of all other columns are skipped
+ * entirely.
+ * <p/>
+ * The ORC writer can be tuned with the usual Hive properties like <code>hive.exec.orc.default.compress</code> or
+ * <code>hive.exec.orc.default.stripe.size</code>.
+ */
+public class OrcScheme extends HiveColumnarScheme
+  {
+  /**
+   * Constructs a new OrcScheme reading and writing all given columns.
+   *
+   * @param fields      The columns stored in the files.
+   * @param columnTypes The Hive types of the columns.
+   */
+  public OrcScheme( Fields fields, String[] columnTypes )
+    {
+    this( fields, columnTypes, fields );
+    }
+
+  /**
+   * Constructs a new OrcScheme writing all given columns and reading only the given source fields.
+   *
+   * @param fields       The columns stored in the files.
+   * @param columnTypes  The Hive types of the columns.
+   * @param sourceFields The columns to read, which have to be a subset of fields.
+   */
+  public OrcScheme( Fields fields, String[] columnTypes, Fields sourceFields )
+    {
+    super( fields, columnTypes, HiveStorageFormat.ORC, sourceFields );
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<? extends Configuration> flowProcess, Tap<Configuration, RecordReader, OutputCollector> tap, Configuration conf )
+    {
+    super.sourceConfInit( flowProcess, tap, conf );
+    asJobConfInstance( conf ).setInputFormat( OrcInputFormat.class );
+    }
+
+  @Override
+  public void sinkConfInit( FlowProcess<? extends Configuration> flowProcess, Tap<Configuration, RecordReader, OutputCollector> tap, Configuration conf )
+    {
+    super.sinkConfInit( flowProcess, tap, conf );
+    asJobConfInstance( conf ).setOutputFormat( TaskOrcOutputFormat.class );
+    }
+
+  /**
+   * OrcOutputFormat writing into the work output path of the current task.
+   */
+  public static class TaskOrcOutputFormat extends OrcOutputFormat
+    {
+    @Override
+    public RecordWriter getRecordWriter( FileSystem fileSystem, JobConf conf, String name, Progressable progress ) throws IOException
+      {
+      return super.getRecordWriter( fileSystem, conf, getTaskOutputFile( conf, name ).toString(), progress );
+      }
+    }
+  }
@@ -0,0 +1,246 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cascading.flow.FlowProcess;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat;
+import org.apache.hadoop.hive.ql.io.parquet.MapredParquetOutputFormat;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.io.ArrayWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.util.Progressable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import parquet.hadoop.ParquetFileReader;
+import parquet.hadoop.metadata.BlockMetaData;
+import parquet.hadoop.metadata.ParquetMetadata;
+
+import static cascading.flow.hadoop.util.HadoopUtil.asJobConfInstance;
+
+/**
+ * ParquetScheme is a Scheme for reading and writing Parquet files the way Hive does. The Parquet schema of the files is
+ * derived from the Hive types of the columns. When used as a source, only the column chunks of the source fields are
+ * read from the files.
+ * <p/>
+ * The size of the row groups and pages of written files can be given to the Scheme, otherwise the values of
+ * <code>parquet.block.size</code> and <code>parquet.page.size</code> apply. The compression codec is taken from
+ * <code>parquet.compression</code>.
+ * <p/>
+ * A {@link ColumnPredicate} set on the Scheme is evaluated against the statistics of the row groups when the splits are
+ * computed. Row groups, which cannot contain matching rows, are not read.
+ */
+public class ParquetScheme extends HiveColumnarScheme
+  {
+  /** Field LOG */
+  private static final Logger LOG = LoggerFactory.getLogger( ParquetScheme.class );
+
+  /** property for the size of a row group in bytes */
+  public static final String ROW_GROUP_SIZE = "parquet.block.size";
+
+  /** property for the size of a page in bytes */
+  public static final String PAGE_SIZE = "parquet.page.size";
+
+  /** size of a row group in bytes, 0 for the configured default */
+  private final int rowGroupSize;
+
+  /** size of a page in bytes, 0 for the configured default */
+  private final int pageSize;
+
+  /**
+   * Constructs a new ParquetScheme reading and writing all given columns.
+   *
+   * @param fields      The columns stored in the files.
+   * @param columnTypes The Hive types of the columns.
+   */
+  public ParquetScheme( Fields fields, String[] columnTypes )
+    {
+    this( fields, columnTypes, fields );
+    }
+
+  /**
+   * Constructs a new ParquetScheme writing all given columns and reading only the given source fields.
+   *
+   * @param fields       The columns stored in the files.
+   * @param columnTypes  The Hive types of the columns.
+   * @param sourceFields The columns to read, which have to be a subset of fields.
+   */
+  public ParquetScheme( Fields fields, String[] columnTypes, Fields sourceFields )
+    {
+    this( fields, columnTypes, sourceFields, 0, 0 );
+    }
+
+  /**
+   * Constructs a new ParquetScheme writing all given columns with the given row group and page size and reading only
+   * the given source fields.
+   *
+   * @param fields       The columns stored in the files.
+   * @param columnTypes  The Hive types of the columns.
+   * @param sourceFields The columns to read, which have to be a subset of fields.
+   * @param rowGroupSize The size of a row group in bytes or 0 for the configured default.
+   * @param pageSize     The size of a page in bytes or 0 for the configured default.
+   */
+  public ParquetScheme( Fields fields, String[] columnTypes, Fields sourceFields, int rowGroupSize, int pageSize )
+    {
+    super( fields, columnTypes, HiveStorageFormat.PARQUET, sourceFields );
+    if( rowGroupSize < 0 || pageSize < 0 )
+      throw new IllegalArgumentException( "rowGroupSize and pageSize must not be negative" );
+
+    this.rowGroupSize = rowGroupSize;
+    this.pageSize = pageSize;
+    }
+
+  public int getRowGroupSize()
+    {
+    return rowGroupSize;
+    }
+
+  public int getPageSize()
+    {
+    return pageSize;
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<? extends Configuration> flowProcess, Tap<Configuration, RecordReader, OutputCollector> tap, Configuration conf )
+    {
+    super.sourceConfInit( flowProcess, tap, conf );
+    asJobConfInstance( conf ).setInputFormat( TaskParquetInputFormat.class );
+    }
+
+  @Override
+  public void sinkConfInit( FlowProcess<? extends Configuration> flowProcess, Tap<Configuration, RecordReader, OutputCollector> tap, Configuration conf )
+    {
+    super.sinkConfInit( flowProcess, tap, conf );
+    asJobConfInstance( conf ).setOutputFormat( TaskParquetOutputFormat.class );
+
+    if( rowGroupSize > 0 )
+      conf.setInt( ROW_GROUP_SIZE, rowGroupSize );
+    if( pageSize > 0 )
+      conf.setInt( PAGE_SIZE, pageSize );
+    }
+
+  @Override
+  public boolean equals( Object object )
+    {
+    if( !super.equals( object ) )
+      return false;
+
+    ParquetScheme that = (ParquetScheme) object;
+    return rowGroupSize == that.rowGroupSize && pageSize == that.pageSize;
+    }
+
+  @Override
+  public int hashCode()
+    {
+    int result = super.hashCode();
+    result = 31 * result + rowGroupSize;
+    result = 31 * result + pageSize;
+    return result;
+    }
+
+  /**
+   * MapredParquetOutputFormat writing into the work output path of the current task. Hive only writes Parquet files
+   * through its own record writer interface, which is adapted here to the plain mapred one.
+   */
+  public static class TaskParquetOutputFormat extends MapredParquetOutputFormat
+    {
+    @Override
+    public RecordWriter<Void, ArrayWritable> getRecordWriter( FileSystem fileSystem, JobConf conf, String name, Progressable progress ) throws IOException
+      {
+      return (RecordWriter<Void, ArrayWritable>) getHiveRecordWriter( conf, getTaskOutputFile( conf, name ),
+        ArrayWritable.class, false, getTableProperties( conf ), progress );
+      }
+    }
+
+  /**
+   * MapredParquetInputFormat skipping the row groups, which cannot match the pushed down SearchArgument. Hive reads all
+   * row groups starting within a split, so splits are narrowed down to the matching row groups.
+   */
+  public static class TaskParquetInputFormat extends MapredParquetInputFormat
+    {
+    @Override
+    public InputSplit[] getSplits( JobConf conf, int numSplits ) throws IOException
+      {
+      InputSplit[] splits = super.getSplits( conf, numSplits );
+      String pushdown = conf.get( SARG_PUSHDOWN );
+      if( pushdown == null )
+        return splits;
+
+      SearchArgument searchArgument = SearchArgumentFactory.create( pushdown );
+      String[] columnNames = conf.get( serdeConstants.LIST_COLUMNS ).split( "," );
+      Map<Path, ParquetMetadata> footers = new HashMap<Path, ParquetMetadata>();
+      List<InputSplit> result = new ArrayList<InputSplit>();
+      int total = 0;
+      int skipped = 0;
+      for( InputSplit split : splits )
+        {
+        FileSplit fileSplit = (FileSplit) split;
+        ParquetMetadata footer = footers.get( fileSplit.getPath() );
+        if( footer == null )
+          {
+          footer = ParquetFileReader.readFooter( conf, fileSplit.getPath() );
+          footers.put( fileSplit.getPath(), footer );
+          }
+
+        List<InputSplit> matching = new ArrayList<InputSplit>();
+        int blocks = 0;
+        for( BlockMetaData block : footer.getBlocks() )
+          {
+          long start = block.getColumns().get( 0 ).getFirstDataPageOffset();
+          if( start < fileSplit.getStart() || start >= fileSplit.getStart() + fileSplit.getLength() )
+            continue;
+
+          blocks++;
+          if( ParquetStatistics.isNeeded( searchArgument, columnNames, block ) )
+            matching.add( new FileSplit( fileSplit.getPath(), start, Math.max( 1, block.getCompressedSize() ), fileSplit.getLocations() ) );
+          }
+
+        total += blocks;
+        skipped += blocks - matching.size();
+        if( matching.size() == blocks )
+          result.add( split );
+        else
+          result.addAll( matching );
+        }
+
+      LOG.info( "skipping {} of {} row groups not matching the predicate", skipped, total );
+      return result.toArray( new InputSplit[ result.size() ] );
+      }
+    }
+  }
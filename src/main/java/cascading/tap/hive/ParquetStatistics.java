@@ -0,0 +1,222 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.io.sarg.PredicateLeaf;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument.TruthValue;
+import parquet.column.statistics.BinaryStatistics;
+import parquet.column.statistics.DoubleStatistics;
+import parquet.column.statistics.FloatStatistics;
+import parquet.column.statistics.IntStatistics;
+import parquet.column.statistics.LongStatistics;
+import parquet.column.statistics.Statistics;
+import parquet.hadoop.metadata.BlockMetaData;
+import parquet.hadoop.metadata.ColumnChunkMetaData;
+import parquet.io.api.Binary;
+
+/**
+ * ParquetStatistics evaluates SearchArguments against the column statistics of Parquet row groups, the same way ORC
+ * evaluates them against the statistics of its row groups. Leaves, which cannot be evaluated, e.g. because the column
+ * has no statistics or the literal cannot be compared with them, evaluate to {@link TruthValue#YES_NO_NULL}.
+ * <p/>
+ * Columns are matched by position, so only tables with primitive columns, which have exactly one column chunk per
+ * column, are evaluated. Only the API shared by the Parquet version bundled with hive-exec and parquet-hadoop-bundle is
+ * used.
+ */
+final class ParquetStatistics
+  {
+  private ParquetStatistics()
+    {
+    }
+
+  /**
+   * Returns true, if the given row group may contain rows matching the given SearchArgument.
+   *
+   * @param searchArgument The SearchArgument.
+   * @param block          The metadata of the row group.
+   * @return false, if the row group cannot contain matching rows.
+   */
+  static boolean isNeeded( SearchArgument searchArgument, String[] columnNames, BlockMetaData block )
+    {
+    List<PredicateLeaf> leaves = searchArgument.getLeaves();
+    TruthValue[] values = new TruthValue[ leaves.size() ];
+    for( int index = 0; index < values.length; index++ )
+      values[ index ] = evaluate( leaves.get( index ), findColumn( block, columnNames, leaves.get( index ).getColumnName() ) );
+    return searchArgument.evaluate( values ).isNeeded();
+    }
+
+  static TruthValue evaluate( PredicateLeaf leaf, ColumnChunkMetaData column )
+    {
+    if( column == null || column.getStatistics() == null || column.getStatistics().isEmpty() )
+      return TruthValue.YES_NO_NULL;
+
+    Statistics statistics = column.getStatistics();
+    boolean hasNull = statistics.getNumNulls() > 0;
+    if( leaf.getOperator() == PredicateLeaf.Operator.IS_NULL )
+      return hasNull ? TruthValue.YES_NO : TruthValue.NO;
+
+    Object min = getMin( statistics );
+    Object max = getMax( statistics );
+    TruthValue result;
+    switch( leaf.getOperator() )
+      {
+      case EQUALS:
+      case NULL_SAFE_EQUALS:
+        result = evaluateRange( leaf.getLiteral(), leaf.getLiteral(), min, max );
+        break;
+      case LESS_THAN:
+        {
+        Integer toMax = compare( leaf.getLiteral(), max );
+        Integer toMin = compare( leaf.getLiteral(), min );
+        if( toMax == null || toMin == null )
+          return TruthValue.YES_NO_NULL;
+        result = toMax > 0 ? TruthValue.YES : toMin <= 0 ? TruthValue.NO : TruthValue.YES_NO;
+        break;
+        }
+      case LESS_THAN_EQUALS:
+        {
+        Integer toMax = compare( leaf.getLiteral(), max );
+        Integer toMin = compare( leaf.getLiteral(), min );
+        if( toMax == null || toMin == null )
+          return TruthValue.YES_NO_NULL;
+        result = toMax >= 0 ? TruthValue.YES : toMin < 0 ? TruthValue.NO : TruthValue.YES_NO;
+        break;
+        }
+      case IN:
+        result = TruthValue.NO;
+        for( Object literal : leaf.getLiteralList() )
+          {
+          TruthValue value = evaluateRange( literal, literal, min, max );
+          if( value == null )
+            return TruthValue.YES_NO_NULL;
+          if( value != TruthValue.NO )
+            result = value;
+          }
+        break;
+      case BETWEEN:
+        result = evaluateRange( leaf.getLiteralList().get( 0 ), leaf.getLiteralList().get( 1 ), min, max );
+        break;
+      default:
+        return TruthValue.YES_NO_NULL;
+      }
+
+    if( result == null )
+      return TruthValue.YES_NO_NULL;
+    if( !hasNull || leaf.getOperator() == PredicateLeaf.Operator.NULL_SAFE_EQUALS )
+      return result;
+
+    switch( result )
+      {
+      case YES:
+        return TruthValue.YES_NULL;
+      case NO:
+        return TruthValue.NO_NULL;
+      default:
+        return TruthValue.YES_NO_NULL;
+      }
+    }
+
+  /**
+   * Evaluates whether the values between min and max fall into the range from lower to upper.
+   */
+  private static TruthValue evaluateRange( Object lower, Object upper, Object min, Object max )
+    {
+    Integer upperToMin = compare( upper, min );
+    Integer lowerToMax = compare( lower, max );
+    Integer lowerToMin = compare( lower, min );
+    Integer upperToMax = compare( upper, max );
+    if( upperToMin == null || lowerToMax == null || lowerToMin == null || upperToMax == null )
+      return null;
+
+    if( upperToMin < 0 || lowerToMax > 0 )
+      return TruthValue.NO;
+    if( lowerToMin <= 0 && upperToMax >= 0 )
+      return TruthValue.YES;
+    return TruthValue.YES_NO;
+    }
+
+  /**
+   * Compares a literal of a SearchArgument with a value of the statistics. Strings are compared the way Parquet
+   * computed the statistics of binary columns. Returns null, if the values cannot be compared.
+   */
+  static Integer compare( Object literal, Object value )
+    {
+    if( literal instanceof Number && value instanceof Long && !( literal instanceof Double || literal instanceof Float ) )
+      {
+      long left = ( (Number) literal ).longValue();
+      long right = (Long) value;
+      return left < right ? -1 : left == right ? 0 : 1;
+      }
+    if( literal instanceof Number && value instanceof Number )
+      return Double.compare( ( (Number) literal ).doubleValue(), ( (Number) value ).doubleValue() );
+    if( literal instanceof String && value instanceof Binary )
+      return Binary.fromString( (String) literal ).compareTo( (Binary) value );
+    return null;
+    }
+
+  private static Object getMin( Statistics statistics )
+    {
+    if( statistics instanceof IntStatistics )
+      return (long) ( (IntStatistics) statistics ).getMin();
+    if( statistics instanceof LongStatistics )
+      return ( (LongStatistics) statistics ).getMin();
+    if( statistics instanceof FloatStatistics )
+      return (double) ( (FloatStatistics) statistics ).getMin();
+    if( statistics instanceof DoubleStatistics )
+      return ( (DoubleStatistics) statistics ).getMin();
+    if( statistics instanceof BinaryStatistics )
+      return ( (BinaryStatistics) statistics ).getMin();
+    return null;
+    }
+
+  private static Object getMax( Statistics statistics )
+    {
+    if( statistics instanceof IntStatistics )
+      return (long) ( (IntStatistics) statistics ).getMax();
+    if( statistics instanceof LongStatistics )
+      return ( (LongStatistics) statistics ).getMax();
+    if( statistics instanceof FloatStatistics )
+      return (double) ( (FloatStatistics) statistics ).getMax();
+    if( statistics instanceof DoubleStatistics )
+      return ( (DoubleStatistics) statistics ).getMax();
+    if( statistics instanceof BinaryStatistics )
+      return ( (BinaryStatistics) statistics ).getMax();
+    return null;
+    }
+
+  private static ColumnChunkMetaData findColumn( BlockMetaData block, String[] columnNames, String name )
+    {
+    List<ColumnChunkMetaData> columns = block.getColumns();
+    if( columns.size() != columnNames.length )
+      return null;
+
+    for( int index = 0; index < columnNames.length; index++ )
+      {
+      if( columnNames[ index ].equalsIgnoreCase( name ) )
+        return columns.get( index );
+      }
+    return null;
+    }
+  }
@@ -0,0 +1,108 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.io.sarg.PredicateLeaf;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+import org.junit.Test;
+
+import static cascading.tap.hive.ColumnPredicate.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ColumnPredicate.
+ */
+public class ColumnPredicateTest
+  {
+  private static final String[] NAMES = new String[]{"id", "name", "price"};
+
+  private static final String[] TYPES = new String[]{"bigint", "varchar(10)", "double"};
+
+  @Test
+  public void testToSearchArgument()
+    {
+    ColumnPredicate predicate = and( greaterThan( "ID", 10 ), or( equal( "name", "foo" ), in( "price", "1.5", 2 ) ) );
+    SearchArgument searchArgument = predicate.toSearchArgument( NAMES, TYPES );
+
+    List<PredicateLeaf> leaves = searchArgument.getLeaves();
+    assertEquals( 3, leaves.size() );
+    assertEquals( PredicateLeaf.Operator.LESS_THAN_EQUALS, leaves.get( 0 ).getOperator() );
+    assertEquals( "id", leaves.get( 0 ).getColumnName() );
+    assertEquals( 10L, leaves.get( 0 ).getLiteral() );
+    assertEquals( PredicateLeaf.Operator.EQUALS, leaves.get( 1 ).getOperator() );
+    assertEquals( PredicateLeaf.Operator.IN, leaves.get( 2 ).getOperator() );
+    assertEquals( Arrays.<Object>asList( 1.5d, 2d ), leaves.get( 2 ).getLiteralList() );
+
+    // the SearchArgument survives the serialization into the Configuration
+    assertEquals( searchArgument.toString(), SearchArgumentFactory.create( searchArgument.toKryo() ).toString() );
+    }
+
+  @Test
+  public void testGetColumns()
+    {
+    ColumnPredicate predicate = or( lessThan( "Price", 1 ), and( lessThanOrEqual( "id", 3 ), greaterThanOrEqual( "id", 1 ) ) );
+    assertEquals( Arrays.asList( "id", "price" ), Arrays.asList( predicate.getColumns().toArray() ) );
+    }
+
+  @Test
+  public void testToLiteral()
+    {
+    assertEquals( 42L, ColumnPredicate.toLiteral( "42", "int" ) );
+    assertEquals( 1.5d, ColumnPredicate.toLiteral( 1.5f, "float" ) );
+    assertEquals( "42", ColumnPredicate.toLiteral( 42, "string" ) );
+    assertEquals( true, ColumnPredicate.toLiteral( "true", "boolean" ) );
+    assertEquals( new DateWritable( java.sql.Date.valueOf( "2015-04-01" ) ), ColumnPredicate.toLiteral( "2015-04-01", "date" ) );
+    assertEquals( Timestamp.valueOf( "2015-04-01 12:00:00" ), ColumnPredicate.toLiteral( "2015-04-01 12:00:00", "timestamp" ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedType()
+    {
+    ColumnPredicate.toLiteral( "1.5", "decimal(10,2)" );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownColumn()
+    {
+    equal( "unknown", 1 ).toSearchArgument( NAMES, TYPES );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullValue()
+    {
+    equal( "id", null );
+    }
+
+  @Test
+  public void testEqualsAndToString()
+    {
+    assertEquals( and( equal( "id", 1 ), in( "name", "a", "b" ) ), and( equal( "ID", 1 ), in( "name", "a", "b" ) ) );
+    assertNotEquals( equal( "id", 1 ), equal( "id", 2 ) );
+    assertEquals( "(id = 1 and name in [a, b])", and( equal( "id", 1 ), in( "name", "a", "b" ) ).toString() );
+    }
+  }
@@ -0,0 +1,291 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import cascading.flow.hadoop.HadoopFlowProcess;
+import cascading.tap.SinkMode;
+import cascading.tap.TapException;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.lib.LazyOutputFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for writing bucketed tables through a HiveTap, using an InMemoryMetaStore.
+ */
+public class HiveBucketCollectorTest
+  {
+  private static final String NAME = "HiveBucketCollectorTest";
+
+  /** OutputCollector of a task, which is never used for bucketed tables */
+  private static final OutputCollector NULL_OUTPUT = new OutputCollector()
+  {
+  @Override
+  public void collect( Object key, Object value )
+    {
+    }
+  };
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private JobConf conf;
+
+  @Before
+  public void setUp()
+    {
+    InMemoryMetaStore.getInstance( NAME );
+    conf = new JobConf();
+    conf.set( HiveConf.ConfVars.METASTOREURIS.varname, InMemoryMetaStore.URI_SCHEME + NAME );
+    conf.set( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, temporaryFolder.getRoot().getAbsolutePath() );
+    }
+
+  @After
+  public void tearDown()
+    {
+    InMemoryMetaStore.remove( NAME );
+    MetaStoreClientPool.getInstance().clear();
+    MetaStoreTableCache.getInstance().clear();
+    }
+
+  @Test
+  public void testOneFilePerBucket() throws Exception
+    {
+    HiveTap tap = createTap( HiveStorageFormat.TEXT );
+    write( tap, null, new Tuple( 7, "a" ), new Tuple( 4, "b" ), new Tuple( 3, "c" ), new Tuple( 0, "d" ) );
+
+    File table = new File( temporaryFolder.getRoot(), "bucketed" );
+    assertTrue( tap.commitResource( conf ) );
+
+    assertEquals( Arrays.asList( "000000_0", "000001_0", "000002_0", "000003_0" ), list( table ) );
+    assertEquals( Arrays.asList( "4\u0001b", "0\u0001d" ), read( new File( table, "000000_0" ) ) );
+    assertEquals( Arrays.asList( "7\u0001a", "3\u0001c" ), read( new File( table, "000003_0" ) ) );
+    assertTrue( read( new File( table, "000001_0" ) ).isEmpty() );
+    }
+
+  @Test
+  public void testCommitKeepsExistingFiles() throws Exception
+    {
+    HiveTap tap = createTap( HiveStorageFormat.TEXT );
+    File table = new File( temporaryFolder.getRoot(), "bucketed" );
+    assertTrue( table.mkdirs() );
+    File existing = new File( table, "part-00000" );
+    Files.write( existing.toPath(), Arrays.asList( "1\u0001x" ), Charset.forName( "UTF-8" ) );
+
+    write( tap, null, new Tuple( 7, "a" ) );
+    assertTrue( tap.commitResource( conf ) );
+
+    assertEquals( Arrays.asList( "000000_0", "000001_0", "000002_0", "000003_0", "part-00000" ), list( table ) );
+    assertEquals( Arrays.asList( "1\u0001x" ), read( existing ) );
+    }
+
+  @Test
+  public void testTasksDoNotCreateFiles() throws Exception
+    {
+    HiveTap tap = createTap( HiveStorageFormat.TEXT );
+    Class outputFormat = conf.getOutputFormat().getClass();
+    tap.sinkConfInit( new HadoopFlowProcess( conf ), conf );
+
+    assertEquals( LazyOutputFormat.class, conf.getOutputFormat().getClass() );
+    assertEquals( outputFormat, conf.getClass( HiveBucketCollector.LAZY_OUTPUT_FORMAT, null ) );
+
+    // the output format is only wrapped once
+    tap.sinkConfInit( new HadoopFlowProcess( conf ), conf );
+    assertEquals( outputFormat, conf.getClass( HiveBucketCollector.LAZY_OUTPUT_FORMAT, null ) );
+
+    // empty buckets are still created with the wrapped output format
+    write( tap, null, new Tuple( 7, "a" ) );
+    assertTrue( tap.commitResource( conf ) );
+    File table = new File( temporaryFolder.getRoot(), "bucketed" );
+    assertEquals( Arrays.asList( "000000_0", "000001_0", "000002_0", "000003_0" ), list( table ) );
+    }
+
+  @Test
+  public void testWriteToWorkOutputPath() throws Exception
+    {
+    HiveTap tap = createTap( HiveStorageFormat.TEXT );
+    File work = temporaryFolder.newFolder( "work" );
+    FileOutputFormat.setWorkOutputPath( conf, new Path( work.getAbsolutePath() ) );
+    conf.set( HiveBucketCollector.TASK_ATTEMPT_ID, "attempt_1400000000000_0001_r_000001_0" );
+    conf.setNumReduceTasks( 4 );
+    write( tap, new OutputCollector()
+    {
+    @Override
+    public void collect( Object key, Object value )
+      {
+      fail( "the OutputCollector of the task is not used" );
+      }
+    }, new Tuple( 5, "a" ) );
+
+    assertEquals( Arrays.asList( "000001_0" ), list( work ) );
+    }
+
+  @Test
+  public void testMapTasksCannotWriteBuckets() throws Exception
+    {
+    HiveTap tap = createTap( HiveStorageFormat.TEXT );
+    FileOutputFormat.setWorkOutputPath( conf, new Path( temporaryFolder.newFolder( "work" ).getAbsolutePath() ) );
+    conf.set( HiveBucketCollector.TASK_ATTEMPT_ID, "attempt_1400000000000_0001_m_000001_0" );
+    conf.setNumReduceTasks( 4 );
+
+    try
+      {
+      write( tap, NULL_OUTPUT, new Tuple( 5, "a" ) );
+      fail( "expected TapException" );
+      }
+    catch( TapException exception )
+      {
+      // expected
+      }
+    }
+
+  @Test
+  public void testNumberOfReducersMustMatchBuckets() throws Exception
+    {
+    HiveTap tap = createTap( HiveStorageFormat.TEXT );
+    FileOutputFormat.setWorkOutputPath( conf, new Path( temporaryFolder.newFolder( "work" ).getAbsolutePath() ) );
+    conf.set( HiveBucketCollector.TASK_ATTEMPT_ID, "attempt_1400000000000_0001_r_000001_0" );
+    conf.setNumReduceTasks( 8 );
+
+    try
+      {
+      write( tap, NULL_OUTPUT, new Tuple( 5, "a" ) );
+      fail( "expected TapException" );
+      }
+    catch( TapException exception )
+      {
+      assertTrue( exception.getMessage().contains( "8 reducers" ) );
+      }
+    }
+
+  @Test
+  public void testOnlyReplaceMode() throws Exception
+    {
+    HiveTableDescriptor descriptor = createTap( HiveStorageFormat.TEXT ).getTableDescriptor();
+    for( SinkMode mode : new SinkMode[]{SinkMode.KEEP, SinkMode.UPDATE} )
+      {
+      HiveTap tap = new HiveTap( descriptor, descriptor.toScheme(), mode, false );
+      try
+        {
+        tap.sinkConfInit( new HadoopFlowProcess( conf ), conf );
+        fail( "expected TapException for " + mode );
+        }
+      catch( TapException exception )
+        {
+        // expected
+        }
+      }
+    }
+
+  @Test
+  public void testEmptyBucketsAreValidFiles() throws Exception
+    {
+    HiveTap tap = createTap( HiveStorageFormat.ORC );
+    write( tap, null, new Tuple( 1, "a" ), new Tuple( 5, "b" ) );
+    assertTrue( tap.commitResource( conf ) );
+
+    File table = new File( temporaryFolder.getRoot(), "bucketed" );
+    assertEquals( Arrays.asList( "000000_0", "000001_0", "000002_0", "000003_0" ), list( table ) );
+    assertEquals( 2, SchemeTestUtils.read( tap.getTableDescriptor().toScheme(), table ).size() );
+    }
+
+  @Test
+  public void testSortedBuckets() throws Exception
+    {
+    HiveTap tap = createTap( new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "bucketed",
+      new String[]{"key", "value"}, new String[]{"int", "string"}, new String[]{}, HiveStorageFormat.TEXT,
+      new String[]{"key"}, new String[]{"value DESC"}, 4, null ) );
+    write( tap, null, new Tuple( 1, "b" ), new Tuple( 2, "z" ), new Tuple( 1, "a" ), new Tuple( 5, "a" ) );
+
+    try
+      {
+      write( tap, null, new Tuple( 1, "a" ), new Tuple( 1, "b" ) );
+      fail( "expected TapException" );
+      }
+    catch( TapException exception )
+      {
+      // expected
+      }
+    }
+
+  private HiveTap createTap( HiveStorageFormat storageFormat ) throws IOException
+    {
+    return createTap( new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "bucketed",
+      new String[]{"key", "value"}, new String[]{"int", "string"}, new String[]{}, storageFormat, new String[]{"key"},
+      4, null ) );
+    }
+
+  private HiveTap createTap( HiveTableDescriptor descriptor ) throws IOException
+    {
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme(), SinkMode.REPLACE, false );
+    assertTrue( tap.createResource( conf ) );
+    tap.getScheme().sinkConfInit( null, tap, conf );
+    return tap;
+    }
+
+  private void write( HiveTap tap, OutputCollector output, Tuple... tuples ) throws IOException
+    {
+    Fields fields = tap.getScheme().getSinkFields();
+    TupleEntryCollector collector = tap.openForWrite( new HadoopFlowProcess( conf ), output );
+    for( Tuple tuple : tuples )
+      collector.add( new TupleEntry( fields, tuple ) );
+    collector.close();
+    }
+
+  private List<String> list( File directory )
+    {
+    String[] names = directory.list( new java.io.FilenameFilter()
+    {
+    @Override
+    public boolean accept( File dir, String name )
+      {
+      return !name.startsWith( "." ) && !name.startsWith( "_" );
+      }
+    } );
+    Arrays.sort( names );
+    return Arrays.asList( names );
+    }
+
+  private List<String> read( File file ) throws IOException
+    {
+    return Files.readAllLines( file.toPath(), Charset.forName( "UTF-8" ) );
+    }
+  }
@@ -0,0 +1,79 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HiveBucketHasher.
+ */
+public class HiveBucketHasherTest
+  {
+  @Test
+  public void testIntColumn()
+    {
+    HiveBucketHasher hasher = new HiveBucketHasher( new String[]{"int"}, 4 );
+    // Hive buckets ints by their value
+    assertEquals( 3, getBucket( hasher, 7 ) );
+    assertEquals( 0, getBucket( hasher, 8 ) );
+    assertEquals( 3, getBucket( hasher, -1 ) );
+    // values are converted to the column type first
+    assertEquals( 3, getBucket( hasher, "7" ) );
+    assertEquals( 3, getBucket( hasher, 7L ) );
+    assertEquals( 0, getBucket( hasher, (Object) null ) );
+    }
+
+  @Test
+  public void testStringColumns()
+    {
+    HiveBucketHasher hasher = new HiveBucketHasher( new String[]{"string"}, 4 );
+    // Hive hashes ASCII strings like String.hashCode()
+    assertEquals( 1, getBucket( hasher, "a" ) );
+    assertEquals( 2, getBucket( hasher, "b" ) );
+
+    HiveBucketHasher combined = new HiveBucketHasher( new String[]{"string", "int"}, 5 );
+    assertEquals( ( 31 * 97 + 2 ) % 5, getBucket( combined, "a", 2 ) );
+    }
+
+  @Test
+  public void testBucketFileName()
+    {
+    assertEquals( "000000_0", HiveBucketHasher.getBucketFileName( 0 ) );
+    assertEquals( "000012_0", HiveBucketHasher.getBucketFileName( 12 ) );
+    }
+
+  private int getBucket( HiveBucketHasher hasher, Object... values )
+    {
+    int[] positions = new int[ values.length ];
+    Comparable[] names = new Comparable[ values.length ];
+    for( int index = 0; index < values.length; index++ )
+      {
+      positions[ index ] = index;
+      names[ index ] = "column" + index;
+      }
+    return hasher.getBucket( new TupleEntry( new Fields( names ), new Tuple( values ) ), positions );
+    }
+  }
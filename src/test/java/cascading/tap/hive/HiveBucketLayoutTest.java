@@ -0,0 +1,157 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+
+import cascading.flow.hadoop.HadoopFlowProcess;
+import cascading.tap.SinkMode;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HiveBucketLayout and the bucket pruning of HiveTap, using an InMemoryMetaStore.
+ */
+public class HiveBucketLayoutTest
+  {
+  private static final String NAME = "HiveBucketLayoutTest";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private JobConf conf;
+
+  private HiveTableDescriptor descriptor;
+
+  @Before
+  public void setUp()
+    {
+    InMemoryMetaStore.getInstance( NAME );
+    conf = new JobConf();
+    conf.set( HiveConf.ConfVars.METASTOREURIS.varname, InMemoryMetaStore.URI_SCHEME + NAME );
+    conf.set( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, temporaryFolder.getRoot().getAbsolutePath() );
+    descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "bucketed",
+      new String[]{"key", "value"}, new String[]{"int", "string"}, new String[]{}, HiveStorageFormat.TEXT,
+      new String[]{"key"}, 4, null );
+    }
+
+  @After
+  public void tearDown()
+    {
+    InMemoryMetaStore.remove( NAME );
+    MetaStoreClientPool.getInstance().clear();
+    MetaStoreTableCache.getInstance().clear();
+    }
+
+  @Test
+  public void testGetBuckets()
+    {
+    HiveBucketLayout layout = new HiveBucketLayout( descriptor );
+    assertEquals( 3, layout.getBucket( 7 ) );
+
+    assertEquals( Arrays.asList( 3 ), list( layout.getBuckets( ColumnPredicate.equal( "KEY", 7 ) ) ) );
+    // values are converted to the type of the bucket column
+    assertEquals( Arrays.asList( 3 ), list( layout.getBuckets( ColumnPredicate.equal( "key", "7" ) ) ) );
+    assertEquals( Arrays.asList( 1, 2 ), list( layout.getBuckets( ColumnPredicate.in( "key", 5, 6, 9 ) ) ) );
+    assertEquals( Arrays.asList( 0, 1 ), list( layout.getBuckets(
+      ColumnPredicate.or( ColumnPredicate.equal( "key", 4 ), ColumnPredicate.equal( "key", 1 ) ) ) ) );
+    assertEquals( Arrays.asList( 1 ), list( layout.getBuckets( ColumnPredicate.and( ColumnPredicate.in( "key", 1, 2 ),
+      ColumnPredicate.equal( "value", "a" ), ColumnPredicate.in( "key", 1, 3 ) ) ) ) );
+    assertTrue( layout.getBuckets( ColumnPredicate.and( ColumnPredicate.equal( "key", 1 ),
+      ColumnPredicate.equal( "key", 2 ) ) ).isEmpty() );
+
+    // predicates, which do not restrict the bucket columns to a set of values, match all buckets
+    assertNull( layout.getBuckets( null ) );
+    assertNull( layout.getBuckets( ColumnPredicate.equal( "value", "a" ) ) );
+    assertNull( layout.getBuckets( ColumnPredicate.lessThan( "key", 3 ) ) );
+    assertNull( layout.getBuckets( ColumnPredicate.or( ColumnPredicate.equal( "key", 4 ),
+      ColumnPredicate.equal( "value", "a" ) ) ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTableNotBucketed()
+    {
+    new HiveBucketLayout( new HiveTableDescriptor( "other", new String[]{"key"}, new String[]{"string"} ) );
+    }
+
+  @Test
+  public void testReadSelectedBuckets() throws Exception
+    {
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme(), SinkMode.REPLACE, false );
+    assertTrue( tap.createResource( conf ) );
+    tap.getScheme().sinkConfInit( null, tap, conf );
+    TupleEntryCollector collector = tap.openForWrite( new HadoopFlowProcess( conf ), null );
+    Fields fields = tap.getScheme().getSinkFields();
+    for( int key = 0; key < 4; key++ )
+      collector.add( new TupleEntry( fields, new Tuple( key, "a" ) ) );
+    collector.close();
+
+    File table = new File( temporaryFolder.getRoot(), "bucketed" );
+    assertNull( tap.getSelectedBuckets() );
+
+    tap.setPredicate( ColumnPredicate.equal( "key", 7 ) );
+    assertEquals( Arrays.asList( "000003_0" ), names( tap.getInputPaths( conf ) ) );
+
+    tap.setBuckets( 1, 3 );
+    assertEquals( Arrays.asList( "000003_0" ), names( tap.getInputPaths( conf ) ) );
+
+    tap.setPredicate( null );
+    assertEquals( Arrays.asList( "000001_0", "000003_0" ), names( tap.getInputPaths( conf ) ) );
+
+    // directories without one file per bucket are read completely
+    assertTrue( new File( table, "000004_0" ).createNewFile() );
+    assertEquals( Arrays.asList( "bucketed" ), names( tap.getInputPaths( conf ) ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBucketOutOfRange()
+    {
+    new HiveTap( descriptor, descriptor.toScheme() ).setBuckets( 4 );
+    }
+
+  private List<Integer> list( SortedSet<Integer> buckets )
+    {
+    return Arrays.asList( buckets.toArray( new Integer[ buckets.size() ] ) );
+    }
+
+  private List<String> names( String[] paths )
+    {
+    String[] names = new String[ paths.length ];
+    for( int index = 0; index < paths.length; index++ )
+      names[ index ] = new Path( paths[ index ] ).getName();
+    return Arrays.asList( names );
+    }
+  }
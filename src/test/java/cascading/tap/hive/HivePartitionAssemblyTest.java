@@ -0,0 +1,194 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cascading.flow.Flow;
+import cascading.flow.hadoop.HadoopFlowConnector;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.scheme.hadoop.TextDelimited;
+import cascading.tap.SinkMode;
+import cascading.tap.hadoop.Hfs;
+import cascading.tuple.Fields;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HivePartitionAssembly, planning and running local flows against an InMemoryMetaStore.
+ */
+public class HivePartitionAssemblyTest
+  {
+  private static final String NAME = "HivePartitionAssemblyTest";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private HiveTableDescriptor descriptor;
+
+  private Map<Object, Object> properties;
+
+  @Before
+  public void setUp()
+    {
+    InMemoryMetaStore.getInstance( NAME );
+    descriptor = new HiveTableDescriptor( "partitioned", new String[]{"key", "value"}, new String[]{"string", "string"},
+      new String[]{"value"} );
+    properties = new HashMap<Object, Object>();
+    properties.put( HiveConf.ConfVars.METASTOREURIS.varname, InMemoryMetaStore.URI_SCHEME + NAME );
+    properties.put( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, temporaryFolder.getRoot().getAbsolutePath() + "/warehouse" );
+    properties.put( "mapred.reduce.tasks", "2" );
+    }
+
+  @After
+  public void tearDown()
+    {
+    InMemoryMetaStore.remove( NAME );
+    MetaStoreClientPool.getInstance().clear();
+    MetaStoreTableCache.getInstance().clear();
+    }
+
+  @Test
+  public void testGroupsByPartitionKeys()
+    {
+    HivePartitionAssembly assembly = new HivePartitionAssembly( new Pipe( "partitions" ), descriptor );
+
+    Pipe tail = assembly.getTails()[ 0 ];
+    assertTrue( tail instanceof GroupBy );
+    assertEquals( new Fields( "value" ), ( (GroupBy) tail ).getKeySelectors().get( "partitions" ) );
+    }
+
+  @Test
+  public void testMaxOpenWritersDefaultsToOne() throws IOException
+    {
+    assertEquals( "1", getStepConfig( plan() ).get( HivePartitionTap.MAX_OPEN_WRITERS ) );
+    }
+
+  @Test
+  public void testMaxOpenWritersConfiguredByUser() throws IOException
+    {
+    properties.put( HivePartitionTap.MAX_OPEN_WRITERS, "4" );
+    assertEquals( "4", getStepConfig( plan() ).get( HivePartitionTap.MAX_OPEN_WRITERS ) );
+    }
+
+  @Test
+  public void testOneFilePerPartition() throws IOException
+    {
+    plan().complete();
+
+    File table = new File( temporaryFolder.getRoot(), "warehouse/partitioned" );
+    for( String partition : new String[]{"value=a", "value=b", "value=c"} )
+      assertEquals( partition, 1, listDataFiles( new File( table, partition ) ).size() );
+
+    List<String> lines = new ArrayList<String>();
+    for( String partition : new String[]{"value=a", "value=b", "value=c"} )
+      {
+      for( File file : listDataFiles( new File( table, partition ) ) )
+        lines.addAll( Files.readAllLines( file.toPath(), Charset.forName( "UTF-8" ) ) );
+      }
+    assertEquals( 8, lines.size() );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTableNotPartitioned()
+    {
+    HiveTableDescriptor unpartitioned = new HiveTableDescriptor( "unpartitioned", new String[]{"key", "value"},
+      new String[]{"string", "string"} );
+    new HivePartitionAssembly( new Pipe( "partitions" ), unpartitioned );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidNumSalts()
+    {
+    new HivePartitionAssembly( new Pipe( "partitions" ), descriptor, 0 );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroHotFraction()
+    {
+    new HivePartitionAssembly( new Pipe( "partitions" ), descriptor, 2, 0 );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHotFractionAboveOne()
+    {
+    new HivePartitionAssembly( new Pipe( "partitions" ), descriptor, 2, 1.5 );
+    }
+
+  /**
+   * Plans a flow writing two input files, each containing all partitions, through a HivePartitionAssembly.
+   */
+  @SuppressWarnings("unchecked")
+  private Flow<JobConf> plan() throws IOException
+    {
+    File input = temporaryFolder.newFolder( "input" );
+    writeLines( new File( input, "first.txt" ), "1\ta", "2\tb", "3\tc", "4\ta" );
+    writeLines( new File( input, "second.txt" ), "5\tc", "6\tb", "7\ta", "8\tc" );
+
+    Hfs source = new Hfs( new TextDelimited( new Fields( "key", "value" ), "\t" ), input.getAbsolutePath() );
+    HivePartitionTap sink = new HivePartitionTap( new HiveTap( descriptor, descriptor.toScheme(), SinkMode.REPLACE, false ) );
+    Pipe pipe = new HivePartitionAssembly( new Pipe( "partitions" ), descriptor );
+
+    return new HadoopFlowConnector( properties ).connect( source, sink, pipe );
+    }
+
+  private JobConf getStepConfig( Flow<JobConf> flow )
+    {
+    assertEquals( 1, flow.getFlowSteps().size() );
+    return flow.getFlowSteps().get( 0 ).getConfig();
+    }
+
+  private void writeLines( File file, String... lines ) throws IOException
+    {
+    Files.write( file.toPath(), Arrays.asList( lines ), Charset.forName( "UTF-8" ) );
+    }
+
+  private List<File> listDataFiles( File directory )
+    {
+    File[] files = directory.listFiles( new FilenameFilter()
+    {
+    @Override
+    public boolean accept( File dir, String name )
+      {
+      return !name.startsWith( "." ) && !name.startsWith( "_" );
+      }
+    } );
+    assertNotNull( "missing directory " + directory, files );
+    return Arrays.asList( files );
+    }
+  }
@@ -0,0 +1,78 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import cascading.tuple.Tuple;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HivePartitionSampler.
+ */
+public class HivePartitionSamplerTest
+  {
+  @Test
+  public void testHotPartitionIsSalted()
+    {
+    HivePartitionSampler sampler = new HivePartitionSampler( 4, 0.1 );
+    Tuple hot = new Tuple( "2015-04-01" );
+    Set<Integer> hotSalts = new HashSet<Integer>();
+    Set<Integer> coldSalts = new HashSet<Integer>();
+    for( int index = 0; index < 10 * HivePartitionSampler.MIN_SAMPLE_SIZE; index++ )
+      {
+      if( index % 2 == 0 )
+        hotSalts.add( sampler.getSalt( hot ) );
+      else
+        coldSalts.add( sampler.getSalt( new Tuple( "2015-03-" + index % 30 ) ) );
+      }
+
+    assertEquals( 4, hotSalts.size() );
+    assertEquals( 1, coldSalts.size() );
+    assertTrue( coldSalts.contains( 0 ) );
+    }
+
+  @Test
+  public void testNoSaltsBeforeMinSampleSize()
+    {
+    HivePartitionSampler sampler = new HivePartitionSampler( 4, 0.1 );
+    for( int index = 0; index < HivePartitionSampler.MIN_SAMPLE_SIZE - 1; index++ )
+      assertEquals( 0, sampler.getSalt( new Tuple( "a" ) ) );
+    }
+
+  @Test
+  public void testPartitionIsCopied()
+    {
+    HivePartitionSampler sampler = new HivePartitionSampler( 2, 0.5 );
+    Tuple partition = new Tuple( "a" );
+    for( int index = 0; index < HivePartitionSampler.MIN_SAMPLE_SIZE; index++ )
+      sampler.getSalt( partition );
+    partition.set( 0, "b" );
+
+    // "a" is hot, while "b" has not been seen before
+    assertEquals( 0, sampler.getSalt( partition ) );
+    partition.set( 0, "a" );
+    assertEquals( 1, sampler.getSalt( partition ) );
+    }
+  }
@@ -21,12 +21,21 @@
 package cascading.tap.hive;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import cascading.flow.FlowProcess;
 import cascading.flow.hadoop.HadoopFlowProcess;
 import cascading.scheme.NullScheme;
 import cascading.tap.SinkMode;
+import cascading.tap.partition.BasePartitionTap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
 import cascading.tuple.TupleEntryCollector;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.OutputCollector;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -67,5 +76,70 @@ public class HivePartitionTapTest
     assertNotNull( partitionCollector );
     }
 
+  @Test
+  public void testEvictLeastRecentlyUsedWriters() throws Exception
+    {
+    assertEvictions( new JobConf(), 1 );
+    }
+
+  @Test
+  public void testMaxOpenWritersOverridesThreshold() throws Exception
+    {
+    JobConf conf = new JobConf();
+    conf.setInt( HivePartitionTap.MAX_OPEN_WRITERS, 1 );
+    assertEvictions( conf, BasePartitionTap.OPEN_WRITES_THRESHOLD_DEFAULT );
+    }
+
+  /**
+   * Writes the partitions key=1, key=2, key=1, key=3, key=1 allowing a single open writer.
+   */
+  private void assertEvictions( JobConf conf, int openWritesThreshold ) throws Exception
+    {
+    String name = "HivePartitionTapTest";
+    conf.set( HiveConf.ConfVars.METASTOREURIS.varname, InMemoryMetaStore.URI_SCHEME + name );
+    conf.set( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, "/warehouse" );
+    InMemoryMetaStore metaStore = InMemoryMetaStore.getInstance( name );
+    try
+      {
+      HiveTableDescriptor desc = new HiveTableDescriptor( "dual", new String[]{"val", "key"},
+        new String[]{"string", "int"},
+        new String[]{"key"} );
+      HivePartitionTap partitionTap = new HivePartitionTap( new HiveTap( desc, new NullScheme() ), SinkMode.UPDATE, openWritesThreshold );
+
+      FlowProcess process = Mockito.spy( new HadoopFlowProcess( conf ) );
+      TupleEntryCollector collector = partitionTap.openForWrite( process, null );
+      assertEquals( 1, partitionTap.getOpenWritesThreshold() );
+      Fields fields = new Fields( "val", "key" );
+      for( int key : new int[]{1, 2, 1, 3, 1} )
+        collector.add( new TupleEntry( fields, new Tuple( "a", key ) ) );
+
+      // only the writer of key=2 is closed, since key=1 has been used more recently
+      Mockito.verify( process, Mockito.times( 1 ) ).increment( HivePartitionTap.COUNTER_GROUP, HivePartitionTap.WRITERS_EVICTED, 1 );
+
+      // closing the collector does not count as eviction
+      collector.close();
+      Mockito.verify( process, Mockito.times( 1 ) ).increment( HivePartitionTap.COUNTER_GROUP, HivePartitionTap.WRITERS_EVICTED, 1 );
+      List<String> partitions = metaStore.createClient( "/warehouse", 0, 0f )
+        .listPartitionNames( desc.getDatabaseName(), desc.getTableName(), (short) -1 );
+      Collections.sort( partitions );
+      assertEquals( Arrays.asList( "key=1", "key=2", "key=3" ), partitions );
+      }
+    finally
+      {
+      InMemoryMetaStore.remove( name );
+      MetaStoreClientPool.getInstance().clear();
+      MetaStoreTableCache.getInstance().clear();
+      }
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMaxOpenWriters()
+    {
+    HiveTableDescriptor desc = new HiveTableDescriptor( "dual", new String[]{"key", "val"},
+      new String[]{"int", "string"},
+      new String[]{"key"} );
+    new HivePartitionTap( new HiveTap( desc, new NullScheme() ), SinkMode.UPDATE, 0 );
+    }
+
 
   }
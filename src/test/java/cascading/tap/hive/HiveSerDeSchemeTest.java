@@ -0,0 +1,147 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.hive.serde2.RegexSerDe;
+import org.apache.hadoop.hive.serde2.avro.AvroSerDe;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static cascading.tap.hive.SchemeTestUtils.read;
+import static cascading.tap.hive.SchemeTestUtils.write;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HiveSerDeScheme.
+ */
+public class HiveSerDeSchemeTest
+  {
+  private static final Fields FIELDS = new Fields( "host", "status", "bytes" );
+
+  private static final String[] TYPES = new String[]{"string", "int", "bigint"};
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testRegexSerDe() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    FileUtils.writeStringToFile( new File( directory, "access.log" ), "example.com 200 512\nexample.org 404 -\n" );
+
+    Map<String, String> parameters = Collections.singletonMap( "input.regex", "(\\S+) (\\d+) (\\d+|-)" );
+    List<Tuple> tuples = read( new HiveSerDeScheme( FIELDS, TYPES, RegexSerDe.class.getName(), parameters ), directory );
+    assertEquals( 2, tuples.size() );
+    assertEquals( new Tuple( "example.com", 200, 512L ), tuples.get( 0 ) );
+    // values, which cannot be converted, are null
+    assertEquals( new Tuple( "example.org", 404, null ), tuples.get( 1 ) );
+
+    tuples = read( new HiveSerDeScheme( FIELDS, TYPES, RegexSerDe.class.getName(), parameters, new Fields( "bytes", "host" ) ), directory );
+    assertEquals( new Tuple( 512L, "example.com" ), tuples.get( 0 ) );
+    }
+
+  @Test
+  public void testLazySimpleSerDeWithParameters() throws Exception
+    {
+    Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put( "field.delim", "|" );
+    parameters.put( "serialization.null.format", "NULL" );
+    HiveSerDeScheme scheme = new HiveSerDeScheme( FIELDS, TYPES, HiveTableDescriptor.HIVE_DEFAULT_SERIALIZATION_LIB_NAME, parameters );
+
+    File directory = temporaryFolder.newFolder();
+    write( scheme, directory, new Tuple( "a", 1, 2L ), new Tuple( "b", null, "3" ) );
+    assertEquals( "a|1|2\nb|NULL|3\n", FileUtils.readFileToString( new File( directory, "part-00000" ) ) );
+
+    List<Tuple> tuples = read( scheme, directory );
+    assertEquals( new Tuple( "a", 1, 2L ), tuples.get( 0 ) );
+    assertEquals( new Tuple( "b", null, 3L ), tuples.get( 1 ) );
+    }
+
+  @Test
+  public void testToScheme()
+    {
+    Map<String, String> parameters = Collections.singletonMap( "input.regex", "(\\S+) (\\d+) (\\d+)" );
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "logs",
+      new String[]{"host", "status", "bytes"}, TYPES, new String[]{}, RegexSerDe.class.getName(), parameters, null );
+
+    assertEquals( new HiveSerDeScheme( FIELDS, TYPES, RegexSerDe.class.getName(), parameters ), descriptor.toScheme() );
+    assertEquals( new HiveSerDeScheme( FIELDS, TYPES, RegexSerDe.class.getName(), parameters, new Fields( "host" ) ),
+      descriptor.toScheme( new Fields( "host" ) ) );
+    assertEquals( "(\\S+) (\\d+) (\\d+)", descriptor.toHiveTable().getSd().getSerdeInfo().getParameters().get( "input.regex" ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonTextSerDe()
+    {
+    new HiveSerDeScheme( FIELDS, TYPES, AvroSerDe.class.getName(), null );
+    }
+
+  @Test
+  public void testToSchemeRejectsNonTextSerDe()
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "events",
+      new String[]{"host", "status", "bytes"}, TYPES, new String[]{}, AvroSerDe.class.getName(), Collections.<String, String>emptyMap(), null );
+
+    try
+      {
+      descriptor.toScheme();
+      fail( "expected IllegalArgumentException" );
+      }
+    catch( IllegalArgumentException exception )
+      {
+      assertTrue( exception.getMessage().contains( AvroSerDe.class.getName() ) );
+      }
+
+    // the table is never registered with the input and output formats of text tables
+    try
+      {
+      descriptor.toHiveTable();
+      fail( "expected IllegalArgumentException" );
+      }
+    catch( IllegalArgumentException exception )
+      {
+      // expected
+      }
+    }
+
+  @Test
+  public void testUnknownSerDeIsText()
+    {
+    assertEquals( HiveStorageFormat.TEXT, HiveStorageFormat.forSerializationLib( RegexSerDe.class.getName() ) );
+    assertEquals( HiveStorageFormat.TEXT, HiveStorageFormat.forSerializationLib( "com.example.NotOnTheClasspathSerDe" ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingSerializationLib()
+    {
+    new HiveSerDeScheme( FIELDS, TYPES, null, null );
+    }
+  }
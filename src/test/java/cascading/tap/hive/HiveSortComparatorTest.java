@@ -0,0 +1,58 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HiveSortComparator.
+ */
+public class HiveSortComparatorTest
+  {
+  @Test
+  public void testAscending()
+    {
+    HiveSortComparator comparator = new HiveSortComparator( "int", false );
+    assertTrue( comparator.compare( 9, 10 ) < 0 );
+    // Strings are compared by their numeric value
+    assertTrue( comparator.compare( "9", "10" ) < 0 );
+    assertEquals( 0, comparator.compare( 10, "10" ) );
+    // null values come first
+    assertTrue( comparator.compare( null, -1 ) < 0 );
+
+    HiveSortComparator decimals = new HiveSortComparator( "decimal(10,2)", false );
+    assertTrue( decimals.compare( new BigDecimal( "1.50" ), new BigDecimal( "10" ) ) < 0 );
+    }
+
+  @Test
+  public void testDescending()
+    {
+    HiveSortComparator comparator = new HiveSortComparator( "string", true );
+    assertTrue( comparator.compare( "b", "a" ) < 0 );
+    assertTrue( comparator.compare( null, "a" ) > 0 );
+    assertEquals( new HiveSortComparator( "string", true ), comparator );
+    assertFalse( new HiveSortComparator( "string", false ).equals( comparator ) );
+    }
+  }
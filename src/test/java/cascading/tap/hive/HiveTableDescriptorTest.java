@@ -21,6 +21,9 @@
 
 package cascading.tap.hive;
 
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -29,7 +32,6 @@ import java.util.Map;
 import java.util.Set;
 
 import cascading.scheme.Scheme;
-import cascading.scheme.hadoop.TextDelimited;
 import cascading.tuple.Fields;
 import junit.framework.Assert;
 import org.apache.hadoop.fs.Path;
@@ -37,6 +39,7 @@ import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.MetaStoreUtils;
 import org.apache.hadoop.hive.metastore.TableType;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Order;
 import org.apache.hadoop.hive.metastore.api.SerDeInfo;
 import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
 import org.apache.hadoop.hive.metastore.api.Table;
@@ -44,6 +47,7 @@ import org.junit.Test;
 
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
@@ -144,6 +148,16 @@ public class HiveTableDescriptorTest
     assertEquals( new Fields( "one", "two" ), descriptor.toFields() );
     }
 
+  @Test
+  public void testToFieldsIsTyped()
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "mytable", new String[]{"a", "b", "c", "d", "e", "f", "g", "h"},
+      new String[]{"int", "bigint", "double", "boolean", "decimal(10,2)", "date", "timestamp", "array<string>"} );
+    Fields fields = descriptor.toFields();
+    assertArrayEquals( new Type[]{Integer.class, Long.class, Double.class, Boolean.class, BigDecimal.class,
+                                  java.sql.Date.class, Timestamp.class, Object.class}, fields.getTypes() );
+    }
+
 
   @Test
   public void testToSchemeWithDefaultDelimiter()
@@ -152,7 +166,7 @@ public class HiveTableDescriptorTest
       new String[]{"int", "string", "boolean"} );
     Scheme scheme = descriptor.toScheme();
     assertNotNull( scheme );
-    Assert.assertEquals( HiveTableDescriptor.HIVE_DEFAULT_DELIMITER, ( (TextDelimited) scheme ).getDelimiter() );
+    Assert.assertEquals( HiveTableDescriptor.HIVE_DEFAULT_DELIMITER, ( (HiveTextScheme) scheme ).getDelimiter() );
     }
 
   @Test
@@ -165,7 +179,25 @@ public class HiveTableDescriptorTest
       delim, HiveTableDescriptor.HIVE_DEFAULT_SERIALIZATION_LIB_NAME, null );
     Scheme scheme = descriptor.toScheme();
     assertNotNull( scheme );
-    Assert.assertEquals( delim, ( (TextDelimited) scheme ).getDelimiter() );
+    Assert.assertEquals( delim, ( (HiveTextScheme) scheme ).getDelimiter() );
+    }
+
+  @Test
+  public void testToSchemeWithEscape()
+    {
+    Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put( HiveTableDescriptor.ESCAPE_DELIM, "\\" );
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "mytable",
+      new String[]{"one", "two"}, new String[]{"int", "string"}, new String[]{},
+      HiveTableDescriptor.HIVE_DEFAULT_SERIALIZATION_LIB_NAME, parameters, null );
+    Fields fields = new Fields( "one", "two" );
+    assertEquals( new HiveTextScheme( fields, HiveTableDescriptor.HIVE_DEFAULT_DELIMITER, '\\', fields ), descriptor.toScheme() );
+
+    parameters.put( HiveTableDescriptor.ESCAPE_DELIM, "92" );
+    descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "mytable",
+      new String[]{"one", "two"}, new String[]{"int", "string"}, new String[]{},
+      HiveTableDescriptor.HIVE_DEFAULT_SERIALIZATION_LIB_NAME, parameters, null );
+    assertEquals( Character.valueOf( '\\' ), ( (HiveTextScheme) descriptor.toScheme() ).getEscape() );
     }
 
   @Test
@@ -195,7 +227,7 @@ public class HiveTableDescriptorTest
     );
     Scheme scheme = descriptor.toScheme();
     assertNotNull( scheme );
-    Assert.assertEquals( HiveTableDescriptor.HIVE_DEFAULT_DELIMITER, ( (TextDelimited) scheme ).getDelimiter() );
+    Assert.assertEquals( HiveTableDescriptor.HIVE_DEFAULT_DELIMITER, ( (HiveTextScheme) scheme ).getDelimiter() );
     }
 
   @Test
@@ -258,5 +290,96 @@ public class HiveTableDescriptorTest
 
     assertEquals( "file:/custom_path", descriptor.getLocation( "warehouse" ) );
     }
-  }
 
+  @Test
+  public void testToSchemeWithSourceFields()
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"one", "two", "three"},
+      new String[]{"int", "string", "boolean"}, new String[]{"three"} );
+
+    Scheme scheme = descriptor.toScheme( new Fields( "TWO", "three" ) );
+    assertEquals( new HiveTextScheme( new Fields( "one", "two" ), HiveTableDescriptor.HIVE_DEFAULT_DELIMITER,
+      new Fields( "two" ) ), scheme );
+    assertEquals( new Fields( "one", "two" ), scheme.getSinkFields() );
+    }
+
+  @Test
+  public void testToColumnarSchemeWithSourceFields()
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"one", "two", "three"}, new String[]{"int", "string", "boolean"}, new String[]{},
+      HiveStorageFormat.ORC, null );
+
+    assertEquals( new OrcScheme( new Fields( "one", "two", "three" ), new String[]{"int", "string", "boolean"},
+      new Fields( "three", "one" ) ), descriptor.toScheme( new Fields( "three", "one" ) ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testToSchemeWithUnknownSourceFields()
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"one", "two", "three"},
+      new String[]{"int", "string", "boolean"} );
+    descriptor.toScheme( new Fields( "four" ) );
+    }
+  
+  @Test
+  public void testBucketedTable()
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"one", "two", "three"}, new String[]{"int", "string", "boolean"}, new String[]{"one"},
+      HiveStorageFormat.ORC, new String[]{"THREE"}, 8, null );
+
+    assertTrue( descriptor.isBucketed() );
+    assertArrayEquals( new int[]{1}, descriptor.getBucketColumnPositions() );
+    assertArrayEquals( new String[]{"boolean"}, descriptor.getBucketColumnTypes() );
+
+    StorageDescriptor sd = descriptor.toHiveTable().getSd();
+    assertEquals( Arrays.asList( "THREE" ), sd.getBucketCols() );
+    assertEquals( 8, sd.getNumBuckets() );
+
+    HiveTableDescriptor other = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"one", "two", "three"}, new String[]{"int", "string", "boolean"}, new String[]{"one"},
+      HiveStorageFormat.ORC, new String[]{"three"}, 4, null );
+    assertFalse( descriptor.equals( other ) );
+    assertFalse( other.equals( new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"one", "two", "three"}, new String[]{"int", "string", "boolean"}, new String[]{"one"},
+      HiveStorageFormat.ORC, null ) ) );
+    assertFalse( new HiveTableDescriptor( "myTable", new String[]{"one"}, new String[]{"int"} ).isBucketed() );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPartitionKeyAsBucketColumn()
+    {
+    new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"one", "two"}, new String[]{"int", "string"}, new String[]{"two"},
+      HiveStorageFormat.TEXT, new String[]{"two"}, 4, null );
+    }
+  
+  @Test
+  public void testSortedBucketedTable()
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"one", "two", "three"}, new String[]{"int", "string", "boolean"}, new String[]{},
+      HiveStorageFormat.ORC, new String[]{"one"}, new String[]{"two DESC", " three asc "}, 4, null );
+
+    assertTrue( descriptor.isSorted() );
+    assertArrayEquals( new String[]{"two", "three"}, descriptor.getSortColumns() );
+    assertArrayEquals( new int[]{1, 2}, descriptor.getSortColumnPositions() );
+    assertArrayEquals( new String[]{"string", "boolean"}, descriptor.getSortColumnTypes() );
+    assertEquals( Arrays.asList( new Order( "two", 0 ), new Order( "three", 1 ) ), descriptor.toHiveTable().getSd().getSortCols() );
+
+    HiveTableDescriptor unsorted = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"one", "two", "three"}, new String[]{"int", "string", "boolean"}, new String[]{},
+      HiveStorageFormat.ORC, new String[]{"one"}, 4, null );
+    assertFalse( unsorted.isSorted() );
+    assertFalse( descriptor.equals( unsorted ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSortOrder()
+    {
+    new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"one", "two"}, new String[]{"int", "string"}, new String[]{},
+      HiveStorageFormat.TEXT, new String[]{"one"}, new String[]{"two sideways"}, 4, null );
+    }
+  }
@@ -0,0 +1,422 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import cascading.tap.SinkMode;
+import cascading.tuple.Fields;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Regression tests for the number of MetaStore round trips made by HiveTap, using an InMemoryMetaStore.
+ */
+public class HiveTapRoundTripTest
+  {
+  private static final String NAME = "HiveTapRoundTripTest";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private InMemoryMetaStore metaStore;
+
+  private Configuration conf;
+
+  @Before
+  public void setUp()
+    {
+    metaStore = InMemoryMetaStore.getInstance( NAME );
+    conf = new Configuration();
+    conf.set( HiveConf.ConfVars.METASTOREURIS.varname, InMemoryMetaStore.URI_SCHEME + NAME );
+    conf.set( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, "/warehouse" );
+    }
+
+  @After
+  public void tearDown()
+    {
+    InMemoryMetaStore.remove( NAME );
+    MetaStoreClientPool.getInstance().clear();
+    MetaStoreTableCache.getInstance().clear();
+    }
+
+  @Test
+  public void testResourceExistsIsCached() throws Exception
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"} );
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme() );
+
+    assertTrue( tap.createResource( conf ) );
+    assertEquals( 1, metaStore.getCallCount( "createTable" ) );
+    metaStore.resetCallCounts();
+
+    for( int i = 0; i < 10; i++ )
+      assertTrue( tap.resourceExists( conf ) );
+
+    assertEquals( 1, metaStore.getCallCount( "getTable" ) );
+    assertEquals( 1, metaStore.getCallCount() );
+    }
+
+  @Test
+  public void testRegisterPartitionsInBatches() throws Exception
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"}, new String[]{"value"} );
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme() );
+    conf.setInt( HiveTap.PARTITION_BATCH_SIZE, 2 );
+
+    tap.registerPartitions( conf, createPartitions( descriptor, "a", "b", "c" ) );
+
+    assertEquals( 1, metaStore.getCallCount( "createTable" ) );
+    assertEquals( 2, metaStore.getCallCount( "add_partitions" ) );
+    assertEquals( 3, metaStore.createClient( "/warehouse", 0, 0f )
+      .listPartitionNames( descriptor.getDatabaseName(), descriptor.getTableName(), (short) -1 ).size() );
+    }
+
+  @Test
+  public void testModifiedTime() throws Exception
+    {
+    conf.set( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, temporaryFolder.getRoot().getAbsolutePath() );
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"}, new String[]{"value"} );
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme() );
+    assertEquals( 0, tap.getModifiedTime( conf ) );
+
+    tap.registerPartitions( conf, createPartitions( descriptor, "a" ) );
+    long ddlTime = tap.getModifiedTime( conf );
+    assertTrue( ddlTime > 0 );
+
+    // newer data files are taken into account
+    File partitionDir = new File( temporaryFolder.getRoot(), "mytable/value=a" );
+    assertTrue( partitionDir.mkdirs() );
+    File file = new File( partitionDir, "part-00000" );
+    assertTrue( file.createNewFile() );
+    assertTrue( file.setLastModified( ddlTime + 3600 * 1000L ) );
+    assertTrue( partitionDir.setLastModified( ddlTime ) );
+    // hidden files are ignored
+    File hidden = new File( partitionDir, "_SUCCESS" );
+    assertTrue( hidden.createNewFile() );
+    assertTrue( hidden.setLastModified( ddlTime + 7200 * 1000L ) );
+    assertTrue( partitionDir.setLastModified( ddlTime ) );
+
+    // the modified time is cached per tap
+    metaStore.resetCallCounts();
+    assertEquals( ddlTime, tap.getModifiedTime( conf ) );
+    assertEquals( 0, metaStore.getCallCount() );
+
+    tap.registerPartitions( conf, createPartitions( descriptor, "b" ) );
+    assertEquals( ( ddlTime / 1000 + 3600 ) * 1000, tap.getModifiedTime( conf ) / 1000 * 1000 );
+
+    conf.setBoolean( HiveTap.MODIFIED_TIME_CHECK_FILES, false );
+    HiveTap other = new HiveTap( descriptor, descriptor.toScheme() );
+    assertTrue( other.getModifiedTime( conf ) < ddlTime + 3600 * 1000L );
+    }
+
+  @Test
+  public void testModifiedTimeReadsPartitionsInBatches() throws Exception
+    {
+    conf.set( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, temporaryFolder.getRoot().getAbsolutePath() );
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"}, new String[]{"value"} );
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme() );
+
+    // a partition located outside of the table location
+    File external = temporaryFolder.newFolder( "external" );
+    List<Partition> partitions = createPartitions( descriptor, "a", "b", "c" );
+    partitions.get( 2 ).setSd( new StorageDescriptor() );
+    partitions.get( 2 ).getSd().setLocation( external.toURI().toString() );
+    tap.registerPartitions( conf, partitions );
+
+    conf.setInt( HiveTap.PARTITION_BATCH_SIZE, 2 );
+    metaStore.resetCallCounts();
+    long ddlTime = tap.getModifiedTime( conf );
+    assertTrue( ddlTime > 0 );
+    assertEquals( 1, metaStore.getCallCount( "listPartitionNames" ) );
+    assertEquals( 2, metaStore.getCallCount( "getPartitionsByNames" ) );
+    assertEquals( 0, metaStore.getCallCount( "listPartitions" ) );
+
+    File file = new File( external, "part-00000" );
+    assertTrue( file.createNewFile() );
+    assertTrue( file.setLastModified( ddlTime + 3600 * 1000L ) );
+    assertTrue( external.setLastModified( ddlTime ) );
+    assertEquals( ( ddlTime + 3600 * 1000L ) / 1000 * 1000, new HiveTap( descriptor, descriptor.toScheme() ).getModifiedTime( conf ) / 1000 * 1000 );
+
+    conf.setBoolean( HiveTap.MODIFIED_TIME_CHECK_FILES, false );
+    assertTrue( new HiveTap( descriptor, descriptor.toScheme() ).getModifiedTime( conf ) < ddlTime + 3600 * 1000L );
+    }
+
+  @Test
+  public void testModifiedTimeOfAppendToExistingPartition() throws Exception
+    {
+    conf.set( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, temporaryFolder.getRoot().getAbsolutePath() );
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"}, new String[]{"value"} );
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme() );
+
+    File partitionDir = new File( temporaryFolder.getRoot(), "mytable/value=a" );
+    assertTrue( partitionDir.mkdirs() );
+    assertTrue( new File( partitionDir, "part-00000" ).createNewFile() );
+    tap.registerPartitions( conf, createPartitions( descriptor, "a" ) );
+    long before = tap.getModifiedTime( conf );
+    assertTrue( before > 0 );
+
+    // a later flow appends to the existing partition, which keeps its DDL time
+    File file = new File( partitionDir, "part-00001" );
+    assertTrue( file.createNewFile() );
+    assertTrue( file.setLastModified( before + 3600 * 1000L ) );
+    assertTrue( partitionDir.setLastModified( before + 3600 * 1000L ) );
+    metaStore.resetCallCounts();
+    tap.registerPartitions( conf, createPartitions( descriptor, "a" ) );
+    assertEquals( 0, metaStore.getCallCount( "createTable" ) );
+
+    long after = ( before + 3600 * 1000L ) / 1000 * 1000;
+    assertEquals( after, tap.getModifiedTime( conf ) / 1000 * 1000 );
+    assertEquals( after, new HiveTap( descriptor, descriptor.toScheme() ).getModifiedTime( conf ) / 1000 * 1000 );
+    }
+
+  @Test
+  public void testModifiedTimeIgnoresTableCache() throws Exception
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"} );
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme() );
+    assertTrue( tap.createResource( conf ) );
+    assertTrue( tap.resourceExists( conf ) );
+
+    // the table is cached by now, but a changed DDL time must not be missed
+    metaStore.resetCallCounts();
+    assertTrue( new HiveTap( descriptor, descriptor.toScheme() ).getModifiedTime( conf ) > 0 );
+    assertEquals( 1, metaStore.getCallCount( "getTable" ) );
+    }
+
+  @Test
+  public void testPartitionFilter() throws Exception
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"}, new String[]{"value"} );
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme() );
+    tap.registerPartitions( conf, createPartitions( descriptor, "a", "b", "c" ) );
+
+    tap.setPartitionFilter( "value > \"a\"" );
+    metaStore.resetCallCounts();
+    String[] paths = tap.getPartitionPaths( conf, false );
+    assertArrayEquals( new String[]{"/warehouse/mytable/value=b", "/warehouse/mytable/value=c"}, paths );
+    assertEquals( 1, metaStore.getCallCount() );
+
+    tap.setPartitionFilter( "value = \"d\"" );
+    try
+      {
+      tap.getPartitionPaths( conf, false );
+      fail( "expected IOException" );
+      }
+    catch( IOException exception )
+      {
+      // expected
+      }
+    }
+
+  @Test
+  public void testMetaStorePartitionListing() throws Exception
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"}, new String[]{"value"} );
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme() );
+    List<Partition> partitions = createPartitions( descriptor, "a", "b" );
+    partitions.get( 1 ).setSd( descriptor.toHiveTable().getSd() );
+    partitions.get( 1 ).getSd().setLocation( "/custom/b" );
+    tap.registerPartitions( conf, partitions );
+
+    assertFalse( tap.isListingPartitionsFromMetaStore( conf ) );
+    conf.setBoolean( HiveTap.METASTORE_PARTITION_LISTING_ENABLED, true );
+    assertTrue( tap.isListingPartitionsFromMetaStore( conf ) );
+
+    metaStore.resetCallCounts();
+    String[] paths = tap.getPartitionPaths( conf, false );
+    assertArrayEquals( new String[]{"/warehouse/mytable/value=a", "/custom/b"}, paths );
+    assertEquals( 1, metaStore.getCallCount( "listPartitions" ) );
+    assertEquals( 1, metaStore.getCallCount() );
+    }
+
+  @Test
+  public void testPredicateIsPushedIntoScheme()
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"key", "value"}, new String[]{"string", "int"}, new String[]{}, HiveStorageFormat.ORC, null );
+    HiveTap tap = new HiveTap( descriptor, new Fields( "key" ) );
+    tap.setPredicate( ColumnPredicate.lessThan( "value", 10 ) );
+    assertEquals( ColumnPredicate.lessThan( "value", 10 ), tap.getPredicate() );
+
+    JobConf jobConf = new JobConf( conf );
+    tap.getScheme().sourceConfInit( null, tap, jobConf );
+    assertNotNull( jobConf.get( HiveColumnarScheme.SARG_PUSHDOWN ) );
+    // the predicate column is read as well
+    assertEquals( "key,value", jobConf.get( ColumnProjectionUtils.READ_COLUMN_NAMES_CONF_STR ) );
+
+    HiveTap textTap = new HiveTap( new HiveTableDescriptor( "other", new String[]{"key"}, new String[]{"string"} ), new Fields( "key" ) );
+    textTap.setPredicate( ColumnPredicate.equal( "key", "a" ) );
+    assertNull( textTap.getPredicate() );
+    }
+
+  @Test
+  public void testPublishOnlyManifestsOfOwnWrite() throws Exception
+    {
+    File warehouse = temporaryFolder.newFolder( "warehouse" );
+    conf.set( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, warehouse.getAbsolutePath() );
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"}, new String[]{"value"} );
+    HiveTap first = new HiveTap( descriptor, descriptor.toScheme() );
+    HiveTap second = new HiveTap( descriptor, descriptor.toScheme() );
+    assertTrue( first.createResource( conf ) );
+    assertTrue( second.resourceExists( conf ) );
+
+    JobConf firstConf = new JobConf( conf );
+    first.preparePartitionManifests( firstConf );
+    first.writePartitionManifest( firstConf, Arrays.asList( "value=a/" ) );
+
+    // an attempt, which is never committed, writes to its work output path only
+    JobConf attemptConf = new JobConf( firstConf );
+    FileOutputFormat.setWorkOutputPath( attemptConf, new Path( temporaryFolder.newFolder( "attempt" ).getAbsolutePath() ) );
+    first.writePartitionManifest( attemptConf, Arrays.asList( "value=c/" ) );
+
+    JobConf secondConf = new JobConf( conf );
+    second.preparePartitionManifests( secondConf );
+    second.writePartitionManifest( secondConf, Arrays.asList( "value=b/" ) );
+
+    assertTrue( first.commitResource( conf ) );
+    IMetaStoreClient client = metaStore.createClient( warehouse.getAbsolutePath(), 0, 0f );
+    assertEquals( Arrays.asList( "value=a" ), client.listPartitionNames( "default", "mytable", (short) -1 ) );
+
+    // the manifests of the concurrent write are left alone
+    File manifests = new File( warehouse, "mytable/" + HiveTap.PARTITION_MANIFESTS_DIR );
+    assertEquals( 1, manifests.list().length );
+
+    assertTrue( second.commitResource( conf ) );
+    assertEquals( Arrays.asList( "value=a", "value=b" ), client.listPartitionNames( "default", "mytable", (short) -1 ) );
+    assertFalse( manifests.exists() );
+    }
+
+  @Test
+  public void testRollbackDiscardsManifests() throws Exception
+    {
+    File warehouse = temporaryFolder.newFolder( "warehouse" );
+    conf.set( HiveConf.ConfVars.METASTOREWAREHOUSE.varname, warehouse.getAbsolutePath() );
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( "myTable", new String[]{"key", "value"},
+      new String[]{"string", "string"}, new String[]{"value"} );
+    HiveTap tap = new HiveTap( descriptor, descriptor.toScheme() );
+    assertTrue( tap.createResource( conf ) );
+
+    JobConf jobConf = new JobConf( conf );
+    tap.preparePartitionManifests( jobConf );
+    tap.writePartitionManifest( jobConf, Arrays.asList( "value=a/" ) );
+    assertTrue( tap.rollbackResource( conf ) );
+    assertFalse( new File( warehouse, "mytable/" + HiveTap.PARTITION_MANIFESTS_DIR ).exists() );
+
+    assertTrue( tap.commitResource( conf ) );
+    IMetaStoreClient client = metaStore.createClient( warehouse.getAbsolutePath(), 0, 0f );
+    assertTrue( client.listPartitionNames( "default", "mytable", (short) -1 ).isEmpty() );
+    }
+
+  @Test
+  public void testResolveAllKeepsMetaStoreAndMissingTables() throws Exception
+    {
+    HiveTableDescriptor existing = new HiveTableDescriptor( "existing", new String[]{"key"}, new String[]{"string"} );
+    HiveTableDescriptor missing = new HiveTableDescriptor( "missing", new String[]{"key"}, new String[]{"string"} );
+    assertTrue( new HiveTap( existing, existing.toScheme() ).createResource( conf ) );
+    MetaStoreTableCache.getInstance().clear();
+    metaStore.resetCallCounts();
+
+    Map<HiveTableDescriptor, HiveTap> taps = HiveTaps.resolveAll( conf, Arrays.asList( existing, missing ) );
+    assertEquals( 1, metaStore.getCallCount( "getTableObjectsByName" ) );
+
+    // the taps use the MetaStore given to resolveAll, even if later calls do not name it
+    assertTrue( taps.get( existing ).resourceExists( new Configuration() ) );
+    assertFalse( taps.get( missing ).resourceExists( new Configuration() ) );
+    assertEquals( 1, metaStore.getCallCount() );
+    }
+
+  @Test
+  public void testResolveAllWithTapFactory() throws Exception
+    {
+    HiveTableDescriptor existing = new HiveTableDescriptor( "existing", new String[]{"key", "value"},
+      new String[]{"string", "string"}, new String[]{"value"} );
+    assertTrue( new HiveTap( existing, existing.toScheme() ).createResource( conf ) );
+    MetaStoreTableCache.getInstance().clear();
+    metaStore.resetCallCounts();
+
+    Map<HiveTableDescriptor, HiveTap> taps = HiveTaps.resolveAll( conf, Arrays.asList( existing ), new HiveTaps.TapFactory()
+    {
+    @Override
+    public HiveTap createTap( HiveTableDescriptor descriptor )
+      {
+      return new HiveTap( descriptor, descriptor.toScheme(), SinkMode.REPLACE, true );
+      }
+    } );
+
+    HiveTap tap = taps.get( existing );
+    assertEquals( SinkMode.REPLACE, tap.getSinkMode() );
+    assertTrue( tap.resourceExists( new Configuration() ) );
+    assertEquals( 1, metaStore.getCallCount() );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testResolveAllRejectsTapOfOtherTable() throws Exception
+    {
+    final HiveTableDescriptor other = new HiveTableDescriptor( "other", new String[]{"key"}, new String[]{"string"} );
+    HiveTableDescriptor existing = new HiveTableDescriptor( "existing", new String[]{"key"}, new String[]{"string"} );
+    HiveTaps.resolveAll( conf, Arrays.asList( existing ), new HiveTaps.TapFactory()
+    {
+    @Override
+    public HiveTap createTap( HiveTableDescriptor descriptor )
+      {
+      return new HiveTap( other, other.toScheme() );
+      }
+    } );
+    }
+
+  private List<Partition> createPartitions( HiveTableDescriptor descriptor, String... values )
+    {
+    List<Partition> partitions = new ArrayList<Partition>();
+    for( String value : values )
+      partitions.add( new Partition( Arrays.asList( value ), descriptor.getDatabaseName(), descriptor.getTableName(),
+        0, 0, null, null ) );
+    return partitions;
+    }
+  }
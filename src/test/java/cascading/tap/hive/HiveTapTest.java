@@ -21,8 +21,10 @@
 package cascading.tap.hive;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 import cascading.HiveTestCase;
 import cascading.scheme.NullScheme;
@@ -196,6 +198,53 @@ public class HiveTapTest extends HiveTestCase
 
     }
 
+  @Test
+  public void testRegisterPartitions() throws Exception
+    {
+    HiveTableDescriptor desc = new HiveTableDescriptor( "myTable10", new String[]{"one", "two"},
+      new String[]{"string", "string"}, new String[]{"two"} );
+    HiveTap tap = new HiveTap( desc, new NullScheme() );
+    JobConf conf = new JobConf();
+    conf.setInt( HiveTap.PARTITION_BATCH_SIZE, 2 );
+    int now = (int) ( System.currentTimeMillis() / 1000 );
+
+    tap.registerPartition( conf, new Partition( Arrays.asList( "1" ), desc.getDatabaseName(),
+      desc.getTableName(), now, now, desc.toHiveTable().getSd(), new HashMap<String, String>() ) );
+
+    List<Partition> partitions = new ArrayList<Partition>();
+    for( int index = 1; index <= 5; index++ )
+      partitions.add( new Partition( Arrays.asList( String.valueOf( index ) ), desc.getDatabaseName(),
+        desc.getTableName(), now, now, desc.toHiveTable().getSd(), new HashMap<String, String>() ) );
+
+    // the already existing partition "1" must be ignored
+    tap.registerPartitions( conf, partitions );
+
+    IMetaStoreClient client = createMetaStoreClient();
+    assertEquals( 5, client.listPartitions( desc.getDatabaseName(), desc.getTableName(), (short) -1 ).size() );
+    client.close();
+    }
+
+  @Test
+  public void testCommitResourcePublishesPartitionManifests() throws Exception
+    {
+    HiveTableDescriptor desc = new HiveTableDescriptor( "myTable11", new String[]{"one", "two"},
+      new String[]{"string", "string"}, new String[]{"two"} );
+    HiveTap tap = new HiveTap( desc, new NullScheme() );
+    JobConf conf = new JobConf();
+    tap.preparePartitionManifests( conf );
+
+    tap.writePartitionManifest( conf, Arrays.asList( "two=1/", "two=2/" ) );
+    tap.writePartitionManifest( conf, Arrays.asList( "two=2/", "two=3/" ) );
+    tap.commitResource( conf );
+
+    IMetaStoreClient client = createMetaStoreClient();
+    assertEquals( 3, client.listPartitions( desc.getDatabaseName(), desc.getTableName(), (short) -1 ).size() );
+    client.close();
+
+    Path manifests = new Path( tap.getPath(), HiveTap.PARTITION_MANIFESTS_DIR );
+    assertFalse( manifests.getFileSystem( conf ).exists( manifests ) );
+    }
+
   @Test
   public void testGetPathWithExistingTableInDifferentLocation()
     {
@@ -206,6 +255,18 @@ public class HiveTapTest extends HiveTestCase
     assertEquals( "file:/tmp/myLocation", tap.getPath().toString() );
     }
 
+  @Test
+  public void testLocationIsResolvedLazily()
+    {
+    HiveTableDescriptor desc = new HiveTableDescriptor( "myTable12", new String[]{"one", "two"},
+      new String[]{"string", "string"} );
+    HiveTap tap = new HiveTap( desc, new NullScheme() );
+    // the table is created after the tap, but before the path is used for the first time
+    runHiveQuery( "create table myTable12 (one string, two string) location '/tmp/myLazyLocation'" );
+    assertEquals( "file:/tmp/myLazyLocation", tap.getPath().toString() );
+    assertEquals( tap, new HiveTap( desc, new NullScheme() ) );
+    }
+
   private void assertTableExists( HiveTableDescriptor descriptor ) throws Exception
     {
     IMetaStoreClient client = createMetaStoreClient();
@@ -0,0 +1,58 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import cascading.HiveTestCase;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.Test;
+
+/**
+ * Tests for HiveTaps.
+ */
+public class HiveTapsTest extends HiveTestCase
+  {
+  @Test
+  public void testResolveAll() throws Exception
+    {
+    runHiveQuery( "create table resolveOne (one string, two string) location '/tmp/resolveOne'" );
+    runHiveQuery( "create table resolveTwo (one string, two string) location '/tmp/resolveTwo'" );
+
+    HiveTableDescriptor one = new HiveTableDescriptor( "resolveOne", new String[]{"one", "two"},
+      new String[]{"string", "string"} );
+    HiveTableDescriptor two = new HiveTableDescriptor( "resolveTwo", new String[]{"one", "two"},
+      new String[]{"string", "string"} );
+    HiveTableDescriptor missing = new HiveTableDescriptor( "resolveDb", "resolveMissing", new String[]{"one", "two"},
+      new String[]{"string", "string"} );
+
+    Map<HiveTableDescriptor, HiveTap> taps = HiveTaps.resolveAll( Arrays.asList( one, two, missing ) );
+
+    assertEquals( 3, taps.size() );
+    assertEquals( "file:/tmp/resolveOne", taps.get( one ).getPath().toString() );
+    assertEquals( "file:/tmp/resolveTwo", taps.get( two ).getPath().toString() );
+    assertEquals( missing.getLocation( HIVE_WAREHOUSE_DIR ), taps.get( missing ).getPath().toString() );
+
+    assertTrue( taps.get( one ).resourceExists( new JobConf() ) );
+    assertFalse( taps.get( missing ).resourceExists( new JobConf() ) );
+    }
+  }
@@ -0,0 +1,82 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HiveTextParser.
+ */
+public class HiveTextParserTest
+  {
+  @Test
+  public void testIntegralNumbers() throws Exception
+    {
+    assertEquals( 42, parse( "42", Integer.class ) );
+    assertEquals( -42, parse( "-42", Integer.class ) );
+    assertEquals( 42, parse( "+42", Integer.class ) );
+    assertEquals( Integer.MIN_VALUE, parse( "-2147483648", Integer.class ) );
+    assertEquals( Long.MAX_VALUE, parse( "9223372036854775807", Long.class ) );
+    assertEquals( (short) 7, parse( "7", Short.class ) );
+    // fractions are truncated like in Hive
+    assertEquals( 3L, parse( "3.99", Long.class ) );
+
+    assertNull( parse( "2147483648", Integer.class ) );
+    assertNull( parse( "128", Byte.class ) );
+    assertNull( parse( "", Integer.class ) );
+    assertNull( parse( "-", Integer.class ) );
+    assertNull( parse( "1a", Long.class ) );
+    assertNull( parse( "1.x", Long.class ) );
+    }
+
+  @Test
+  public void testOtherTypes() throws Exception
+    {
+    assertEquals( Boolean.TRUE, parse( "True", Boolean.class ) );
+    assertEquals( Boolean.FALSE, parse( "false", Boolean.class ) );
+    assertNull( parse( "1", Boolean.class ) );
+    assertEquals( 1.5d, parse( "1.5", Double.class ) );
+    assertEquals( new BigDecimal( "12.34" ), parse( "12.34", BigDecimal.class ) );
+    assertEquals( Timestamp.valueOf( "2015-03-01 12:00:00" ), parse( "2015-03-01 12:00:00", Timestamp.class ) );
+    assertNull( parse( "yesterday", Timestamp.class ) );
+    assertEquals( "\u00e4", parse( "\u00e4", String.class ) );
+    assertEquals( "12", parse( "12", null ) );
+    }
+
+  @Test
+  public void testOffsets() throws Exception
+    {
+    byte[] bytes = "a|123|b".getBytes( Charset.forName( "UTF-8" ) );
+    assertEquals( 123, HiveTextParser.parse( bytes, 2, 5, Integer.class ) );
+    }
+
+  private static Object parse( String value, Class<?> type ) throws Exception
+    {
+    byte[] bytes = value.getBytes( Charset.forName( "UTF-8" ) );
+    return HiveTextParser.parse( bytes, 0, bytes.length, type );
+    }
+  }
@@ -0,0 +1,129 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static cascading.tap.hive.SchemeTestUtils.read;
+import static cascading.tap.hive.SchemeTestUtils.write;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HiveTextScheme.
+ */
+public class HiveTextSchemeTest
+  {
+  private static final Fields FIELDS = new Fields( "one", "two", "three", "four" );
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testWriteAndRead() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    write( new HiveTextScheme( FIELDS, "\1" ), directory, new Tuple( "a", 1, null, "d" ) );
+
+    assertEquals( "a\u00011\u0001\\N\u0001d\n", FileUtils.readFileToString( new File( directory, "part-00000" ) ) );
+
+    List<Tuple> tuples = read( new HiveTextScheme( FIELDS, "\1" ), directory );
+    assertEquals( 1, tuples.size() );
+    assertEquals( new Tuple( "a", "1", null, "d" ), tuples.get( 0 ) );
+    }
+
+  @Test
+  public void testColumnProjection() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    FileUtils.writeStringToFile( new File( directory, "data.txt" ), "a,b,c,d\ne,f\n,,,\n" );
+
+    List<Tuple> tuples = read( new HiveTextScheme( FIELDS, ",", new Fields( "three", "one" ) ), directory );
+    assertEquals( 3, tuples.size() );
+    assertEquals( new Tuple( "c", "a" ), tuples.get( 0 ) );
+    // missing trailing columns are null
+    assertEquals( new Tuple( null, "e" ), tuples.get( 1 ) );
+    assertEquals( new Tuple( "", "" ), tuples.get( 2 ) );
+    }
+
+  @Test
+  public void testTypedFields() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    FileUtils.writeStringToFile( new File( directory, "data.txt" ), "1\u00012.5\u0001TRUE\u00012015-03-01\n"
+      + "x\u0001\\N\u0001yes\u0001\n" );
+
+    Fields fields = new Fields( new Comparable[]{"one", "two", "three", "four"},
+      new Type[]{Integer.class, Double.class, Boolean.class, java.sql.Date.class} );
+    List<Tuple> tuples = read( new HiveTextScheme( fields, "\1" ), directory );
+    assertEquals( new Tuple( 1, 2.5d, true, java.sql.Date.valueOf( "2015-03-01" ) ), tuples.get( 0 ) );
+    // unparseable values are null
+    assertEquals( new Tuple( null, null, null, null ), tuples.get( 1 ) );
+    }
+
+  @Test
+  public void testEscapedDelimiters() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    FileUtils.writeStringToFile( new File( directory, "data.txt" ), "a\\,b,c\\\\,d\n\\N,e\\\n" );
+
+    List<Tuple> tuples = read( new HiveTextScheme( FIELDS, ",", '\\', FIELDS ), directory );
+    assertEquals( new Tuple( "a,b", "c\\", "d", null ), tuples.get( 0 ) );
+    // a trailing escape character is kept
+    assertEquals( new Tuple( null, "e\\", null, null ), tuples.get( 1 ) );
+    }
+
+  @Test
+  public void testWriteAndReadEscaped() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    HiveTextScheme scheme = new HiveTextScheme( FIELDS, ",", '\\', FIELDS );
+    write( scheme, directory, new Tuple( "a,b", "c\\", 1L, null ) );
+
+    assertEquals( "a\\,b,c\\\\,1,\\N\n", FileUtils.readFileToString( new File( directory, "part-00000" ) ) );
+    assertEquals( new Tuple( "a,b", "c\\", "1", null ), read( scheme, directory ).get( 0 ) );
+    }
+
+  @Test
+  public void testMultiByteDelimiter() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    FileUtils.writeStringToFile( new File( directory, "data.txt" ), "a::b:c::::d\n" );
+
+    List<Tuple> tuples = read( new HiveTextScheme( FIELDS, "::" ), directory );
+    assertEquals( new Tuple( "a", "b:c", "", "d" ), tuples.get( 0 ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownSourceFields()
+    {
+    new HiveTextScheme( FIELDS, ",", new Fields( "five" ) );
+    }
+  }
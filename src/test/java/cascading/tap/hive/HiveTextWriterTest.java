@@ -0,0 +1,82 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HiveTextWriter.
+ */
+public class HiveTextWriterTest
+  {
+  @Test
+  public void testPrimitives()
+    {
+    assertEquals( "0|-1|2147483647|-9223372036854775808|7|true|false|\\N",
+      write( new HiveTextWriter( "|", null ), 0, -1, Integer.MAX_VALUE, Long.MIN_VALUE, (short) 7, true, false, null ) );
+    assertEquals( "1.5|1000|2015-03-01|AQI=",
+      write( new HiveTextWriter( "|", null ), 1.5d, new BigDecimal( "1E+3" ), Date.valueOf( "2015-03-01" ), new byte[]{1, 2} ) );
+    }
+
+  @Test
+  public void testStrings()
+    {
+    String value = "a\u00e4\u20ac\ud83d\ude00";
+    assertEquals( value + "\u0001b", write( new HiveTextWriter( "\u0001", null ), value, "b" ) );
+    // unpaired surrogates are replaced
+    assertEquals( "?", write( new HiveTextWriter( "\u0001", null ), "\ud83d" ) );
+    }
+
+  @Test
+  public void testEscaping()
+    {
+    assertEquals( "a\\,b,c\\\\", write( new HiveTextWriter( ",", '\\' ), "a,b", "c\\" ) );
+    // without an escape character, values are written as is
+    assertEquals( "a,b,c\\", write( new HiveTextWriter( ",", null ), "a,b", "c\\" ) );
+    }
+
+  @Test
+  public void testBufferIsReused()
+    {
+    HiveTextWriter writer = new HiveTextWriter( ",", null );
+    StringBuilder builder = new StringBuilder();
+    for( int index = 0; index < 1000; index++ )
+      builder.append( 'x' );
+    assertEquals( builder.toString(), write( writer, builder.toString() ) );
+    assertEquals( "1,2", write( writer, 1, 2 ) );
+    }
+
+  private static String write( HiveTextWriter writer, Object... values )
+    {
+    writer.reset();
+    for( Object value : values )
+      writer.append( value );
+    Text text = new Text();
+    writer.writeTo( text );
+    return text.toString();
+    }
+  }
@@ -0,0 +1,201 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.AlreadyExistsException;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for InMemoryMetaStore.
+ */
+public class InMemoryMetaStoreTest
+  {
+  private static final String NAME = "InMemoryMetaStoreTest";
+
+  @After
+  public void tearDown()
+    {
+    InMemoryMetaStore.remove( NAME );
+    MetaStoreClientPool.getInstance().clear();
+    }
+
+  @Test
+  public void testTables() throws Exception
+    {
+    IMetaStoreClient client = createClient( 0f );
+    Table table = createTable( "myTable", "key" );
+    client.createTable( table );
+
+    assertTrue( client.tableExists( "default", "MYTABLE" ) );
+    Table stored = client.getTable( "default", "mytable" );
+    assertEquals( "/warehouse/mytable", stored.getSd().getLocation() );
+    assertNotNull( stored.getParameters().get( "transient_lastDdlTime" ) );
+    assertEquals( Arrays.asList( "default" ), client.getAllDatabases() );
+
+    try
+      {
+      client.createTable( table );
+      fail( "expected AlreadyExistsException" );
+      }
+    catch( AlreadyExistsException exception )
+      {
+      // expected
+      }
+
+    client.dropTable( "default", "mytable" );
+    try
+      {
+      client.getTable( "default", "mytable" );
+      fail( "expected NoSuchObjectException" );
+      }
+    catch( NoSuchObjectException exception )
+      {
+      // expected
+      }
+    }
+
+  @Test
+  public void testPartitions() throws Exception
+    {
+    IMetaStoreClient client = createClient( 0f );
+    Table table = createTable( "myTable", "key" );
+    client.createTable( table );
+    table = client.getTable( "default", "mytable" );
+
+    List<Partition> partitions = new ArrayList<Partition>();
+    partitions.add( createPartition( table, "a" ) );
+    partitions.add( createPartition( table, "b" ) );
+    client.add_partitions( partitions, true, false );
+    // existing partitions are skipped
+    client.add_partitions( partitions, true, false );
+
+    assertEquals( Arrays.asList( "key=a", "key=b" ), client.listPartitionNames( "default", "mytable", (short) -1 ) );
+    assertEquals( "/warehouse/mytable/key=b", client.getPartition( "default", "mytable", Arrays.asList( "b" ) ).getSd().getLocation() );
+
+    try
+      {
+      client.add_partitions( partitions, false, false );
+      fail( "expected AlreadyExistsException" );
+      }
+    catch( AlreadyExistsException exception )
+      {
+      // expected
+      }
+    }
+
+  @Test
+  public void testListPartitionsByFilter() throws Exception
+    {
+    IMetaStoreClient client = createClient( 0f );
+    Table table = createTable( "myTable", "key" );
+    client.createTable( table );
+    table = client.getTable( "default", "mytable" );
+
+    List<Partition> partitions = new ArrayList<Partition>();
+    for( String value : new String[]{"1", "2", "10"} )
+      partitions.add( createPartition( table, value ) );
+    client.add_partitions( partitions );
+
+    assertEquals( 1, client.listPartitionsByFilter( "default", "mytable", "key = \"2\"", (short) -1 ).size() );
+    assertEquals( 2, client.listPartitionsByFilter( "default", "mytable", "key = \"1\" or key = \"10\"", (short) -1 ).size() );
+    assertEquals( 2, client.listPartitionsByFilter( "default", "mytable", "key > 1", (short) -1 ).size() );
+    assertEquals( 0, client.listPartitionsByFilter( "default", "mytable", "key > 1 and key < 2", (short) -1 ).size() );
+    assertEquals( 3, client.listPartitionsByFilter( "default", "mytable", "", (short) -1 ).size() );
+    }
+
+  @Test
+  public void testCallCounts() throws Exception
+    {
+    InMemoryMetaStore store = InMemoryMetaStore.getInstance( NAME );
+    HiveConf hiveConf = new HiveConf();
+    hiveConf.setVar( HiveConf.ConfVars.METASTOREURIS, InMemoryMetaStore.URI_SCHEME + NAME );
+    IMetaStoreClient client = MetaStoreClientPool.getInstance().borrowClient( hiveConf );
+    client.tableExists( "default", "mytable" );
+    client.tableExists( "default", "other" );
+    client.close();
+
+    assertEquals( 2, store.getCallCount( "tableExists" ) );
+    assertEquals( 2, store.getCallCount() );
+    store.resetCallCounts();
+    assertEquals( 0, store.getCallCount() );
+    }
+
+  @Test
+  public void testFailureInjection() throws Exception
+    {
+    IMetaStoreClient client = createClient( 1f );
+    try
+      {
+      client.getAllDatabases();
+      fail( "expected MetaException" );
+      }
+    catch( MetaException exception )
+      {
+      // expected
+      }
+    }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testUnsupportedOperation() throws Exception
+    {
+    createClient( 0f ).getFunctions( "default", "*" );
+    }
+
+  private IMetaStoreClient createClient( float failureRate ) throws MetaException
+    {
+    HiveConf hiveConf = new HiveConf();
+    hiveConf.setVar( HiveConf.ConfVars.METASTOREURIS, InMemoryMetaStore.URI_SCHEME + NAME );
+    hiveConf.setVar( HiveConf.ConfVars.METASTOREWAREHOUSE, "/warehouse" );
+    hiveConf.setFloat( InMemoryMetaStore.FAILURE_RATE, failureRate );
+    return InMemoryMetaStore.createClient( hiveConf );
+    }
+
+  private Table createTable( String name, String partitionColumn )
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( name, new String[]{"value", partitionColumn},
+      new String[]{"string", "string"}, new String[]{partitionColumn} );
+    Table table = descriptor.toHiveTable();
+    table.getSd().setLocation( null );
+    return table;
+    }
+
+  private Partition createPartition( Table table, String value )
+    {
+    Partition partition = new Partition();
+    partition.setDbName( table.getDbName() );
+    partition.setTableName( table.getTableName() );
+    partition.setValues( Arrays.asList( value ) );
+    return partition;
+    }
+  }
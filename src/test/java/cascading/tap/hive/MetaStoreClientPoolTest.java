@@ -0,0 +1,223 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import cascading.CascadingException;
+import cascading.HiveTestCase;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Test;
+
+/**
+ * Tests for MetaStoreClientPool.
+ */
+public class MetaStoreClientPoolTest extends HiveTestCase
+  {
+  @Test
+  public void testClosedClientIsReturnedToPool() throws Exception
+    {
+    MetaStoreClientPool pool = new MetaStoreClientPool();
+    HiveConf conf = createHiveConf();
+
+    IMetaStoreClient client = pool.borrowClient( conf );
+    assertNotNull( client.getAllDatabases() );
+    assertEquals( 0, pool.getIdleCount( conf ) );
+    client.close();
+    assertEquals( 1, pool.getIdleCount( conf ) );
+
+    // closing twice must not return the client twice
+    client.close();
+    assertEquals( 1, pool.getIdleCount( conf ) );
+
+    IMetaStoreClient second = pool.borrowClient( conf );
+    assertEquals( 0, pool.getIdleCount( conf ) );
+    second.close();
+    pool.clear();
+    assertEquals( 0, pool.getIdleCount( conf ) );
+    }
+
+  @Test
+  public void testMaxIdle() throws Exception
+    {
+    MetaStoreClientPool pool = new MetaStoreClientPool();
+    HiveConf conf = new HiveConf( createHiveConf() );
+    conf.setInt( MetaStoreClientPool.POOL_MAX_IDLE, 1 );
+
+    IMetaStoreClient first = pool.borrowClient( conf );
+    IMetaStoreClient second = pool.borrowClient( conf );
+    first.close();
+    second.close();
+    assertEquals( 1, pool.getIdleCount( conf ) );
+    pool.clear();
+    }
+
+  @Test
+  public void testIdleClientsAreEvicted() throws Exception
+    {
+    MetaStoreClientPool pool = new MetaStoreClientPool();
+    HiveConf conf = new HiveConf( createHiveConf() );
+    conf.setLong( MetaStoreClientPool.POOL_IDLE_TIMEOUT, 0 );
+
+    IMetaStoreClient first = pool.borrowClient( conf );
+    IMetaStoreClient second = pool.borrowClient( conf );
+    first.close();
+    // returning the second client evicts the expired first one
+    second.close();
+    assertEquals( 1, pool.getIdleCount( conf ) );
+    pool.clear();
+    }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReturnedClientCannotBeUsed() throws Exception
+    {
+    MetaStoreClientPool pool = new MetaStoreClientPool();
+    IMetaStoreClient client = pool.borrowClient( createHiveConf() );
+    client.close();
+    client.getAllDatabases();
+    }
+
+  @Test
+  public void testServerErrorsKeepClient() throws Exception
+    {
+    MetaStoreClientPool pool = new MetaStoreClientPool();
+    HiveConf conf = createInMemoryConf();
+    conf.setFloat( InMemoryMetaStore.FAILURE_RATE, 1f );
+    try
+      {
+      IMetaStoreClient client = pool.borrowClient( conf );
+      try
+        {
+        client.getAllDatabases();
+        fail( "expected MetaException" );
+        }
+      catch( MetaException exception )
+        {
+        // expected
+        }
+      client.close();
+      assertEquals( 1, pool.getIdleCount( conf ) );
+      }
+    finally
+      {
+      pool.clear();
+      InMemoryMetaStore.remove( "MetaStoreClientPoolTest" );
+      }
+    }
+
+  @Test
+  public void testObjectMethodsAfterClose() throws Exception
+    {
+    MetaStoreClientPool pool = new MetaStoreClientPool();
+    HiveConf conf = createInMemoryConf();
+    try
+      {
+      IMetaStoreClient client = pool.borrowClient( conf );
+      client.close();
+      assertNotNull( client.toString() );
+      assertEquals( client.hashCode(), client.hashCode() );
+      assertTrue( client.equals( client ) );
+      }
+    finally
+      {
+      pool.clear();
+      InMemoryMetaStore.remove( "MetaStoreClientPoolTest" );
+      }
+    }
+
+  @Test
+  public void testConfiguredClientFactory() throws Exception
+    {
+    MetaStoreClientPool pool = new MetaStoreClientPool();
+    HiveConf conf = new HiveConf();
+    conf.setVar( HiveConf.ConfVars.METASTOREURIS, "thrift://localhost:1" );
+    conf.set( MetaStoreClientPool.CLIENT_FACTORY, InMemoryClientFactory.class.getName() );
+    InMemoryMetaStore.getInstance( "MetaStoreClientPoolTest" );
+    try
+      {
+      assertTrue( MetaStoreClientPool.getClientFactory( conf ) instanceof InMemoryClientFactory );
+      IMetaStoreClient client = pool.borrowClient( conf );
+      assertNotNull( client.getAllDatabases() );
+      client.close();
+      assertEquals( 1, pool.getIdleCount( conf ) );
+      }
+    finally
+      {
+      pool.clear();
+      InMemoryMetaStore.remove( "MetaStoreClientPoolTest" );
+      }
+    }
+
+  @Test
+  public void testDefaultClientFactories()
+    {
+    assertTrue( MetaStoreClientPool.getClientFactory( createInMemoryConf() ) instanceof InMemoryMetaStore.ClientFactory );
+    InMemoryMetaStore.remove( "MetaStoreClientPoolTest" );
+
+    HiveConf conf = new HiveConf();
+    conf.setVar( HiveConf.ConfVars.METASTOREURIS, "thrift://localhost:1" );
+    assertNull( MetaStoreClientPool.getClientFactory( conf ) );
+    }
+
+  @Test
+  public void testUnknownClientFactory()
+    {
+    HiveConf conf = new HiveConf();
+    conf.set( MetaStoreClientPool.CLIENT_FACTORY, "cascading.tap.hive.NoSuchClientFactory" );
+    try
+      {
+      MetaStoreClientPool.getClientFactory( conf );
+      fail( "expected CascadingException" );
+      }
+    catch( CascadingException exception )
+      {
+      assertTrue( exception.getCause() instanceof ClassNotFoundException );
+      }
+    }
+
+  @Test
+  public void testIsTransportError()
+    {
+    assertTrue( MetaStoreClientPool.isTransportError( new TTransportException() ) );
+    assertTrue( MetaStoreClientPool.isTransportError( new RuntimeException( new TTransportException() ) ) );
+    assertFalse( MetaStoreClientPool.isTransportError( new MetaException( "invalid filter" ) ) );
+    assertFalse( MetaStoreClientPool.isTransportError( new IllegalStateException() ) );
+    }
+
+  /** Creates clients of the test's InMemoryMetaStore regardless of the configured URIs. */
+  public static class InMemoryClientFactory implements MetaStoreClientFactory
+    {
+    @Override
+    public IMetaStoreClient createClient( HiveConf hiveConf )
+      {
+      return InMemoryMetaStore.getInstance( "MetaStoreClientPoolTest" ).createClient( hiveConf.getVar( HiveConf.ConfVars.METASTOREWAREHOUSE ), 0, 0f );
+      }
+    }
+
+  private HiveConf createInMemoryConf()
+    {
+    HiveConf conf = new HiveConf();
+    conf.setVar( HiveConf.ConfVars.METASTOREURIS, InMemoryMetaStore.URI_SCHEME + "MetaStoreClientPoolTest" );
+    InMemoryMetaStore.getInstance( "MetaStoreClientPoolTest" );
+    return conf;
+    }
+  }
@@ -0,0 +1,189 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowProcess;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MetaStoreMetrics.
+ */
+public class MetaStoreMetricsTest
+  {
+  @Test
+  public void testInstrumentedClientRecordsCalls() throws Exception
+    {
+    MetaStoreMetrics metrics = new MetaStoreMetrics();
+    IMetaStoreClient delegate = Mockito.mock( IMetaStoreClient.class );
+    Mockito.when( delegate.getTable( "default", "missing" ) ).thenThrow( new NoSuchObjectException() );
+
+    IMetaStoreClient client = metrics.instrument( delegate, new Configuration() );
+    client.getAllDatabases();
+    client.getAllDatabases();
+    try
+      {
+      client.getTable( "default", "missing" );
+      fail( "expected NoSuchObjectException" );
+      }
+    catch( NoSuchObjectException exception )
+      {
+      // expected
+      }
+    client.close();
+
+    Map<String, MetaStoreMetrics.OperationStatistics> statistics = metrics.getStatistics();
+    assertEquals( 2, statistics.size() );
+    assertEquals( 2, statistics.get( "getAllDatabases" ).getCalls() );
+    assertEquals( 0, statistics.get( "getAllDatabases" ).getErrors() );
+    assertEquals( 1, statistics.get( "getTable" ).getCalls() );
+    assertEquals( 1, statistics.get( "getTable" ).getErrors() );
+
+    long total = 0;
+    for( long count : statistics.get( "getAllDatabases" ).getHistogram() )
+      total += count;
+    assertEquals( 2, total );
+    Mockito.verify( delegate ).close();
+    }
+
+  @Test
+  public void testReportTo()
+    {
+    MetaStoreMetrics metrics = new MetaStoreMetrics();
+    metrics.record( "", "add_partitions", 20, false );
+    metrics.record( "", "add_partitions", 30, true );
+
+    FlowProcess flowProcess = Mockito.mock( FlowProcess.class );
+    metrics.reportTo( flowProcess );
+    Mockito.verify( flowProcess ).increment( MetaStoreMetrics.COUNTER_GROUP, "add_partitions.calls", 2 );
+    Mockito.verify( flowProcess ).increment( MetaStoreMetrics.COUNTER_GROUP, "add_partitions.millis", 50 );
+    Mockito.verify( flowProcess ).increment( MetaStoreMetrics.COUNTER_GROUP, "add_partitions.errors", 1 );
+
+    // calls are only reported once
+    FlowProcess other = Mockito.mock( FlowProcess.class );
+    metrics.reportTo( other );
+    Mockito.verify( other, Mockito.never() ).increment( Mockito.anyString(), Mockito.anyString(), Mockito.anyLong() );
+    assertEquals( 2, metrics.getStatistics().get( "add_partitions" ).getCalls() );
+    }
+
+  @Test
+  public void testReportToOnlyReportsCallsOfOwnFlow() throws Exception
+    {
+    MetaStoreMetrics metrics = new MetaStoreMetrics();
+    Configuration first = new Configuration();
+    first.set( MetaStoreMetrics.FLOW_ID, "first" );
+    Configuration second = new Configuration();
+    second.set( MetaStoreMetrics.FLOW_ID, "second" );
+
+    metrics.instrument( Mockito.mock( IMetaStoreClient.class ), first ).getAllDatabases();
+    metrics.instrument( Mockito.mock( IMetaStoreClient.class ), second ).getAllTables( "default" );
+    metrics.instrument( Mockito.mock( IMetaStoreClient.class ), second ).getAllTables( "default" );
+
+    FlowProcess secondProcess = Mockito.mock( FlowProcess.class );
+    Mockito.when( secondProcess.getStringProperty( MetaStoreMetrics.FLOW_ID ) ).thenReturn( "second" );
+    metrics.reportTo( secondProcess );
+    Mockito.verify( secondProcess ).increment( Mockito.eq( MetaStoreMetrics.COUNTER_GROUP ), Mockito.eq( "getAllTables.calls" ), Mockito.eq( 2L ) );
+    Mockito.verify( secondProcess, Mockito.never() ).increment( Mockito.eq( MetaStoreMetrics.COUNTER_GROUP ), Mockito.eq( "getAllDatabases.calls" ), Mockito.anyLong() );
+
+    FlowProcess firstProcess = Mockito.mock( FlowProcess.class );
+    Mockito.when( firstProcess.getStringProperty( MetaStoreMetrics.FLOW_ID ) ).thenReturn( "first" );
+    metrics.reportTo( firstProcess );
+    Mockito.verify( firstProcess ).increment( Mockito.eq( MetaStoreMetrics.COUNTER_GROUP ), Mockito.eq( "getAllDatabases.calls" ), Mockito.eq( 1L ) );
+    Mockito.verify( firstProcess, Mockito.never() ).increment( Mockito.eq( MetaStoreMetrics.COUNTER_GROUP ), Mockito.eq( "getAllTables.calls" ), Mockito.anyLong() );
+
+    // the JVM wide statistics still contain the calls of both flows
+    assertEquals( 1, metrics.getStatistics().get( "getAllDatabases" ).getCalls() );
+    assertEquals( 2, metrics.getStatistics().get( "getAllTables" ).getCalls() );
+    }
+
+  @Test
+  public void testListenerReleasesCallsOfCompletedFlow() throws Exception
+    {
+    Configuration conf = new Configuration();
+    conf.set( MetaStoreMetrics.FLOW_ID, "listener-flow" );
+    MetaStoreMetrics.getInstance().instrument( Mockito.mock( IMetaStoreClient.class ), conf ).tableExists( "default", "table" );
+
+    Flow flow = Mockito.mock( Flow.class );
+    Mockito.when( flow.getID() ).thenReturn( "listener-flow" );
+    new MetaStoreMetricsListener().onCompleted( flow );
+
+    // the client side calls are released instead of being left for the counters of a task
+    FlowProcess flowProcess = Mockito.mock( FlowProcess.class );
+    Mockito.when( flowProcess.getStringProperty( MetaStoreMetrics.FLOW_ID ) ).thenReturn( "listener-flow" );
+    MetaStoreMetrics.getInstance().reportTo( flowProcess );
+    Mockito.verify( flowProcess, Mockito.never() ).increment( Mockito.anyString(), Mockito.anyString(), Mockito.anyLong() );
+    Mockito.verify( flow, Mockito.never() ).getFlowProcess();
+    }
+
+  @Test
+  public void testUnreportedFlowsAreBounded()
+    {
+    MetaStoreMetrics metrics = new MetaStoreMetrics();
+    for( int flow = 0; flow <= MetaStoreMetrics.MAX_UNREPORTED_FLOWS; flow++ )
+      metrics.record( "flow" + flow, "getTable", 1, false );
+
+    FlowProcess oldest = Mockito.mock( FlowProcess.class );
+    Mockito.when( oldest.getStringProperty( MetaStoreMetrics.FLOW_ID ) ).thenReturn( "flow0" );
+    metrics.reportTo( oldest );
+    Mockito.verify( oldest, Mockito.never() ).increment( Mockito.anyString(), Mockito.anyString(), Mockito.anyLong() );
+
+    FlowProcess newest = Mockito.mock( FlowProcess.class );
+    Mockito.when( newest.getStringProperty( MetaStoreMetrics.FLOW_ID ) ).thenReturn( "flow" + MetaStoreMetrics.MAX_UNREPORTED_FLOWS );
+    metrics.reportTo( newest );
+    Mockito.verify( newest ).increment( MetaStoreMetrics.COUNTER_GROUP, "getTable.calls", 1 );
+    }
+
+  @Test
+  public void testSinkFromConfiguration() throws Exception
+    {
+    MetaStoreMetrics metrics = new MetaStoreMetrics();
+    Configuration conf = new Configuration();
+    conf.set( MetaStoreMetrics.METRICS_SINK, RecordingSink.class.getName() );
+    conf.set( MetaStoreMetrics.FLOW_ID, "flow" );
+
+    IMetaStoreClient client = metrics.instrument( Mockito.mock( IMetaStoreClient.class ), conf );
+    client.getAllDatabases();
+
+    assertEquals( 1, RecordingSink.operations.size() );
+    assertEquals( "flow:getAllDatabases", RecordingSink.operations.get( 0 ) );
+    }
+
+  public static class RecordingSink implements MetaStoreMetricsSink
+    {
+    static final List<String> operations = new ArrayList<String>();
+
+    @Override
+    public void record( String flowID, String operation, long durationMillis, boolean failed )
+      {
+      operations.add( flowID + ":" + operation );
+      }
+    }
+  }
@@ -0,0 +1,107 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package cascading.tap.hive;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MetaStoreTableCache.
+ */
+public class MetaStoreTableCacheTest
+  {
+  @Test
+  public void testPutAndGet()
+    {
+    MetaStoreTableCache cache = new MetaStoreTableCache();
+    HiveConf conf = new HiveConf();
+    Table table = createTable( "myTable" );
+    cache.put( conf, table );
+
+    Table cached = cache.get( conf, "default", "MYTABLE" );
+    assertEquals( table, cached );
+    // callers must not be able to modify the cached instance
+    assertNotSame( table, cached );
+    assertNull( cache.get( conf, "default", "otherTable" ) );
+    }
+
+  @Test
+  public void testInvalidate()
+    {
+    MetaStoreTableCache cache = new MetaStoreTableCache();
+    HiveConf conf = new HiveConf();
+    cache.put( conf, createTable( "myTable" ) );
+    cache.invalidate( conf, "default", "myTable" );
+    assertNull( cache.get( conf, "default", "myTable" ) );
+    }
+
+  @Test
+  public void testExpiry()
+    {
+    MetaStoreTableCache cache = new MetaStoreTableCache();
+    HiveConf conf = new HiveConf();
+    conf.setLong( MetaStoreTableCache.CACHE_TTL, 0 );
+    cache.put( conf, createTable( "myTable" ) );
+    assertNull( cache.get( conf, "default", "myTable" ) );
+    assertEquals( 0, cache.size() );
+    }
+
+  @Test
+  public void testMaxSize()
+    {
+    MetaStoreTableCache cache = new MetaStoreTableCache();
+    HiveConf conf = new HiveConf();
+    conf.setInt( MetaStoreTableCache.CACHE_MAX_SIZE, 2 );
+    cache.put( conf, createTable( "one" ) );
+    cache.put( conf, createTable( "two" ) );
+    // touch "one", so that "two" is the least recently used entry
+    assertNotNull( cache.get( conf, "default", "one" ) );
+    cache.put( conf, createTable( "three" ) );
+
+    assertEquals( 2, cache.size() );
+    assertNotNull( cache.get( conf, "default", "one" ) );
+    assertNull( cache.get( conf, "default", "two" ) );
+    assertNotNull( cache.get( conf, "default", "three" ) );
+    }
+
+  @Test
+  public void testMissingTables()
+    {
+    MetaStoreTableCache cache = new MetaStoreTableCache();
+    HiveConf conf = new HiveConf();
+    cache.putMissing( conf, "default", "myTable" );
+    assertTrue( cache.isMissing( conf, "default", "MYTABLE" ) );
+    assertNull( cache.get( conf, "default", "myTable" ) );
+    assertFalse( cache.isMissing( conf, "default", "otherTable" ) );
+
+    // creating the table through a HiveTap invalidates the entry
+    cache.invalidate( conf, "default", "myTable" );
+    assertFalse( cache.isMissing( conf, "default", "myTable" ) );
+    }
+
+  private Table createTable( String name )
+    {
+    return new HiveTableDescriptor( name, new String[]{"key"}, new String[]{"string"} ).toHiveTable();
+    }
+  }
@@ -0,0 +1,120 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.List;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static cascading.tap.hive.SchemeTestUtils.read;
+import static cascading.tap.hive.SchemeTestUtils.write;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for OrcScheme.
+ */
+public class OrcSchemeTest
+  {
+  private static final Fields FIELDS = new Fields( "name", "count", "score", "price" );
+
+  private static final String[] TYPES = new String[]{"string", "int", "double", "decimal(10,2)"};
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testWriteAndRead() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    write( new OrcScheme( FIELDS, TYPES ), directory,
+      new Tuple( "foo", 1, 1.5d, new BigDecimal( "12.34" ) ),
+      new Tuple( "bar", "42", null, 7 ) );
+
+    List<Tuple> tuples = read( new OrcScheme( FIELDS, TYPES ), directory );
+    assertEquals( 2, tuples.size() );
+    assertEquals( new Tuple( "foo", 1, 1.5d, new BigDecimal( "12.34" ) ), tuples.get( 0 ) );
+    assertEquals( new Tuple( "bar", 42, null, new BigDecimal( "7" ) ), tuples.get( 1 ) );
+    }
+
+  @Test
+  public void testPredicatePushdown() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    write( new OrcScheme( FIELDS, TYPES ), directory, "part-00000",
+      new Tuple( "a", 1, 1d, null ), new Tuple( "b", 2, 2d, null ) );
+    write( new OrcScheme( FIELDS, TYPES ), directory, "part-00001",
+      new Tuple( "c", 10, 3d, null ), new Tuple( "d", 20, 4d, null ) );
+
+    OrcScheme scheme = new OrcScheme( FIELDS, TYPES, new Fields( "name" ) );
+    scheme.setPredicate( ColumnPredicate.greaterThan( "count", 5 ) );
+    List<Tuple> tuples = read( scheme, directory );
+    assertEquals( 2, tuples.size() );
+    assertTrue( tuples.contains( new Tuple( "c" ) ) );
+    assertTrue( tuples.contains( new Tuple( "d" ) ) );
+
+    // only stripes and row groups are skipped, matching files are read entirely
+    scheme.setPredicate( ColumnPredicate.or( ColumnPredicate.equal( "name", "a" ), ColumnPredicate.in( "count", 20 ) ) );
+    assertEquals( 4, read( scheme, directory ).size() );
+
+    scheme.setPredicate( ColumnPredicate.and( ColumnPredicate.lessThan( "score", 2.5 ), ColumnPredicate.greaterThanOrEqual( "name", "b" ) ) );
+    assertEquals( 2, read( scheme, directory ).size() );
+
+    scheme.setPredicate( ColumnPredicate.lessThanOrEqual( "count", 0 ) );
+    assertEquals( 0, read( scheme, directory ).size() );
+    }
+
+  @Test
+  public void testColumnProjection() throws Exception
+    {
+    File directory = temporaryFolder.newFolder();
+    write( new OrcScheme( FIELDS, TYPES ), directory, new Tuple( "foo", 1, 1.5d, new BigDecimal( "12.34" ) ) );
+
+    List<Tuple> tuples = read( new OrcScheme( FIELDS, TYPES, new Fields( "score", "name" ) ), directory );
+    assertEquals( 1, tuples.size() );
+    assertEquals( new Tuple( 1.5d, "foo" ), tuples.get( 0 ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownSourceFields()
+    {
+    new OrcScheme( FIELDS, TYPES, new Fields( "unknown" ) );
+    }
+
+  @Test
+  public void testToScheme()
+    {
+    HiveTableDescriptor descriptor = new HiveTableDescriptor( HiveTableDescriptor.HIVE_DEFAULT_DATABASE_NAME, "myTable",
+      new String[]{"key", "value", "day"}, new String[]{"string", "int", "string"}, new String[]{"day"},
+      HiveStorageFormat.ORC, null );
+
+    assertEquals( new OrcScheme( new Fields( "key", "value" ), new String[]{"string", "int"} ), descriptor.toScheme() );
+    assertEquals( HiveStorageFormat.ORC.getInputFormat(), descriptor.toHiveTable().getSd().getInputFormat() );
+    assertEquals( HiveStorageFormat.ORC.getOutputFormat(), descriptor.toHiveTable().getSd().getOutputFormat() );
+    assertEquals( HiveStorageFormat.ORC.getSerializationLib(), descriptor.toHiveTable().getSd().getSerdeInfo().getSerializationLib() );
+    }
+  }
@@ -0,0 +1,150 @@
+/*
+* Copyright (c) 2007-2015 Concurrent, Inc. All Rights Reserved.
+*
+* Project and contact information: http://www.cascading.org/
+*
+* This file is part of the Cascading project.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package cascading.tap.hive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import cascading.flow.FlowProcess;
+import cascading.flow.hadoop.HadoopFlowProcess;
+import cascading.scheme.ConcreteCall;
+import cascading.scheme.Scheme;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.JobContext;
+import org.apache.hadoop.mapred.OutputCommitter;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TaskAttemptContext;
+
+/**
+ * Helper methods for writing and reading files through a Scheme outside of a flow.
+ */
+final class SchemeTestUtils
+  {
+  private SchemeTestUtils()
+    {
+    }
+
+  static void write( Scheme<Configuration, RecordReader, OutputCollector, Object[], Object[]> scheme, File directory, Tuple... tuples ) throws IOException
+    {
+    write( scheme, directory, "part-00000", tuples );
+    }
+
+  @SuppressWarnings("unchecked")
+  static void write( Scheme<Configuration, RecordReader, OutputCollector, Object[], Object[]> scheme, File directory, String name, Tuple... tuples ) throws IOException
+    {
+    JobConf conf = new JobConf();
+    FlowProcess<JobConf> flowProcess = new HadoopFlowProcess( conf );
+    scheme.sinkConfInit( flowProcess, null, conf );
+    // write directly into the directory, like a task outside of a job would
+    FileOutputFormat.setOutputPath( conf, new Path( directory.getAbsolutePath() ) );
+    conf.set( "mapreduce.task.attempt.id", "attempt_1_0001_m_000000_0" );
+    conf.setOutputCommitter( NullOutputCommitter.class );
+    FileOutputFormat.setWorkOutputPath( conf, new Path( directory.getAbsolutePath() ) );
+
+    final RecordWriter writer = conf.getOutputFormat().getRecordWriter( FileSystem.getLocal( conf ), conf,
+      name, Reporter.NULL );
+
+    ConcreteCall<Object[], OutputCollector> sinkCall = new ConcreteCall<Object[], OutputCollector>();
+    sinkCall.setOutput( new OutputCollector()
+    {
+    @Override
+    public void collect( Object key, Object value ) throws IOException
+      {
+      writer.write( key, value );
+      }
+    } );
+    scheme.sinkPrepare( flowProcess, sinkCall );
+    for( Tuple tuple : tuples )
+      {
+      sinkCall.setOutgoingEntry( new TupleEntry( scheme.getSinkFields(), tuple ) );
+      scheme.sink( flowProcess, sinkCall );
+      }
+    scheme.sinkCleanup( flowProcess, sinkCall );
+    writer.close( Reporter.NULL );
+    }
+
+  static List<Tuple> read( Scheme<Configuration, RecordReader, OutputCollector, Object[], Object[]> scheme, File directory ) throws IOException
+    {
+    JobConf conf = new JobConf();
+    FlowProcess<JobConf> flowProcess = new HadoopFlowProcess( conf );
+    scheme.sourceConfInit( flowProcess, null, conf );
+    FileInputFormat.setInputPaths( conf, new Path( directory.getAbsolutePath() ) );
+
+    List<Tuple> tuples = new ArrayList<Tuple>();
+    InputFormat inputFormat = conf.getInputFormat();
+    for( InputSplit split : inputFormat.getSplits( conf, 1 ) )
+      {
+      ConcreteCall<Object[], RecordReader> sourceCall = new ConcreteCall<Object[], RecordReader>();
+      sourceCall.setInput( inputFormat.getRecordReader( split, conf, Reporter.NULL ) );
+      sourceCall.setIncomingEntry( new TupleEntry( scheme.getSourceFields(), Tuple.size( scheme.getSourceFields().size() ) ) );
+      scheme.sourcePrepare( flowProcess, sourceCall );
+      while( scheme.source( flowProcess, sourceCall ) )
+        tuples.add( new Tuple( sourceCall.getIncomingEntry().getTuple() ) );
+      scheme.sourceCleanup( flowProcess, sourceCall );
+      sourceCall.getInput().close();
+      }
+    return tuples;
+    }
+
+  public static class NullOutputCommitter extends OutputCommitter
+    {
+    @Override
+    public void setupJob( JobContext jobContext )
+      {
+      }
+
+    @Override
+    public void setupTask( TaskAttemptContext taskContext )
+      {
+      }
+
+    @Override
+    public boolean needsTaskCommit( TaskAttemptContext taskContext )
+      {
+      return false;
+      }
+
+    @Override
+    public void commitTask( TaskAttemptContext taskContext )
+      {
+      }
+
+    @Override
+    public void abortTask( TaskAttemptContext taskContext )
+      {
+      }
+    }
+  }